@@ -0,0 +1,66 @@
+package com.revature.benchmark;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpPrincipal;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+
+/**
+ * An HttpExchange for a request that has already arrived in full, so that controllers can be benchmarked without
+ * sockets. Whatever is written to the response is thrown away.
+ */
+public class BenchmarkExchange extends HttpExchange {
+    //Discards everything written to it
+    public static final OutputStream DISCARD = new OutputStream() {
+        @Override
+        public void write(int b) {}
+
+        @Override
+        public void write(byte[] b, int off, int len) {}
+    };
+
+    private final Headers requestHeaders = new Headers();
+    private final Headers responseHeaders = new Headers();
+    private final String method;
+    private InputStream requestBody;
+    private OutputStream responseBody = DISCARD;
+    private int responseCode = -1;
+
+    /**
+     * @param chunked Whether the body is sent without a Content-Length, as a chunked body would be
+     */
+    public BenchmarkExchange(String method, byte[] body, boolean chunked) {
+        this.method = method;
+        this.requestBody = new ByteArrayInputStream(body);
+        if (!chunked) requestHeaders.set("Content-Length", String.valueOf(body.length));
+    }
+
+    @Override public Headers getRequestHeaders() { return requestHeaders; }
+    @Override public Headers getResponseHeaders() { return responseHeaders; }
+    @Override public URI getRequestURI() { return URI.create("/"); }
+    @Override public String getRequestMethod() { return method; }
+    @Override public HttpContext getHttpContext() { return null; }
+    @Override public void close() {}
+    @Override public InputStream getRequestBody() { return requestBody; }
+    @Override public OutputStream getResponseBody() { return responseBody; }
+    @Override public void sendResponseHeaders(int rCode, long responseLength) { responseCode = rCode; }
+    @Override public InetSocketAddress getRemoteAddress() { return InetSocketAddress.createUnresolved("localhost", 0); }
+    @Override public int getResponseCode() { return responseCode; }
+    @Override public InetSocketAddress getLocalAddress() { return InetSocketAddress.createUnresolved("localhost", 8000); }
+    @Override public String getProtocol() { return "HTTP/1.1"; }
+    @Override public Object getAttribute(String name) { return null; }
+    @Override public void setAttribute(String name, Object value) {}
+    @Override public HttpPrincipal getPrincipal() { return null; }
+
+    @Override
+    public void setStreams(InputStream i, OutputStream o) {
+        if (i != null) requestBody = i;
+        if (o != null) responseBody = o;
+    }
+}
@@ -0,0 +1,72 @@
+package com.revature.benchmark;
+
+import com.revature.model.Ticket;
+import com.revature.repository.PostgresTicketRepository;
+import com.revature.utils.ConnectionUtil;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the filtered ticket query as it used to be run (filter values concatenated into the SQL and sent through a
+ * plain Statement, so every employee ID is a new query text for Postgres to parse and plan) against
+ * PostgresTicketRepository.getTicketsFiltered (a fixed parameterized template per filter combination, prepared on the server).
+ * Filtering by a single employee keeps the result small, so the difference is mostly parse/plan time. The template
+ * path also maps its rows to Tickets, so if anything the difference understates the savings.
+ *
+ * This needs a live database: set PZEROURL, PZEROUSER and PZEROPASSWORD, and have tickets for employee IDs
+ * 1 to PZERO_BENCH_EMPLOYEES (default 50).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FilteredTicketsPlanBenchmark {
+    private final PostgresTicketRepository repository = new PostgresTicketRepository();
+    private int employees;
+
+    @Setup
+    public void setUp() throws SQLException {
+        employees = Integer.parseInt(System.getenv().getOrDefault("PZERO_BENCH_EMPLOYEES", "50"));
+        //Fails early if the database is not reachable
+        try (Connection con = ConnectionUtil.getConnection()) {
+            con.isValid(2);
+        }
+    }
+
+    @Benchmark
+    public void concatenatedStatement(Blackhole blackhole) throws SQLException {
+        int emplID = ThreadLocalRandom.current().nextInt(1, employees + 1);
+        String sql = "SELECT tickid, tickemplid, ticsname, tictname, tickamount, tickdescription FROM tickets " +
+                "INNER JOIN statuses on tickstatus = ticsid " +
+                "INNER JOIN tickettypes on ticktype = tictid " +
+                "WHERE true" +
+                " AND tickemplid = '" + emplID + "'" +
+                " AND ticsname = '" + Ticket.StatusValues.PENDING + "'";
+        try (Connection con = ConnectionUtil.getConnection()) {
+            Statement stmt = con.createStatement();
+            ResultSet rs = stmt.executeQuery(sql);
+            while (rs.next()) {
+                blackhole.consume(rs.getInt(1));
+                blackhole.consume(rs.getString(3));
+                blackhole.consume(rs.getString(4));
+                blackhole.consume(rs.getBigDecimal(5));
+                blackhole.consume(rs.getString(6));
+            }
+        }
+    }
+
+    @Benchmark
+    public Object preparedTemplate() {
+        int emplID = ThreadLocalRandom.current().nextInt(1, employees + 1);
+        return repository.getTicketsFiltered(emplID, Ticket.StatusValues.PENDING, null);
+    }
+}
@@ -0,0 +1,63 @@
+package com.revature.benchmark;
+
+import com.revature.controller.Controller;
+import com.revature.model.Ticket;
+import com.revature.service.Service;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the two ways the services turn a list of tickets into JSON: Service.makeJsonOf, which builds the whole
+ * response as a String, and Service.streamJsonOf, which writes it straight to the response one ticket at a time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonWriteBenchmark {
+    @Param({"10", "1000", "100000"})
+    public int tickets;
+
+    private List<Ticket> ticketList;
+
+    @Setup
+    public void setUp() {
+        Ticket.StatusValues[] statuses = Ticket.StatusValues.values();
+        Ticket.ReimbursementType[] types = Ticket.ReimbursementType.values();
+        ticketList = new ArrayList<>(tickets);
+        for (int i = 0; i < tickets; i++) {
+            ticketList.add(new Ticket(1 + i % 100, BigDecimal.valueOf(1000 + i * 7L, 2),
+                    "Ticket number " + (i + 1) + " for a business trip", types[i % types.length], statuses[i % statuses.length], i + 1));
+        }
+    }
+
+    @Benchmark
+    public String makeJsonOf() {
+        return Json.make(ticketList);
+    }
+
+    @Benchmark
+    public void streamJsonOf() throws IOException {
+        try (Controller.StreamingBody body = Json.stream(ticketList).body()) {
+            body.writeTo(BenchmarkExchange.DISCARD);
+        }
+    }
+
+    //Exposes the JSON writers that every service shares
+    private static class Json extends Service {
+        static String make(Object o) {
+            return makeJsonOf(o);
+        }
+
+        static Controller.WebTuple stream(Iterable<?> elements) {
+            return streamJsonOf(elements);
+        }
+    }
+}
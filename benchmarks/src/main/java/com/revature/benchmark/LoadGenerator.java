@@ -0,0 +1,684 @@
+package com.revature.benchmark;
+
+import com.revature.utils.ConfigUtil;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Drives a running server with a weighted mix of requests at a fixed rate, and reports the throughput and latency
+ * percentiles of each endpoint; used to check how much load the server can take before a release.
+ *
+ * Requests are sent open-loop: the i-th request is due at start + i / rate whether or not earlier ones have been
+ * answered, and its latency is measured from when it was due rather than from when it was sent. A slow server therefore
+ * shows up as slow responses instead of as fewer requests (the "coordinated omission" of closed-loop testers).
+ *
+ * Before the run, PZERO_LOAD_EMPLOYEES employees are registered and logged in; tickets are submitted and read as them.
+ * /promoteEmployee and /demoteEmployee change the roles of PZERO_LOAD_ROLE_TARGETS other employees, registered just for
+ * that, who never send requests: changing an employee's role ends their sessions, so requests sent as them would fail.
+ * Endpoints that need a manager (and /finalizeTicket) log in as PZERO_LOAD_MANAGER_EMAIL, which must already exist.
+ * Everything a run creates is left in the database, so it should be pointed at a test server. With the server built:
+ *   java -cp benchmarks/target/benchmarks.jar -DPZERO_LOAD_RATE=200 -DPZERO_LOAD_SECONDS=120 \
+ *        -DPZERO_LOAD_MANAGER_EMAIL=... -DPZERO_LOAD_MANAGER_PASSWORD=... com.revature.benchmark.LoadGenerator
+ * Runs should be shorter than the server's PZERO_SESSION_TTL_MS, since the session tokens are not renewed.
+ *
+ * This uses its own small HTTP/1.1 client over sockets: the endpoints read JSON bodies sent with GET, which
+ * HttpURLConnection turns into POSTs, and java.net.http is not available to Java 8.
+ */
+public final class LoadGenerator {
+    private static final String URL = ConfigUtil.getString("PZERO_LOAD_URL", "http://localhost:8000");
+    //Requests per second, spread evenly over each second
+    private static final int RATE = ConfigUtil.getInt("PZERO_LOAD_RATE", 100);
+    private static final int SECONDS = ConfigUtil.getInt("PZERO_LOAD_SECONDS", 60);
+    //Requests due in the first seconds are sent but not reported, while the server warms up
+    private static final int WARMUP_SECONDS = ConfigUtil.getInt("PZERO_LOAD_WARMUP_SECONDS", 10);
+    //The most requests in flight at once; each has its own keep-alive connection
+    private static final int CONCURRENCY = ConfigUtil.getInt("PZERO_LOAD_CONCURRENCY", 64);
+    //Endpoint names (without the /) and their relative weights
+    private static final String MIX = ConfigUtil.getString("PZERO_LOAD_MIX", "myTickets=70,submitTicket=20,finalizeTicket=10");
+    private static final int EMPLOYEES = ConfigUtil.getInt("PZERO_LOAD_EMPLOYEES", 50);
+    private static final int ROLE_TARGETS = ConfigUtil.getInt("PZERO_LOAD_ROLE_TARGETS", 10);
+    private static final String MANAGER_EMAIL = ConfigUtil.getString("PZERO_LOAD_MANAGER_EMAIL", null);
+    private static final String MANAGER_PASSWORD = ConfigUtil.getString("PZERO_LOAD_MANAGER_PASSWORD", null);
+    //Whether to ask for compressed responses, as browsers do
+    private static final boolean GZIP = ConfigUtil.getBoolean("PZERO_LOAD_GZIP", true);
+    private static final long SEED = ConfigUtil.getLong("PZERO_LOAD_SEED", System.nanoTime());
+
+    private static final String PASSWORD = "load-test";
+    private static final String[] TICKET_TYPES = {"TRAVEL", "LODGING", "FOOD", "OTHER"};
+    //How long a request may start after it was due before it counts as having waited for a free connection
+    private static final long LATE_START_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    //Every endpoint registered in Main (except /metrics), with the method it answers to
+    enum Operation {
+        GET_EMPLOYEE_LIST("/getEmployeeList", "GET", true, false),
+        REGISTER("/register", "POST", false, false),
+        LOGIN("/login", "POST", false, true),
+        PROMOTE_EMPLOYEE("/promoteEmployee", "PUT", true, false),
+        DEMOTE_EMPLOYEE("/demoteEmployee", "PUT", true, false),
+        SUBMIT_TICKET("/submitTicket", "POST", false, true),
+        SUBMIT_TICKETS("/submitTickets", "POST", false, true),
+        ALL_TICKETS("/allTickets", "GET", true, false),
+        MY_TICKETS("/myTickets", "GET", false, true),
+        FINALIZE_TICKET("/finalizeTicket", "PUT", true, false),
+        FINALIZE_TICKETS("/finalizeTickets", "PUT", true, false),
+        TICKET_SUMMARY("/ticketSummary", "GET", true, false);
+
+        final String path;
+        final String method;
+        final boolean needsManager;
+        //Whether requests are sent as one of the employees registered for the run
+        final boolean needsEmployee;
+
+        Operation(String path, String method, boolean needsManager, boolean needsEmployee) {
+            this.path = path;
+            this.method = method;
+            this.needsManager = needsManager;
+            this.needsEmployee = needsEmployee;
+        }
+
+        static Operation ofPath(String path) {
+            String withSlash = path.startsWith("/") ? path : "/" + path;
+            for (Operation operation : values()) {
+                if (operation.path.equals(withSlash)) return operation;
+            }
+            throw new IllegalArgumentException("There is no endpoint called " + path);
+        }
+    }
+
+    private final String host;
+    private final int port;
+    private final Operation[] operations;
+    private final int[] cumulativeWeights;
+    private final Map<Operation, Results> results = new EnumMap<>(Operation.class);
+
+    private final String runID = Long.toString(System.currentTimeMillis(), 36);
+    private final List<Account> employees = new ArrayList<>();
+    //The email addresses of the employees whose roles are changed; none of them is in employees
+    private final List<String> roleTargets = new ArrayList<>();
+    private String managerToken;
+    private final AtomicInteger registered = new AtomicInteger();
+    //Pending tickets which nothing has finalized yet; refilled from /allTickets while the load runs
+    private final ConcurrentLinkedQueue<Integer> pendingTickets = new ConcurrentLinkedQueue<>();
+    private volatile int lastQueuedTicket;
+
+    private final ThreadLocal<HttpConnection> connections = new ThreadLocal<>();
+    private final LongAdder lateStarts = new LongAdder();
+    private volatile long measureFromNanos;
+
+    LoadGenerator(URI uri, Map<Operation, Integer> mix) {
+        this.host = uri.getHost();
+        this.port = uri.getPort() == -1 ? 80 : uri.getPort();
+        this.operations = mix.keySet().toArray(new Operation[0]);
+        this.cumulativeWeights = new int[operations.length];
+        int total = 0;
+        for (int i = 0; i < operations.length; i++) {
+            total += mix.get(operations[i]);
+            cumulativeWeights[i] = total;
+            results.put(operations[i], new Results());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<Operation, Integer> mix = parseMix(MIX);
+        LoadGenerator generator = new LoadGenerator(URI.create(URL), mix);
+        generator.setUp();
+        generator.run();
+        generator.report(System.out);
+        System.exit(0);
+    }
+
+    //Reads a mix such as "myTickets=70,submitTicket=20,finalizeTicket=10"
+    static Map<Operation, Integer> parseMix(String mix) {
+        Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        for (String part : mix.split(",")) {
+            String[] nameAndWeight = part.trim().split("=");
+            if (nameAndWeight.length != 2) throw new IllegalArgumentException("Malformed mix entry: " + part);
+            int weight = Integer.parseInt(nameAndWeight[1].trim());
+            if (weight > 0) weights.merge(Operation.ofPath(nameAndWeight[0].trim()), weight, Integer::sum);
+        }
+        if (weights.isEmpty()) throw new IllegalArgumentException("The mix has no endpoints in it: " + mix);
+        return weights;
+    }
+
+    //Registers and logs in the employees the load is sent as, and finds the tickets that can be finalized
+    private void setUp() throws IOException {
+        HttpConnection con = new HttpConnection(host, port);
+        boolean needsManager = false;
+        boolean needsEmployees = false;
+        for (Operation operation : operations) {
+            needsManager |= operation.needsManager;
+            needsEmployees |= operation.needsEmployee;
+        }
+        boolean changesRoles = results.containsKey(Operation.PROMOTE_EMPLOYEE) || results.containsKey(Operation.DEMOTE_EMPLOYEE);
+        if (needsEmployees && EMPLOYEES < 1) throw new IllegalStateException("This mix needs PZERO_LOAD_EMPLOYEES to be at least 1.");
+        if (changesRoles && ROLE_TARGETS < 1) throw new IllegalStateException("This mix needs PZERO_LOAD_ROLE_TARGETS to be at least 1.");
+        if (needsManager) {
+            if (MANAGER_EMAIL == null || MANAGER_PASSWORD == null) {
+                throw new IllegalStateException("This mix needs a manager; set PZERO_LOAD_MANAGER_EMAIL and PZERO_LOAD_MANAGER_PASSWORD.");
+            }
+            managerToken = login(con, MANAGER_EMAIL, MANAGER_PASSWORD);
+        }
+        for (int i = 0; i < EMPLOYEES; i++) {
+            String email = "load-" + runID + "-" + i + "@example.com";
+            register(con, email);
+            employees.add(new Account(email, login(con, email, PASSWORD)));
+        }
+        for (int i = 0; changesRoles && i < ROLE_TARGETS; i++) {
+            String email = "load-" + runID + "-role-" + i + "@example.com";
+            register(con, email);
+            roleTargets.add(email);
+        }
+        if (results.containsKey(Operation.FINALIZE_TICKET) || results.containsKey(Operation.FINALIZE_TICKETS)) {
+            queuePendingTickets(con);
+            Thread refiller = new Thread(this::keepQueueingPendingTickets, "pending-ticket-refiller");
+            refiller.setDaemon(true);
+            refiller.start();
+        }
+        con.close();
+        System.out.println("Registered " + (employees.size() + roleTargets.size()) + " employees; " + pendingTickets.size() + " pending tickets found.");
+    }
+
+    private void register(HttpConnection con, String email) throws IOException {
+        Response response = con.send("POST", "/register", object("email", email, "password", PASSWORD));
+        if (response.status != 200) throw new IllegalStateException("Could not register " + email + ": " + response.text());
+    }
+
+    private String login(HttpConnection con, String email, String password) throws IOException {
+        Response response = con.send("POST", "/login", object("email", email, "password", password));
+        if (response.status != 200) throw new IllegalStateException("Could not log in as " + email + ": " + response.text());
+        return response.json().get("token").asText();
+    }
+
+    //Queues every pending ticket after the last one queued so far, so that new submissions can be finalized too
+    private void queuePendingTickets(HttpConnection con) throws IOException {
+        while (true) {
+            Response response = con.send("GET", "/allTickets", object("token", managerToken, "status", "pending",
+                    "limit", 500, "after", lastQueuedTicket));
+            if (response.status != 200) throw new IOException("Could not list pending tickets: " + response.text());
+            JsonNode page = response.json();
+            int after = lastQueuedTicket;
+            for (JsonNode ticket : page.get("tickets")) {
+                int id = ticket.get("id").asInt();
+                if (id <= after) continue;
+                pendingTickets.add(id);
+                lastQueuedTicket = Math.max(lastQueuedTicket, id);
+            }
+            //Also stops if a page brought nothing new, rather than asking for the same page forever
+            JsonNode nextAfter = page.get("nextAfter");
+            if (nextAfter == null || nextAfter.isNull() || lastQueuedTicket == after) return;
+        }
+    }
+
+    private void keepQueueingPendingTickets() {
+        HttpConnection con = null;
+        while (true) {
+            try {
+                Thread.sleep(1000);
+                if (con == null) con = new HttpConnection(host, port);
+                queuePendingTickets(con);
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException e) {
+                if (con != null) con.close();
+                con = null;
+            }
+        }
+    }
+
+    /**
+     * Sends the load. One thread schedules every request at its due time, and a pool of CONCURRENCY threads sends
+     * them; when every thread is busy, requests queue up and wait, and that wait is part of their latency.
+     */
+    private void run() throws InterruptedException {
+        ThreadPoolExecutor workers = new ThreadPoolExecutor(CONCURRENCY, CONCURRENCY, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>());
+        Random random = new Random(SEED);
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / RATE;
+        long total = (long) RATE * (WARMUP_SECONDS + SECONDS);
+        long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+        measureFromNanos = start + TimeUnit.SECONDS.toNanos(WARMUP_SECONDS);
+
+        System.out.println("Sending " + RATE + " requests per second for " + WARMUP_SECONDS + "s of warmup and " +
+                SECONDS + "s of measurement, with at most " + CONCURRENCY + " in flight.");
+        for (long i = 0; i < total; i++) {
+            long due = start + i * intervalNanos;
+            long wait;
+            while ((wait = due - System.nanoTime()) > 0) LockSupport.parkNanos(wait);
+            Operation operation = pick(random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]));
+            workers.execute(() -> send(operation, due));
+        }
+        shutDown(workers);
+    }
+
+    private Operation pick(int roll) {
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (roll < cumulativeWeights[i]) return operations[i];
+        }
+        return operations[operations.length - 1];
+    }
+
+    private void shutDown(ExecutorService workers) throws InterruptedException {
+        workers.shutdown();
+        if (!workers.awaitTermination(60, TimeUnit.SECONDS)) {
+            System.out.println("Gave up waiting for " + workers.shutdownNow().size() + " queued requests.");
+            workers.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    //Runs on a worker thread; sends one request and records how long it took from when it was due
+    private void send(Operation operation, long dueNanos) {
+        long startNanos = System.nanoTime();
+        if (startNanos - dueNanos > LATE_START_NANOS && dueNanos >= measureFromNanos) lateStarts.increment();
+        byte[] body = bodyFor(operation);
+        boolean measured = dueNanos >= measureFromNanos;
+        if (body == null) {
+            if (measured) results.get(operation).skipped.increment();
+            return;
+        }
+
+        int status;
+        try {
+            HttpConnection con = connections.get();
+            if (con == null) {
+                con = new HttpConnection(host, port);
+                connections.set(con);
+            }
+            status = con.send(operation.method, operation.path, body).status;
+            if (!con.isOpen()) connections.remove();
+        } catch (IOException e) {
+            HttpConnection con = connections.get();
+            if (con != null) con.close();
+            connections.remove();
+            status = -1;
+        }
+        long endNanos = System.nanoTime();
+        if (measured) results.get(operation).record(status, endNanos - dueNanos, endNanos - startNanos);
+    }
+
+    //The request body for one request to an endpoint, or null if there is nothing it can be sent for right now
+    private byte[] bodyFor(Operation operation) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Account employee = employees.isEmpty() ? null : employees.get(random.nextInt(employees.size()));
+        String type = TICKET_TYPES[random.nextInt(TICKET_TYPES.length)];
+        String newStatus = random.nextBoolean() ? "APPROVED" : "DENIED";
+        switch (operation) {
+            case GET_EMPLOYEE_LIST:
+            case TICKET_SUMMARY:
+                return object("token", managerToken);
+            case REGISTER:
+                return object("email", "load-" + runID + "-new-" + registered.incrementAndGet() + "@example.com",
+                        "password", PASSWORD);
+            case LOGIN:
+                return object("email", employee.email, "password", PASSWORD);
+            case PROMOTE_EMPLOYEE:
+            case DEMOTE_EMPLOYEE:
+                return object("token", managerToken, "otherUserEmail", roleTargets.get(random.nextInt(roleTargets.size())));
+            case SUBMIT_TICKET:
+                return object("token", employee.token, "reimbursementType", type, "amount", amount(random),
+                        "description", "Load test " + type.toLowerCase(Locale.ROOT) + " expense");
+            case SUBMIT_TICKETS: {
+                StringBuilder tickets = new StringBuilder("[");
+                for (int i = 0; i < 10; i++) {
+                    if (i > 0) tickets.append(',');
+                    tickets.append(new String(object("reimbursementType", type, "amount", amount(random),
+                            "description", "Load test batch expense " + i), StandardCharsets.UTF_8));
+                }
+                return object("token", employee.token, "tickets", new RawJson(tickets.append(']').toString()));
+            }
+            case ALL_TICKETS:
+                return object("token", managerToken, "status", "pending", "limit", 50);
+            case MY_TICKETS:
+                return object("token", employee.token, "limit", 50);
+            case FINALIZE_TICKET: {
+                Integer ticketID = pendingTickets.poll();
+                return ticketID == null ? null : object("token", managerToken, "ticketID", ticketID, "newStatus", newStatus);
+            }
+            case FINALIZE_TICKETS: {
+                List<Integer> ticketIDs = new ArrayList<>();
+                Integer ticketID;
+                while (ticketIDs.size() < 10 && (ticketID = pendingTickets.poll()) != null) ticketIDs.add(ticketID);
+                if (ticketIDs.isEmpty()) return null;
+                return object("token", managerToken, "ticketIDs", new RawJson(ticketIDs.toString()), "newStatus", newStatus);
+            }
+            default:
+                throw new IllegalArgumentException(operation.name());
+        }
+    }
+
+    private static String amount(ThreadLocalRandom random) {
+        return (random.nextInt(100, 50_000) / 100) + "." + String.format("%02d", random.nextInt(100));
+    }
+
+    /**
+     * Builds a JSON object from alternating names and values. Strings are quoted, numbers are written as they are,
+     * and RawJson values are inserted unchanged. The strings built here never need escaping.
+     */
+    private static byte[] object(Object... namesAndValues) {
+        StringBuilder json = new StringBuilder("{");
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            if (i > 0) json.append(',');
+            json.append('"').append(namesAndValues[i]).append("\":");
+            Object value = namesAndValues[i + 1];
+            if (value instanceof String) json.append('"').append(value).append('"');
+            else json.append(value);
+        }
+        return json.append('}').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    //A value which object() should insert as it is, because it is already JSON
+    private static class RawJson {
+        private final String json;
+
+        RawJson(String json) {
+            this.json = json;
+        }
+
+        @Override
+        public String toString() {
+            return json;
+        }
+    }
+
+    private void report(PrintStream out) {
+        out.println();
+        out.printf("%-18s %8s %9s %7s %7s %9s %9s %9s %9s %9s %12s%n", "endpoint", "requests", "req/s", "errors",
+                "skipped", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms", "p99 sent ms");
+        long allRequests = 0, allErrors = 0, allSkipped = 0;
+        long[] allLatencies = new long[0];
+        for (Map.Entry<Operation, Results> entry : results.entrySet()) {
+            Results result = entry.getValue();
+            long[] latencies = result.latencies();
+            long[] serviceTimes = result.serviceTimes();
+            printRow(out, entry.getKey().path, latencies, result.errors(), result.skipped.sum(), serviceTimes);
+            allRequests += latencies.length;
+            allErrors += result.errors();
+            allSkipped += result.skipped.sum();
+            allLatencies = concat(allLatencies, latencies);
+        }
+        Arrays.sort(allLatencies);
+        printRow(out, "all", allLatencies, allErrors, allSkipped, null);
+
+        out.println();
+        out.println("Latencies are measured from when each request was due; \"p99 sent\" is measured from when it was sent.");
+        if (allSkipped > 0) out.println("Skipped requests were not sent, because there was no pending ticket left to finalize.");
+        for (Map.Entry<Operation, Results> entry : results.entrySet()) {
+            out.println(entry.getKey().path + " responses by status: " + entry.getValue().statuses() + " (-1: no response)");
+        }
+        if (allRequests > 0 && lateStarts.sum() > 0) {
+            out.printf("%d requests (%.1f%%) waited more than 1ms for a free connection; if that was not the server's " +
+                    "doing, raise PZERO_LOAD_CONCURRENCY.%n", lateStarts.sum(), 100.0 * lateStarts.sum() / allRequests);
+        }
+    }
+
+    private static void printRow(PrintStream out, String name, long[] sortedNanos, long errors, long skipped,
+                                 long[] sortedServiceNanos) {
+        out.printf("%-18s %8d %9.1f %7d %7d %9.2f %9.2f %9.2f %9.2f %9.2f %12s%n", name, sortedNanos.length,
+                (double) sortedNanos.length / SECONDS, errors, skipped,
+                millisAt(sortedNanos, 0.5), millisAt(sortedNanos, 0.9), millisAt(sortedNanos, 0.99),
+                millisAt(sortedNanos, 0.999), millisAt(sortedNanos, 1.0),
+                sortedServiceNanos == null ? "" : String.format("%.2f", millisAt(sortedServiceNanos, 0.99)));
+    }
+
+    //The value which the given fraction of the sorted values were no larger than, in milliseconds
+    private static double millisAt(long[] sortedNanos, double quantile) {
+        if (sortedNanos.length == 0) return 0;
+        int rank = (int) Math.max(1, Math.ceil(quantile * sortedNanos.length));
+        return sortedNanos[rank - 1] / 1e6;
+    }
+
+    private static long[] concat(long[] a, long[] b) {
+        long[] both = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, both, a.length, b.length);
+        return both;
+    }
+
+    private static class Account {
+        private final String email;
+        private final String token;
+
+        Account(String email, String token) {
+            this.email = email;
+            this.token = token;
+        }
+    }
+
+    /**
+     * What was measured for one endpoint. Every latency is kept, so the percentiles are exact; at 8 bytes each, a run
+     * of a million requests takes 16 MB.
+     */
+    private static class Results {
+        private long[] latencies = new long[1024];
+        private long[] serviceTimes = new long[1024];
+        private int count;
+        private final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+        private final LongAdder skipped = new LongAdder();
+
+        synchronized void record(int status, long latencyNanos, long serviceNanos) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count << 1);
+                serviceTimes = Arrays.copyOf(serviceTimes, count << 1);
+            }
+            latencies[count] = latencyNanos;
+            serviceTimes[count] = serviceNanos;
+            count++;
+            statuses.computeIfAbsent(status, code -> new LongAdder()).increment();
+        }
+
+        synchronized long[] latencies() {
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+
+        synchronized long[] serviceTimes() {
+            long[] sorted = Arrays.copyOf(serviceTimes, count);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+
+        //Anything but a 2xx or 304 response, including no response at all
+        long errors() {
+            long errors = 0;
+            for (Map.Entry<Integer, LongAdder> status : statuses.entrySet()) {
+                int code = status.getKey();
+                if (!(code >= 200 && code < 300) && code != 304) errors += status.getValue().sum();
+            }
+            return errors;
+        }
+
+        String statuses() {
+            return new TreeMap<>(statuses).toString();
+        }
+    }
+
+    private static class Response {
+        private final int status;
+        private final String contentEncoding;
+        private final byte[] body;
+
+        Response(int status, String contentEncoding, byte[] body) {
+            this.status = status;
+            this.contentEncoding = contentEncoding;
+            this.body = body;
+        }
+
+        byte[] decodedBody() throws IOException {
+            if (contentEncoding == null) return body;
+            InputStream in = contentEncoding.equalsIgnoreCase("gzip")
+                    ? new GZIPInputStream(new ByteArrayInputStream(body))
+                    : new InflaterInputStream(new ByteArrayInputStream(body));
+            ByteArrayOutputStream decoded = new ByteArrayOutputStream(body.length * 4);
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) decoded.write(buffer, 0, n);
+            return decoded.toByteArray();
+        }
+
+        String text() throws IOException {
+            return status + " " + new String(decodedBody(), StandardCharsets.UTF_8);
+        }
+
+        JsonNode json() throws IOException {
+            return OBJECT_MAPPER.readTree(decodedBody());
+        }
+    }
+
+    /**
+     * One keep-alive HTTP/1.1 connection, used by one thread at a time. Only what the server sends is understood:
+     * bodies with a Content-Length or chunked, and no body for 304s or when -1 was given as the length.
+     */
+    private static class HttpConnection {
+        private final String host;
+        private final Socket socket;
+        private final InputStream in;
+        private final OutputStream out;
+        private boolean open = true;
+
+        HttpConnection(String host, int port) throws IOException {
+            this.host = host;
+            socket = new Socket();
+            socket.setTcpNoDelay(true);
+            socket.connect(new InetSocketAddress(host, port), 10_000);
+            socket.setSoTimeout(60_000);
+            in = new BufferedInputStream(socket.getInputStream(), 16384);
+            out = new BufferedOutputStream(socket.getOutputStream(), 8192);
+        }
+
+        boolean isOpen() {
+            return open;
+        }
+
+        Response send(String method, String path, byte[] body) throws IOException {
+            StringBuilder head = new StringBuilder(160)
+                    .append(method).append(' ').append(path).append(" HTTP/1.1\r\n")
+                    .append("Host: ").append(host).append("\r\n")
+                    .append("Content-Type: application/json\r\n")
+                    .append("Content-Length: ").append(body.length).append("\r\n");
+            if (GZIP) head.append("Accept-Encoding: gzip\r\n");
+            out.write(head.append("\r\n").toString().getBytes(StandardCharsets.ISO_8859_1));
+            out.write(body);
+            out.flush();
+
+            String statusLine = readLine();
+            String[] parts = statusLine.split(" ", 3);
+            if (parts.length < 2 || !parts[0].startsWith("HTTP/")) throw new IOException("Bad status line: " + statusLine);
+            int status = Integer.parseInt(parts[1]);
+            long length = -1;
+            boolean chunked = false;
+            String contentEncoding = null;
+            String line;
+            while (!(line = readLine()).isEmpty()) {
+                int colon = line.indexOf(':');
+                if (colon < 0) continue;
+                String name = line.substring(0, colon).trim();
+                String value = line.substring(colon + 1).trim();
+                if (name.equalsIgnoreCase("Content-Length")) length = Long.parseLong(value);
+                else if (name.equalsIgnoreCase("Transfer-Encoding")) chunked = value.equalsIgnoreCase("chunked");
+                else if (name.equalsIgnoreCase("Content-Encoding")) contentEncoding = value;
+                else if (name.equalsIgnoreCase("Connection") && value.equalsIgnoreCase("close")) open = false;
+            }
+
+            byte[] responseBody;
+            if (chunked) responseBody = readChunked();
+            else if (length >= 0) responseBody = readFully((int) length);
+            else if (status == 304 || status == 204 || (status >= 100 && status < 200)) responseBody = new byte[0];
+            else {
+                //Neither a length nor chunks: the body runs until the server closes the connection
+                responseBody = readToEnd();
+                open = false;
+            }
+            if (!open) close();
+            return new Response(status, contentEncoding, responseBody);
+        }
+
+        private byte[] readChunked() throws IOException {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            while (true) {
+                String sizeLine = readLine();
+                int semicolon = sizeLine.indexOf(';');
+                int size = Integer.parseInt((semicolon < 0 ? sizeLine : sizeLine.substring(0, semicolon)).trim(), 16);
+                if (size == 0) {
+                    //Skips any trailers, up to the blank line which ends the body
+                    while (!readLine().isEmpty()) ;
+                    return body.toByteArray();
+                }
+                body.write(readFully(size));
+                readLine();
+            }
+        }
+
+        private byte[] readFully(int length) throws IOException {
+            byte[] bytes = new byte[length];
+            int read = 0;
+            while (read < length) {
+                int n = in.read(bytes, read, length - read);
+                if (n == -1) throw new EOFException("The connection closed in the middle of a response.");
+                read += n;
+            }
+            return bytes;
+        }
+
+        private byte[] readToEnd() throws IOException {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) body.write(buffer, 0, n);
+            return body.toByteArray();
+        }
+
+        //Reads one header line, without its CRLF
+        private String readLine() throws IOException {
+            StringBuilder line = new StringBuilder(64);
+            int b;
+            while ((b = in.read()) != '\n') {
+                if (b == -1) throw new EOFException("The connection closed before a response arrived.");
+                if (b != '\r') line.append((char) b);
+            }
+            return line.toString();
+        }
+
+        void close() {
+            open = false;
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                //Nothing more to do with it either way
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.revature.benchmark;
+
+import com.revature.controller.Controller;
+import com.sun.net.httpserver.HttpExchange;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures Controller.readRequestBody, which every endpoint uses to read its JSON request, for bodies that declare
+ * their length up front and for chunked ones (which are read through a reusable buffer instead).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RequestBodyBenchmark {
+    @Param({"128", "16384", "262144"})
+    public int bodyBytes;
+
+    @Param({"false", "true"})
+    public boolean chunked;
+
+    private final BodyReader reader = new BodyReader();
+    private byte[] body;
+
+    @Setup
+    public void setUp() {
+        StringBuilder json = new StringBuilder("{\"token\":\"abcdefghijklmnopqrstuvwxyz0123456789\",\"description\":\"");
+        while (json.length() < bodyBytes - 2) json.append('x');
+        body = json.append("\"}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] readRequestBody() throws IOException {
+        return reader.read(new BenchmarkExchange("POST", body, chunked));
+    }
+
+    //Exposes the request body reader that every controller shares
+    private static class BodyReader extends Controller {
+        byte[] read(HttpExchange exchange) throws IOException {
+            return readRequestBody(exchange);
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
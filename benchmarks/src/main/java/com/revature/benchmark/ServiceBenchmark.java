@@ -0,0 +1,82 @@
+package com.revature.benchmark;
+
+import com.revature.controller.Controller;
+import com.revature.service.EmployeeService;
+import com.revature.service.Service;
+import com.revature.service.TicketService;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures whole requests through the services, from the JSON request body to the response, with the repositories
+ * running against StubDatabase instead of Postgres. This covers parsing requests, authenticating with a session token,
+ * mapping rows to tickets, and writing the response. Requests which reach the repositories include the hand-off to the
+ * database threads and back (here, to whichever thread completes them, since there is no request executor).
+ * Run with -prof gc to see how much each request allocates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ServiceBenchmark {
+    @Param({"10", "1000"})
+    public int tickets;
+
+    private byte[] loginBody;
+    private byte[] incompleteTicketBody;
+    private byte[] ticketBody;
+    private byte[] myTicketsBody;
+
+    @Setup
+    public void setUp() throws IOException, SQLException {
+        StubDatabase.install();
+        StubDatabase.setTicketCount(tickets);
+        Service.prepareDatabase();
+
+        loginBody = bytes("{\"email\":\"" + StubDatabase.MANAGER_EMAIL + "\",\"password\":\"" + StubDatabase.MANAGER_PASSWORD + "\"}");
+        Controller.WebTuple login = EmployeeService.validateEmployee(loginBody).join();
+        if (login.statusCode() != 200) throw new IllegalStateException("Could not log in: " + login.response());
+        String token = new ObjectMapper().readTree(login.response()).get("token").asText();
+
+        incompleteTicketBody = bytes("{\"token\":\"" + token + "\",\"description\":\"Lunch with a client\"}");
+        ticketBody = bytes("{\"token\":\"" + token + "\",\"reimbursementType\":\"FOOD\",\"amount\":\"42.50\"," +
+                "\"description\":\"Lunch with a client\"}");
+        myTicketsBody = bytes("{\"token\":\"" + token + "\"}");
+    }
+
+    private static byte[] bytes(String json) {
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    //Parsing the request and turning it away for a missing field; nothing else happens
+    @Benchmark
+    public Controller.WebTuple parseRejectedTicket() {
+        return TicketService.submitTicket(incompleteTicketBody).join();
+    }
+
+    //Checking a password (against the employee cache) and opening a session
+    @Benchmark
+    public Controller.WebTuple login() {
+        return EmployeeService.validateEmployee(loginBody).join();
+    }
+
+    @Benchmark
+    public Controller.WebTuple submitTicket() {
+        return TicketService.submitTicket(ticketBody).join();
+    }
+
+    @Benchmark
+    public void getMyTickets() throws IOException {
+        Controller.WebTuple response = TicketService.getMyTickets(myTicketsBody).join();
+        try (Controller.StreamingBody body = response.body()) {
+            body.writeTo(BenchmarkExchange.DISCARD);
+        }
+    }
+}
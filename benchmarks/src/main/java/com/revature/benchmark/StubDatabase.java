@@ -0,0 +1,172 @@
+package com.revature.benchmark;
+
+import com.revature.model.Employee;
+import com.revature.model.Ticket;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * A stand-in for Postgres, so that the repositories can be benchmarked without a database. It is installed as a JDBC
+ * driver for the URL jdbc:pzerostub:, which ConnectionUtil is pointed at through the PZEROURL system property.
+ * Every query for employees finds the same manager, and every query for tickets finds the same canned rows, so the
+ * repositories run all of their own code (pooling, binding, mapping rows to objects) and nothing else.
+ */
+public final class StubDatabase {
+    public static final String URL = "jdbc:pzerostub:";
+    public static final String MANAGER_EMAIL = "manager@example.com";
+    public static final String MANAGER_PASSWORD = "password";
+    public static final int MANAGER_ID = 1;
+
+    //Lookup table IDs are ordinal() + 1, as they are in the real tables
+    private static final Object[] MANAGER_ROW = {MANAGER_ID, MANAGER_EMAIL, MANAGER_PASSWORD.hashCode(), Employee.Roles.MANAGER.ordinal() + 1};
+    private static volatile Object[][] ticketRows = new Object[0][];
+    private static final AtomicInteger nextTicketID = new AtomicInteger(1_000_000);
+
+    private StubDatabase() {}
+
+    /**
+     * Points ConnectionUtil at the stub. This must run before anything first uses ConnectionUtil, since its connection
+     * pool is only set up once.
+     */
+    public static synchronized void install() throws SQLException {
+        if (System.getProperty("PZEROURL") == null) {
+            DriverManager.registerDriver(new StubDriver());
+            System.setProperty("PZEROURL", URL);
+        }
+    }
+
+    //Sets how many tickets every ticket query finds; they are spread over employees 1 to 100
+    public static void setTicketCount(int count) {
+        Ticket.StatusValues[] statuses = Ticket.StatusValues.values();
+        Ticket.ReimbursementType[] types = Ticket.ReimbursementType.values();
+        Object[][] rows = new Object[count][];
+        for (int i = 0; i < count; i++) {
+            rows[i] = new Object[]{i + 1, 1 + i % 100, statuses[i % statuses.length].ordinal() + 1, types[i % types.length].ordinal() + 1,
+                    BigDecimal.valueOf(1000 + i * 7L, 2), "Ticket number " + (i + 1) + " for a business trip"};
+        }
+        ticketRows = rows;
+    }
+
+    //Answers a query based on which table it reads; this is all that the repositories need
+    private static Object[][] rowsFor(String sql) {
+        String lower = sql.toLowerCase();
+        if (lower.contains("from employees")) return new Object[][]{MANAGER_ROW};
+        if (lower.contains("from tickets")) return ticketRows;
+        if (lower.contains("from statuses")) return lookupRows(Ticket.StatusValues.values());
+        if (lower.contains("from tickettypes")) return lookupRows(Ticket.ReimbursementType.values());
+        if (lower.contains("from roles")) return lookupRows(Employee.Roles.values());
+        return new Object[0][];
+    }
+
+    private static Object[][] lookupRows(Enum<?>[] values) {
+        Object[][] rows = new Object[values.length][];
+        for (Enum<?> value : values) rows[value.ordinal()] = new Object[]{value.ordinal() + 1, value.name()};
+        return rows;
+    }
+
+    private static Object proxy(Class<?> type, InvocationHandler handler) {
+        return Proxy.newProxyInstance(StubDatabase.class.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    //What a stubbed method returns when nothing more specific is needed
+    private static Object defaultFor(Class<?> returnType) {
+        if (returnType == boolean.class) return false;
+        if (returnType == int.class) return 0;
+        if (returnType == long.class) return 0L;
+        return null;
+    }
+
+    private static Connection connection() {
+        return (Connection) proxy(Connection.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "prepareStatement": return statement((String) args[0]);
+                case "createStatement": return statement(null);
+                case "isValid": return true;
+                case "getAutoCommit": return true;
+                case "equals": return proxy == args[0];
+                case "hashCode": return System.identityHashCode(proxy);
+                case "toString": return "StubConnection";
+                default: return defaultFor(method.getReturnType());
+            }
+        });
+    }
+
+    private static Statement statement(String preparedSql) {
+        Class<?> type = preparedSql == null ? Statement.class : PreparedStatement.class;
+        return (Statement) proxy(type, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "executeQuery": return resultSet(rowsFor(preparedSql != null ? preparedSql : (String) args[0]));
+                case "execute": return false;
+                case "executeUpdate": return 1;
+                case "executeBatch": return new int[0];
+                //Inserts return one new ticket ID
+                case "getGeneratedKeys": return resultSet(new Object[][]{{nextTicketID.incrementAndGet()}});
+                case "equals": return proxy == args[0];
+                case "hashCode": return System.identityHashCode(proxy);
+                default: return defaultFor(method.getReturnType());
+            }
+        });
+    }
+
+    private static ResultSet resultSet(Object[][] rows) {
+        int[] row = {-1};
+        return (ResultSet) proxy(ResultSet.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "next": return ++row[0] < rows.length;
+                case "getInt": return ((Number) rows[row[0]][(Integer) args[0] - 1]).intValue();
+                case "getLong": return ((Number) rows[row[0]][(Integer) args[0] - 1]).longValue();
+                case "getString": return String.valueOf(rows[row[0]][(Integer) args[0] - 1]);
+                case "getBigDecimal": return rows[row[0]][(Integer) args[0] - 1];
+                case "getBoolean": return Boolean.TRUE.equals(rows[row[0]][(Integer) args[0] - 1]);
+                case "equals": return proxy == args[0];
+                case "hashCode": return System.identityHashCode(proxy);
+                default: return defaultFor(method.getReturnType());
+            }
+        });
+    }
+
+    private static class StubDriver implements Driver {
+        @Override
+        public Connection connect(String url, Properties info) {
+            return acceptsURL(url) ? connection() : null;
+        }
+
+        @Override
+        public boolean acceptsURL(String url) {
+            return url != null && url.startsWith(URL);
+        }
+
+        @Override
+        public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+            return new DriverPropertyInfo[0];
+        }
+
+        @Override
+        public int getMajorVersion() { return 1; }
+
+        @Override
+        public int getMinorVersion() { return 0; }
+
+        @Override
+        public boolean jdbcCompliant() { return false; }
+
+        @Override
+        public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+            throw new SQLFeatureNotSupportedException();
+        }
+    }
+}
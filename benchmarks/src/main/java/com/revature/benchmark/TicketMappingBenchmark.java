@@ -0,0 +1,47 @@
+package com.revature.benchmark;
+
+import com.revature.model.Ticket;
+import com.revature.repository.TicketCursor;
+import com.revature.repository.PostgresTicketRepository;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how PostgresTicketRepository turns rows into Tickets, both all at once (getTicketsFiltered) and one at a time
+ * through a cursor (openTicketsFiltered), with StubDatabase supplying the rows. The stub's ResultSet is a dynamic
+ * proxy, which adds a small fixed cost to every column read; comparisons between runs are what matter here.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TicketMappingBenchmark {
+    @Param({"10", "1000", "100000"})
+    public int rows;
+
+    private final PostgresTicketRepository repository = new PostgresTicketRepository();
+
+    @Setup
+    public void setUp() throws SQLException {
+        StubDatabase.install();
+        StubDatabase.setTicketCount(rows);
+    }
+
+    @Benchmark
+    public List<Ticket> getTicketsFiltered() {
+        return repository.getTicketsFiltered(-1, null, null);
+    }
+
+    @Benchmark
+    public void openTicketsFiltered(Blackhole blackhole) throws SQLException {
+        try (TicketCursor cursor = repository.openTicketsFiltered(-1, null, null, 0, -1)) {
+            for (Ticket ticket : cursor) blackhole.consume(ticket);
+        }
+    }
+}
@@ -1,36 +1,126 @@
 package com.revature;
 
 import com.revature.controller.*;
+import com.revature.service.Service;
+import com.revature.service.TicketService;
+import com.revature.utils.ConfigUtil;
+import com.revature.utils.ConnectionPool;
+import com.revature.utils.ConnectionUtil;
+import com.revature.utils.DatabaseExecutor;
+import com.revature.utils.Metrics;
+import com.revature.utils.RateLimiter;
+import com.revature.utils.RequestExecutor;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.Arrays;
 
 public class Main {
     public static void main(String[] args) {
         HttpServer server;
+        //How many connections the OS may queue up before the server accepts them (0 means the system default)
+        int backlog = ConfigUtil.getInt("PZERO_HTTP_BACKLOG", 128);
         try {
-            server = HttpServer.create(new InetSocketAddress(8000), 0);
+            server = HttpServer.create(new InetSocketAddress(ConfigUtil.getInt("PZERO_PORT", 8000)), backlog);
         } catch (IOException ex) {
             throw new RuntimeException(ex);
         }
         if(server == null) throw new RuntimeException("The server failed to start.");
 
+        //Before anything else uses the database, so that one the server can't work with stops it here
+        Service.prepareDatabase();
+
+        //Null unless clients are rate limited; the listing endpoints, which can read whole tables, get a smaller budget
+        RateLimiter limiter = RateLimiter.fromConfig();
+        RateLimiter.Budget standard = limiter == null ? null : limiter.getStandardBudget();
+        RateLimiter.Budget listing = limiter == null ? null : limiter.getListingBudget();
+
         //Providing endpoint URLs (actions affecting employees)
-        server.createContext("/getEmployeeList", new ControllerGetEmployees());
-        server.createContext("/register", new ControllerRegisterUser());
-        server.createContext("/login", new ControllerLoginUser());
-        server.createContext("/promoteEmployee", new ControllerPromoteUser());
-        server.createContext("/demoteEmployee", new ControllerDemoteUser());
+        register(server, "/getEmployeeList", new ControllerGetEmployees(), listing);
+        register(server, "/register", new ControllerRegisterUser(), standard);
+        register(server, "/login", new ControllerLoginUser(), standard);
+        register(server, "/promoteEmployee", new ControllerPromoteUser(), standard);
+        register(server, "/demoteEmployee", new ControllerDemoteUser(), standard);
 
         //Providing endpoint URLs (actions affecting tickets)
-        server.createContext("/submitTicket", new ControllerSubmitTicket());
-        server.createContext("/allTickets", new ControllerViewAllTickets());
-        server.createContext("/myTickets", new ControllerViewMyTickets());
-        server.createContext("/finalizeTicket", new ControllerFinalizeTicket());
+        register(server, "/submitTicket", new ControllerSubmitTicket(), standard);
+        register(server, "/submitTickets", new ControllerSubmitTickets(), standard);
+        register(server, "/allTickets", new ControllerViewAllTickets(), listing);
+        register(server, "/myTickets", new ControllerViewMyTickets(), listing);
+        register(server, "/finalizeTicket", new ControllerFinalizeTicket(), standard);
+        register(server, "/finalizeTickets", new ControllerFinalizeTickets(), standard);
+        register(server, "/ticketSummary", new ControllerTicketSummary(), standard);
+        TicketService.startTicketSummary();
+        TicketService.startTicketIndex();
 
-        server.setExecutor(null);
-        System.out.println("Server is running...");
+        //Providing endpoint URLs (monitoring); scrapers aren't limited, so that an overloaded server can still be watched
+        register(server, "/metrics", new ControllerMetrics(), null);
+
+        //A null executor runs every request on the server's single dispatcher thread (PZERO_EXECUTOR=dispatcher)
+        RequestExecutor executor = RequestExecutor.fromConfig();
+        server.setExecutor(executor);
+        //Blocking database work is handed to its own threads, and its results back to the request threads; without a
+        // request executor, responses are sent from the database threads instead
+        if (executor != null) DatabaseExecutor.setCallbackExecutor(executor.callbackExecutor());
+        registerMetrics(executor, limiter);
+        System.out.println("Server is running (executor: " + (executor == null ? "dispatcher" : executor.getMode()) + ")...");
         server.start();
     }
-}
\ No newline at end of file
+
+    //Registers an endpoint, along with the filters that every endpoint shares
+    // @param budget The rate limit that clients of the endpoint are held to (null if they aren't limited)
+    private static HttpContext register(HttpServer server, String path, HttpHandler handler, RateLimiter.Budget budget) {
+        HttpContext context = server.createContext(path, handler);
+        //Measured first, so that requests turned away by the later filters are counted too
+        context.getFilters().add(Metrics.httpFilter());
+        context.getFilters().add(RequestExecutor.overloadFilter());
+        if (budget != null) context.getFilters().add(RateLimiter.filter(budget));
+        return context;
+    }
+
+    //Reports the state of the server's shared resources from /metrics
+    private static void registerMetrics(RequestExecutor executor, RateLimiter limiter) {
+        ConnectionPool pool = ConnectionUtil.getPool();
+        Metrics.register("pzero_db_pool_active", "Database connections currently lent out.", "gauge", pool::getActiveCount);
+        Metrics.register("pzero_db_pool_idle", "Database connections open and waiting to be lent out.", "gauge", pool::getIdleCount);
+        Metrics.register("pzero_db_pool_waiting", "Threads waiting for a database connection.", "gauge", pool::getWaitingCount);
+        Metrics.register("pzero_db_pool_max", "The most database connections that can be open at once.", "gauge", pool::getMaxSize);
+        Metrics.register("pzero_db_pool_borrows_total", "Database connections lent out.", "counter", pool::getBorrowCount);
+        Metrics.register("pzero_db_pool_waits_total", "Times a thread had to wait for a database connection.", "counter", pool::getWaitCount);
+        Metrics.register("pzero_db_pool_timeouts_total", "Times no database connection became available in time.", "counter", pool::getTimeoutCount);
+        Metrics.register("pzero_db_pool_created_total", "Database connections opened.", "counter", pool::getCreatedCount);
+        Metrics.register("pzero_db_pool_destroyed_total", "Database connections closed.", "counter", pool::getDestroyedCount);
+
+        if (executor != null) {
+            Metrics.register("pzero_http_executor_active", "Threads currently handling requests.", "gauge", executor::getActiveCount);
+            Metrics.register("pzero_http_executor_queued", "Requests waiting for a thread.", "gauge", executor::getQueuedCount);
+            Metrics.register("pzero_http_in_flight", "Requests accepted and not yet answered.", "gauge", executor::getInFlightCount);
+            Metrics.register("pzero_http_max_in_flight", "The most requests that can be accepted and not yet answered.", "gauge", executor::getMaxInFlight);
+            Metrics.register("pzero_http_executor_rejected_total", "Requests turned away because the server was overloaded.", "counter", executor::getRejectedCount);
+        }
+
+        Metrics.register("pzero_db_executor_threads", "Threads which run work that may wait on the database.", "gauge", DatabaseExecutor::getThreadCount);
+        Metrics.register("pzero_db_executor_active", "Database threads currently running work.", "gauge", DatabaseExecutor::getActiveCount);
+        Metrics.register("pzero_db_executor_queued", "Work waiting for a database thread.", "gauge", DatabaseExecutor::getQueuedCount);
+        Metrics.register("pzero_db_executor_rejected_total", "Requests turned away because too much work was waiting for the database.", "counter", DatabaseExecutor::getRejectedCount);
+
+        if (limiter != null) {
+            for (RateLimiter.Budget budget : Arrays.asList(limiter.getStandardBudget(), limiter.getListingBudget())) {
+                String prefix = "pzero_rate_limit_" + budget.getName() + "_";
+                Metrics.register(prefix + "admitted_total", "Requests within the " + budget.getName() + " rate limit.", "counter", budget::getAdmittedCount);
+                Metrics.register(prefix + "rejected_total", "Requests turned away by the " + budget.getName() + " rate limit.", "counter", budget::getRejectedCount);
+                Metrics.register(prefix + "keys", "Addresses and callers tracked by the " + budget.getName() + " rate limit.", "gauge", budget::getKeyCount);
+            }
+        }
+
+        Metrics.register("pzero_http_compressed_responses_total", "Responses sent compressed.", "counter", ResponseCompression::getCompressedResponses);
+        Metrics.register("pzero_http_compression_input_bytes_total", "Bytes of responses before they were compressed.", "counter", ResponseCompression::getUncompressedBytes);
+        Metrics.register("pzero_http_compression_output_bytes_total", "Bytes of responses after they were compressed.", "counter", ResponseCompression::getCompressedBytes);
+        Metrics.register("pzero_http_compression_saved_bytes_total", "Bytes not sent thanks to compression.", "counter", ResponseCompression::getBytesSaved);
+
+        Service.registerMetrics();
+    }
+}
@@ -1,53 +1,222 @@
 package com.revature.controller;
 
+import com.revature.utils.ConfigUtil;
+import com.revature.utils.Metrics;
+import com.revature.utils.RateLimiter;
+import com.revature.utils.RequestExecutor;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 
 import java.io.*;
-import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 
 public abstract class Controller implements HttpHandler {
+    //The largest request body that will be read
+    private static final int MAX_REQUEST_BYTES = ConfigUtil.getInt("PZERO_MAX_REQUEST_BYTES", 1024 * 1024);
+    //Each thread keeps the buffer it reads chunked request bodies into, as long as it hasn't grown past this size
+    private static final int RETAINED_BUFFER_BYTES = 64 * 1024;
+    private static final ThreadLocal<byte[]> READ_BUFFER = ThreadLocal.withInitial(() -> new byte[4096]);
+
     protected void sendResponse(HttpExchange exchange, int statusCode, String toSend) throws IOException {
-        exchange.sendResponseHeaders(statusCode, toSend.getBytes().length);
+        byte[] bytes = toSend.getBytes(StandardCharsets.UTF_8);
+        String encoding = negotiateEncoding(exchange);
+        byte[] compressed = ResponseCompression.compress(bytes, encoding);
+        if (compressed != null) {
+            exchange.getResponseHeaders().set("Content-Encoding", encoding);
+            bytes = compressed;
+        }
+        exchange.sendResponseHeaders(statusCode, bytes.length);
         OutputStream os = exchange.getResponseBody();
-        os.write(toSend.getBytes());
+        os.write(bytes);
         os.close();
     }
 
     protected void sendResponse(HttpExchange exchange, WebTuple tuple) throws IOException {
-        sendResponse(exchange, tuple.statusCode(), tuple.response());
+        if (tuple.etag() != null) {
+            //Listings depend on who is asking, so only the client itself may keep them, and must check back every time
+            exchange.getResponseHeaders().set("ETag", tuple.etag());
+            exchange.getResponseHeaders().set("Cache-Control", "private, no-cache");
+        }
+        if (tuple.statusCode() == 304) {
+            //The client already has this response, so there is no body to send
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+        if (tuple.body() == null) {
+            sendResponse(exchange, tuple.statusCode(), tuple.response());
+            return;
+        }
+        //The length of a streamed body isn't known up front, so it is sent with chunked transfer encoding
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        String encoding = negotiateEncoding(exchange);
+        try (StreamingBody body = tuple.body()) {
+            if (encoding != null) {
+                //Compressed as it is written, unless it turns out to be too small to bother
+                try (OutputStream os = ResponseCompression.openBody(exchange, tuple.statusCode(), encoding)) {
+                    body.writeTo(os);
+                }
+                return;
+            }
+            exchange.sendResponseHeaders(tuple.statusCode(), 0);
+            try (OutputStream os = exchange.getResponseBody()) {
+                body.writeTo(os);
+            }
+        }
+    }
+
+    /**
+     * Sends a response which may not be ready yet. The handler can return straight away, freeing its thread for other
+     * requests; the response is sent by whichever thread completes it (normally a request thread, see DatabaseExecutor).
+     * Until then, the request still counts towards PZERO_HTTP_MAX_IN_FLIGHT (see RequestExecutor).
+     * A response refused because the database threads are too far behind is answered with a 503, and one refused because
+     * the caller is over their rate limit with a 429, both telling the client when to try again; one which failed
+     * outright is answered with a 500.
+     */
+    protected void sendResponse(HttpExchange exchange, CompletableFuture<WebTuple> response) {
+        Runnable finished = Metrics.startAsync();
+        Runnable answered = RequestExecutor.startAsync();
+        response.whenComplete((tuple, error) -> {
+            try {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                if (error == null) {
+                    sendResponse(exchange, tuple);
+                } else if (cause instanceof RateLimiter.LimitExceededException) {
+                    long waitNanos = ((RateLimiter.LimitExceededException) cause).getWaitNanos();
+                    exchange.getResponseHeaders().set("Retry-After", Long.toString(RateLimiter.retryAfterSeconds(waitNanos)));
+                    sendResponse(exchange, 429, RateLimiter.LIMITED_MESSAGE);
+                } else if (cause instanceof RejectedExecutionException) {
+                    exchange.getResponseHeaders().set("Retry-After", "1");
+                    sendResponse(exchange, 503, "The server is too busy to handle this request right now. Please try again.");
+                } else {
+                    error.printStackTrace();
+                    sendResponse(exchange, 500, "Something went wrong.");
+                }
+            } catch (IOException | RuntimeException e) {
+                //Most likely the client went away; nobody is waiting for this exchange any more
+                exchange.close();
+            } finally {
+                finished.run();
+                answered.run();
+            }
+        });
+    }
+
+    //Picks how to compress the response to a request, if at all
+    private String negotiateEncoding(HttpExchange exchange) {
+        String encoding = ResponseCompression.negotiate(exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+        //Caches between here and the client must keep the compressed and uncompressed responses apart
+        if (encoding != null) exchange.getResponseHeaders().add("Vary", "Accept-Encoding");
+        return encoding;
+    }
+
+    //The ETags of responses that the client already has, if it sent any
+    protected String getIfNoneMatch(HttpExchange exchange) {
+        return exchange.getRequestHeaders().getFirst("If-None-Match");
     }
 
-    protected String getRequestBodyString(HttpExchange exchange) {
-        InputStream is = exchange.getRequestBody();
+    /**
+     * Reads the whole body of a request as bytes, ready to be parsed as JSON.
+     * Bodies larger than PZERO_MAX_REQUEST_BYTES are refused with a 413, without reading any more of them than that.
+     * @return The body, or null if it was too large (in which case the response has already been sent)
+     */
+    protected byte[] readRequestBody(HttpExchange exchange) throws IOException {
+        //A body that says up front that it is too large isn't read at all
+        String contentLength = exchange.getRequestHeaders().getFirst("Content-Length");
+        long declaredLength = -1;
+        if (contentLength != null) {
+            try {
+                declaredLength = Long.parseLong(contentLength.trim());
+            } catch (NumberFormatException e) {
+                declaredLength = -1;
+            }
+        }
+        if (declaredLength > MAX_REQUEST_BYTES) {
+            sendBodyTooLarge(exchange);
+            return null;
+        }
 
-        //Converting InputStream into a String
-        StringBuilder textBuilder = new StringBuilder();
+        try (InputStream is = exchange.getRequestBody()) {
+            if (declaredLength >= 0) {
+                //The length is known, so the body is read straight into an array of exactly that size
+                byte[] body = new byte[(int) declaredLength];
+                int read = 0;
+                while (read < body.length) {
+                    int n = is.read(body, read, body.length - read);
+                    if (n == -1) return Arrays.copyOf(body, read);
+                    read += n;
+                }
+                return body;
+            }
 
-        //ASCII
-        try (Reader reader = new BufferedReader(new InputStreamReader(is, Charset.forName(StandardCharsets.UTF_8.name())))) {
-            int c;
-            while ((c = reader.read()) != -1) {
-                textBuilder.append((char) c);
+            //Otherwise (a chunked body) it is read in bulk into this thread's buffer, which grows as needed
+            byte[] buffer = READ_BUFFER.get();
+            int read = 0;
+            int n;
+            while ((n = is.read(buffer, read, buffer.length - read)) != -1) {
+                read += n;
+                if (read == buffer.length) {
+                    if (buffer.length >= MAX_REQUEST_BYTES + 1) break;
+                    buffer = Arrays.copyOf(buffer, (int) Math.min((long) buffer.length * 2, MAX_REQUEST_BYTES + 1L));
+                    if (buffer.length <= RETAINED_BUFFER_BYTES) READ_BUFFER.set(buffer);
+                }
             }
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+            if (read > MAX_REQUEST_BYTES) {
+                sendBodyTooLarge(exchange);
+                return null;
+            }
+            return Arrays.copyOf(buffer, read);
         }
-        return textBuilder.toString();
+    }
+
+    private void sendBodyTooLarge(HttpExchange exchange) throws IOException {
+        //The rest of the body is never read, so the connection can't be used for another request
+        exchange.getResponseHeaders().set("Connection", "close");
+        sendResponse(exchange, 413, "The request body may be at most " + MAX_REQUEST_BYTES + " bytes long.");
     }
 
     //This subclass is used by Controllers to send both the information about what happened when fulfilling a request and
     // an HTTP status code relevant to that response.
+    //Large responses can instead carry a StreamingBody, which is written straight into the response once the
+    // headers have been sent rather than being built up as a String first.
+    //Responses which can be revalidated by the client also carry an ETag.
     public static class WebTuple {
         private int statusCode;
         private String response;
+        private StreamingBody body;
+        private String etag;
         public WebTuple(int statusCode, String response){
             this.statusCode = statusCode;
             this.response = response;
         }
 
+        public WebTuple(int statusCode, StreamingBody body){
+            this.statusCode = statusCode;
+            this.body = body;
+        }
+
         public int statusCode(){ return statusCode; }
         public String response(){ return response; }
+        public StreamingBody body(){ return body; }
+        public String etag(){ return etag; }
+
+        public WebTuple withETag(String etag){
+            this.etag = etag;
+            return this;
+        }
+    }
+
+    //Writes the body of a response directly to the client.
+    //A body may hold resources (such as an open database cursor) until it is closed, which the Controller always
+    // does once the response has been sent, whether or not writing it succeeded.
+    public interface StreamingBody extends Closeable {
+        void writeTo(OutputStream out) throws IOException;
+
+        @Override
+        default void close() throws IOException {}
     }
 }
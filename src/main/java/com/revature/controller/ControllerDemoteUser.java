@@ -11,7 +11,8 @@ public class ControllerDemoteUser extends Controller {
     public void handle(HttpExchange exchange) throws IOException {
         String httpVerb = exchange.getRequestMethod();
         if(httpVerb.equals("PUT")){
-            String body = getRequestBodyString(exchange);
+            byte[] body = readRequestBody(exchange);
+            if (body == null) return; //Too large; a 413 has already been sent
             sendResponse(exchange,
                     EmployeeService.alterEmployeeRole(body, Employee.Roles.STANDARD));
         } else {
@@ -0,0 +1,21 @@
+package com.revature.controller;
+
+import com.revature.service.TicketService;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+
+public class ControllerFinalizeTickets extends Controller {
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        String httpVerb = exchange.getRequestMethod();
+        if(httpVerb.equals("PUT")){
+            byte[] body = readRequestBody(exchange);
+            if (body == null) return; //Too large; a 413 has already been sent
+            sendResponse(exchange,
+                    TicketService.finalizeTickets(body));
+        } else {
+            sendResponse(exchange, 405, "That action is prohibited.");
+        }
+    }
+}
@@ -10,10 +10,11 @@ public class ControllerGetEmployees extends Controller {
     @Override
     public void handle(HttpExchange exchange) throws IOException {
         String httpVerb = exchange.getRequestMethod();
-        String body = getRequestBodyString(exchange);
+        byte[] body = readRequestBody(exchange);
+        if (body == null) return; //Too large; a 413 has already been sent
 
         if(Objects.equals(httpVerb, "GET")) {
-            sendResponse(exchange, EmployeeService.getAllEmployees(body));
+            sendResponse(exchange, EmployeeService.getAllEmployees(body, getIfNoneMatch(exchange)));
         } else {
             sendResponse(exchange, 405, "That action is prohibited.");
         }
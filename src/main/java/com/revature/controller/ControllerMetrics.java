@@ -0,0 +1,20 @@
+package com.revature.controller;
+
+import com.revature.utils.Metrics;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+
+public class ControllerMetrics extends Controller {
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        String httpVerb = exchange.getRequestMethod();
+        if(httpVerb.equals("GET")){
+            //The content type Prometheus expects for its text format
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            sendResponse(exchange, 200, Metrics.render());
+        } else {
+            sendResponse(exchange, 405, "That action is prohibited.");
+        }
+    }
+}
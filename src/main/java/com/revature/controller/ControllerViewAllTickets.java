@@ -10,9 +10,10 @@ public class ControllerViewAllTickets extends Controller {
     public void handle(HttpExchange exchange) throws IOException {
         String httpVerb = exchange.getRequestMethod();
         if(httpVerb.equals("GET")){
-            String body = getRequestBodyString(exchange);
+            byte[] body = readRequestBody(exchange);
+            if (body == null) return; //Too large; a 413 has already been sent
             sendResponse(exchange,
-                    TicketService.getTicketsFiltered(body));
+                    TicketService.getTicketsFiltered(body, getIfNoneMatch(exchange)));
         } else {
             sendResponse(exchange, 405, "That action is prohibited.");
         }
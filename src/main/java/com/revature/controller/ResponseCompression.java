@@ -0,0 +1,216 @@
+package com.revature.controller;
+
+import com.revature.utils.ConfigUtil;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses responses with gzip or deflate for clients that accept it (see the Accept-Encoding request header).
+ * Responses smaller than PZERO_COMPRESSION_MIN_BYTES are sent as they are, since compressing them saves little and
+ * costs CPU time on both ends.
+ */
+public final class ResponseCompression {
+    private static final boolean ENABLED = ConfigUtil.getBoolean("PZERO_COMPRESSION", true);
+    private static final int MIN_BYTES = ConfigUtil.getInt("PZERO_COMPRESSION_MIN_BYTES", 1024);
+    //From 1 (fastest) to 9 (smallest); JSON already compresses well at the lower levels
+    private static final int LEVEL = ConfigUtil.getInt("PZERO_COMPRESSION_LEVEL", 4);
+    private static final int BUFFER_SIZE = 8192;
+
+    //How many bytes of responses were compressed, and how many bytes they took once compressed
+    private static final LongAdder uncompressedBytes = new LongAdder();
+    private static final LongAdder compressedBytes = new LongAdder();
+    private static final LongAdder compressedResponses = new LongAdder();
+
+    private ResponseCompression() {}
+
+    public static long getUncompressedBytes() { return uncompressedBytes.sum(); }
+    public static long getCompressedBytes() { return compressedBytes.sum(); }
+    public static long getBytesSaved() { return uncompressedBytes.sum() - compressedBytes.sum(); }
+    public static long getCompressedResponses() { return compressedResponses.sum(); }
+
+    /**
+     * Picks the encoding to compress a response with.
+     * @param acceptEncoding The Accept-Encoding header of the request (may be null)
+     * @return "gzip" or "deflate", or null if the response should not be compressed
+     */
+    static String negotiate(String acceptEncoding) {
+        if (!ENABLED || acceptEncoding == null) return null;
+        boolean gzip = false, deflate = false;
+        for (String part : acceptEncoding.split(",")) {
+            String[] codingAndParams = part.trim().split(";");
+            String coding = codingAndParams[0].trim().toLowerCase();
+            //A quality of 0 means that the client does not accept this encoding
+            boolean accepted = true;
+            for (int i = 1; i < codingAndParams.length; i++) {
+                String param = codingAndParams[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        accepted = Double.parseDouble(param.substring(2)) > 0;
+                    } catch (NumberFormatException e) {
+                        accepted = false;
+                    }
+                }
+            }
+            if (coding.equals("gzip") || coding.equals("x-gzip") || coding.equals("*")) gzip |= accepted;
+            else if (coding.equals("deflate")) deflate |= accepted;
+        }
+        return gzip ? "gzip" : deflate ? "deflate" : null;
+    }
+
+    /**
+     * Compresses a whole response that is already in memory.
+     * @return The compressed bytes, or null if they are not worth sending instead of the originals
+     */
+    static byte[] compress(byte[] bytes, String encoding) throws IOException {
+        if (encoding == null || bytes.length < MIN_BYTES) return null;
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 4);
+        try (OutputStream os = encoder(compressed, encoding)) {
+            os.write(bytes);
+        }
+        if (compressed.size() >= bytes.length) return null;
+        record(bytes.length, compressed.size());
+        return compressed.toByteArray();
+    }
+
+    /**
+     * Opens the body of a response whose length isn't known up front. The headers are only sent once either
+     * MIN_BYTES have been written, in which case the rest is compressed as it is written and sent in chunks, or the
+     * stream is closed, in which case the response is sent as it is, with its length.
+     * @param encoding The encoding picked by negotiate (must not be null)
+     */
+    static OutputStream openBody(HttpExchange exchange, int statusCode, String encoding) {
+        return new DeferredBody(exchange, statusCode, encoding);
+    }
+
+    private static void record(long uncompressed, long compressed) {
+        uncompressedBytes.add(uncompressed);
+        compressedBytes.add(compressed);
+        compressedResponses.increment();
+    }
+
+    private static DeflaterOutputStream encoder(OutputStream out, String encoding) throws IOException {
+        if (encoding.equals("gzip")) {
+            return new GZIPOutputStream(out, BUFFER_SIZE) {
+                {
+                    def.setLevel(LEVEL);
+                }
+            };
+        }
+        return new DeflaterStream(out, new Deflater(LEVEL));
+    }
+
+    //A DeflaterOutputStream which frees the native memory of its own Deflater when closed
+    private static class DeflaterStream extends DeflaterOutputStream {
+        DeflaterStream(OutputStream out, Deflater deflater) {
+            super(out, deflater, BUFFER_SIZE);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                def.end();
+            }
+        }
+    }
+
+    //Counts the bytes that make it past the encoder
+    private static class CountingStream extends FilterOutputStream {
+        private long count;
+
+        CountingStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    private static class DeferredBody extends OutputStream {
+        private final HttpExchange exchange;
+        private final int statusCode;
+        private final String encoding;
+        private ByteArrayOutputStream buffer = new ByteArrayOutputStream(); //null once the headers have been sent
+        private OutputStream target;
+        private CountingStream counter;
+        private long uncompressed;
+        private boolean closed;
+
+        DeferredBody(HttpExchange exchange, int statusCode, String encoding) {
+            this.exchange = exchange;
+            this.statusCode = statusCode;
+            this.encoding = encoding;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (buffer != null) {
+                if (buffer.size() + len < MIN_BYTES) {
+                    buffer.write(b, off, len);
+                    return;
+                }
+                startCompressing();
+            }
+            target.write(b, off, len);
+            uncompressed += len;
+        }
+
+        private void startCompressing() throws IOException {
+            exchange.getResponseHeaders().set("Content-Encoding", encoding);
+            exchange.sendResponseHeaders(statusCode, 0);
+            counter = new CountingStream(exchange.getResponseBody());
+            target = encoder(counter, encoding);
+            byte[] buffered = buffer.toByteArray();
+            buffer = null;
+            target.write(buffered);
+            uncompressed += buffered.length;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            //Flushing part of a compressed stream would end its current block early, so it is left to close()
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            if (buffer != null) {
+                //Small enough to send as it is
+                exchange.sendResponseHeaders(statusCode, buffer.size() == 0 ? -1 : buffer.size());
+                try (OutputStream os = exchange.getResponseBody()) {
+                    buffer.writeTo(os);
+                }
+                return;
+            }
+            try {
+                target.close();
+            } finally {
+                record(uncompressed, counter.count);
+            }
+        }
+    }
+}
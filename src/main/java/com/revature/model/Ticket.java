@@ -8,6 +8,7 @@ public class Ticket {
     private BigDecimal amount; //The amount, in dollars, that this ticket is asking for
     private String description; //A description of the purchase
     private int employeeId; //The employee associated with this ticket.
+    private int id; //This ticket's ID in the database (0 if it has not been saved yet)
 
     public StatusValues getStatus() {
         return status;
@@ -29,6 +30,10 @@ public class Ticket {
         return employeeId;
     }
 
+    public int getId() {
+        return id;
+    }
+
     //Valid statuses of a ticket. When created, the ticket must be PENDING.
     //When the ticket is processed, it becomes either APPROVED or DENIED, and cannot be changed further.
     public enum StatusValues {PENDING, APPROVED, DENIED}
@@ -64,4 +69,12 @@ public class Ticket {
         this.reimbursementType = reimbursementType;
         this.status = status;
     }
+
+    public Ticket (int employeeId, BigDecimal amount, String description, ReimbursementType reimbursementType, StatusValues status, int id){
+        this(employeeId, amount, description, reimbursementType, status);
+        if (id < 1) {
+            throw new IllegalStateException("The ID of a ticket must be at least 1");
+        }
+        this.id = id;
+    }
 }
@@ -0,0 +1,81 @@
+package com.revature.repository;
+
+import com.revature.controller.Controller;
+import com.revature.model.Employee;
+import com.revature.utils.LruCache;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class is how [EmployeeService] interacts with the employees of an EmbeddedStore. Every employee is in memory,
+ * so nothing is cached.
+ */
+class EmbeddedEmployeeRepository implements EmployeeRepository {
+    private final EmbeddedStore store;
+    //Counts up every time an employee is added or changed
+    private final AtomicLong version = new AtomicLong();
+
+    EmbeddedEmployeeRepository(EmbeddedStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public Controller.WebTuple createNewEmployee(String email, String password) {
+        try {
+            if (store.register(email, password.hashCode()) == null) {
+                return new Controller.WebTuple(403, "That email address is already in use.");
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            version.incrementAndGet();
+            return new Controller.WebTuple(500, email + " could not be registered.");
+        }
+        version.incrementAndGet();
+        return new Controller.WebTuple(200, email + " was successfully registered.");
+    }
+
+    @Override
+    public Employee getEmployeeByEmail(String email) {
+        return email == null ? null : store.employeeByEmail(email);
+    }
+
+    @Override
+    public Employee getEmployeeById(int id) {
+        return store.employeeById(id);
+    }
+
+    @Override
+    public long getVersion() { return version.get(); }
+
+    @Override
+    public LruCache<String, Employee> getCacheByEmail() { return null; }
+
+    @Override
+    public LruCache<Integer, Employee> getCacheById() { return null; }
+
+    @Override
+    public List<Employee> getAllEmployees() {
+        ArrayList<Employee> employeeList = new ArrayList<>(store.employees());
+        employeeList.sort(Comparator.comparingInt(Employee::getId));
+        return employeeList;
+    }
+
+    @Override
+    public Controller.WebTuple alterEmployeeRole(String otherUserEmail, Employee.Roles newRole) {
+        try {
+            if (store.changeRole(otherUserEmail, newRole) == null) {
+                return new Controller.WebTuple(400, "The account whose role you are changing doesn't exist!");
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            version.incrementAndGet();
+            return new Controller.WebTuple(500, "Something went wrong while saving the change.");
+        }
+        version.incrementAndGet();
+        return new Controller.WebTuple(200, otherUserEmail + " is now a " + newRole + " kind of employee!");
+    }
+}
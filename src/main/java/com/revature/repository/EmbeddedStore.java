@@ -0,0 +1,537 @@
+package com.revature.repository;
+
+import com.revature.model.Employee;
+import com.revature.model.Ticket;
+import com.revature.utils.ConfigUtil;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Keeps every employee and ticket in memory and in files on local disk, for running without a Postgres server
+ * (PZERO_STORE=embedded). Its repositories are getEmployeeRepository and getTicketRepository.
+ *
+ * Every change (registering, changing a role, submitting and finalizing tickets) is checked against the tables in
+ * memory, appended to a write-ahead log and applied, one change at a time, and is acknowledged once the log has been
+ * synced to disk. When a log segment grows past PZERO_STORE_SEGMENT_BYTES, a new segment is started and a snapshot of
+ * the tables as of that moment is written in the background, after which the older segments are deleted. On startup,
+ * the latest snapshot is loaded and the segments after it are replayed.
+ * Readers may see a change a moment before it is durable; if the log cannot be written, no further change is accepted.
+ */
+public class EmbeddedStore {
+    private static final String SNAPSHOT_PREFIX = "snapshot-", SNAPSHOT_SUFFIX = ".dat", TEMPORARY_SUFFIX = ".tmp";
+    private static final int SNAPSHOT_MAGIC = 0x505A5331; //"PZS1"
+
+    //The kinds of records in the log
+    private static final byte EMPLOYEE_REGISTERED = 1, EMPLOYEE_ROLE_CHANGED = 2, TICKETS_CREATED = 3, TICKETS_FINALIZED = 4;
+
+    private static final Employee.Roles[] ROLES = Employee.Roles.values();
+    private static final Ticket.StatusValues[] STATUSES = Ticket.StatusValues.values();
+    private static final Ticket.ReimbursementType[] TYPES = Ticket.ReimbursementType.values();
+
+    private final Path directory;
+    private final long segmentMaxBytes;
+    private final WriteAheadLog log;
+
+    //Taken by every change, so that changes are checked, logged and applied in one order
+    private final Object writeLock = new Object();
+    private final ConcurrentHashMap<String, Employee> employeesByEmail = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, Employee> employeesById = new ConcurrentHashMap<>();
+    //Every ticket, indexed for filtered listings; it has no memory budget, since it is the only copy
+    private final TicketIndex tickets = new TicketIndex(0);
+    private int lastEmployeeID;
+    private int lastTicketID;
+
+    private final ExecutorService snapshotWriter = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "embedded-store-snapshot");
+        t.setDaemon(true);
+        return t;
+    });
+    private final LongAdder snapshots = new LongAdder();
+
+    private final EmployeeRepository employeeRepository = new EmbeddedEmployeeRepository(this);
+    private final TicketRepository ticketRepository = new EmbeddedTicketRepository(this);
+
+    /**
+     * Opens the store in PZERO_STORE_DIR if PZERO_STORE is "embedded".
+     * @return The store, or null if employees and tickets are kept in Postgres
+     */
+    public static EmbeddedStore fromConfig() {
+        if (!ConfigUtil.getString("PZERO_STORE", "postgres").equalsIgnoreCase("embedded")) return null;
+        try {
+            EmbeddedStore store = new EmbeddedStore(Paths.get(ConfigUtil.getString("PZERO_STORE_DIR", "pzero-data")),
+                    ConfigUtil.getLong("PZERO_STORE_SEGMENT_BYTES", 64L * 1024 * 1024),
+                    ConfigUtil.getBoolean("PZERO_STORE_FSYNC", true));
+            store.addManager(ConfigUtil.getString("PZERO_STORE_MANAGER_EMAIL", null),
+                    ConfigUtil.getString("PZERO_STORE_MANAGER_PASSWORD", null));
+            return store;
+        } catch (IOException e) {
+            throw new UncheckedIOException("The embedded store could not be opened.", e);
+        }
+    }
+
+    /**
+     * Opens the store kept in a directory, creating it if needed, and loads everything in it.
+     * @param segmentMaxBytes How large a log segment may grow before a snapshot is taken and a new one is started
+     * @param fsync           Whether changes are forced to disk before they are acknowledged
+     */
+    public EmbeddedStore(Path directory, long segmentMaxBytes, boolean fsync) throws IOException {
+        this.directory = directory;
+        this.segmentMaxBytes = segmentMaxBytes;
+        Files.createDirectories(directory);
+        long start = System.nanoTime();
+
+        //Snapshots that were still being written when the server stopped are incomplete
+        try (DirectoryStream<Path> leftovers = Files.newDirectoryStream(directory, "*" + TEMPORARY_SUFFIX)) {
+            for (Path leftover : leftovers) Files.delete(leftover);
+        }
+
+        Tables tables = new Tables();
+        List<Long> snapshotNumbers = WriteAheadLog.numberedFiles(directory, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+        long snapshot = snapshotNumbers.isEmpty() ? -1 : snapshotNumbers.get(snapshotNumbers.size() - 1);
+        if (snapshot != -1) readSnapshot(snapshotPath(snapshot), tables);
+
+        //The snapshot holds everything logged before its segment, so only that segment and later ones are replayed
+        List<Long> segments = WriteAheadLog.segments(directory);
+        long lastSegment = snapshot;
+        for (int i = 0; i < segments.size(); i++) {
+            long segment = segments.get(i);
+            lastSegment = Math.max(lastSegment, segment);
+            if (segment < snapshot) continue;
+            Path file = WriteAheadLog.segmentPath(directory, segment);
+            long valid = WriteAheadLog.replay(file, tables::apply);
+            long size = Files.size(file);
+            if (valid < size) {
+                //Only the end of the last segment can be torn, by a crash in the middle of a write
+                if (i < segments.size() - 1) throw new IOException(file + " is corrupt at byte " + valid + ".");
+                System.out.println("Dropping " + (size - valid) + " bytes of incomplete records at the end of " + file + ".");
+                WriteAheadLog.truncate(file, valid);
+            }
+        }
+
+        employeesById.putAll(tables.employees);
+        for (Employee employee : tables.employees.values()) employeesByEmail.put(employee.getEmail(), employee);
+        List<Ticket> allTickets = new ArrayList<>(tables.tickets.values());
+        allTickets.sort(Comparator.comparingInt(Ticket::getId));
+        tickets.load(allTickets);
+        lastEmployeeID = tables.lastEmployeeID;
+        lastTicketID = tables.lastTicketID;
+
+        //New changes always go to a new segment. If anything had to be replayed, a snapshot of it is written straight
+        // away, so that the next startup doesn't have to replay it again.
+        long segment = lastSegment + 1;
+        log = new WriteAheadLog(directory, segment, fsync);
+        if (tables.replayedRecords > 0) writeSnapshot(segment, captureState());
+
+        System.out.println("Embedded store opened with " + employeesById.size() + " employees and " + allTickets.size() +
+                " tickets (" + tables.replayedRecords + " log records replayed) in " +
+                (System.nanoTime() - start) / 1_000_000 + "ms.");
+    }
+
+    public EmployeeRepository getEmployeeRepository() { return employeeRepository; }
+    public TicketRepository getTicketRepository() { return ticketRepository; }
+
+    //Statistics about the store, for /metrics
+    public long getLoggedRecords() { return log.getRecordCount(); }
+    public long getLoggedBytes() { return log.getAppendedBytes(); }
+    public long getSyncCount() { return log.getSyncCount(); }
+    public long getSnapshotCount() { return snapshots.sum(); }
+    public boolean hasFailed() { return log.hasFailed(); }
+
+    //Registers a manager with the given credentials unless they are already in use, so that a new store has one
+    private void addManager(String email, String password) throws IOException {
+        if (email == null || password == null || employeesByEmail.containsKey(email)) return;
+        register(email, password.hashCode());
+        changeRole(email, Employee.Roles.MANAGER);
+    }
+
+    Employee employeeByEmail(String email) {
+        return employeesByEmail.get(email);
+    }
+
+    Employee employeeById(int id) {
+        return employeesById.get(id);
+    }
+
+    Collection<Employee> employees() {
+        return employeesById.values();
+    }
+
+    TicketIndex tickets() {
+        return tickets;
+    }
+
+    /**
+     * Adds a new standard employee.
+     * @return The new employee, or null if the email address is already in use
+     */
+    Employee register(String email, int password) throws IOException {
+        long position;
+        Employee employee;
+        synchronized (writeLock) {
+            if (employeesByEmail.containsKey(email)) return null;
+            employee = new Employee(email, password, Employee.Roles.STANDARD, lastEmployeeID + 1);
+            position = log.append(encodeRegistered(employee));
+            lastEmployeeID = employee.getId();
+            employeesById.put(employee.getId(), employee);
+            employeesByEmail.put(email, employee);
+            rotateIfFull();
+        }
+        log.sync(position);
+        return employee;
+    }
+
+    /**
+     * Changes the role of an employee.
+     * @return The changed employee, or null if nobody has that email address
+     */
+    Employee changeRole(String email, Employee.Roles role) throws IOException {
+        long position;
+        Employee changed;
+        synchronized (writeLock) {
+            Employee employee = employeesByEmail.get(email);
+            if (employee == null) return null;
+            changed = new Employee(email, employee.getPassword(), role, employee.getId());
+            position = log.append(encodeRoleChanged(changed));
+            employeesById.put(changed.getId(), changed);
+            employeesByEmail.put(email, changed);
+            rotateIfFull();
+        }
+        log.sync(position);
+        return changed;
+    }
+
+    /**
+     * Adds new pending tickets, all in one log record, so that either all of them are kept or none are.
+     * @return The tickets as they were added, with their IDs, in the same order
+     */
+    List<Ticket> createTickets(List<Ticket> newTickets) throws IOException {
+        long position;
+        List<Ticket> created = new ArrayList<>(newTickets.size());
+        synchronized (writeLock) {
+            int id = lastTicketID;
+            for (Ticket ticket : newTickets) {
+                created.add(new Ticket(ticket.getEmployeeId(), ticket.getAmount(), ticket.getDescription(),
+                        ticket.getReimbursementType(), Ticket.StatusValues.PENDING, ++id));
+            }
+            position = log.append(encodeCreated(created));
+            lastTicketID = id;
+            for (Ticket ticket : created) tickets.recordCreated(ticket);
+            rotateIfFull();
+        }
+        log.sync(position);
+        return created;
+    }
+
+    /**
+     * Finalizes the given tickets which are still pending, and sorts every requested ID into result.
+     * @return The tickets that were finalized, as they were before (that is, still pending)
+     */
+    List<Ticket> finalizeTickets(Collection<Integer> ids, Ticket.StatusValues newStatus,
+                                 TicketRepository.FinalizeResult result) throws IOException {
+        long position;
+        List<Ticket> pending = new ArrayList<>();
+        synchronized (writeLock) {
+            for (int id : ids) {
+                Ticket ticket = tickets.get(id);
+                if (ticket == null) result.missing.add(id);
+                else if (ticket.getStatus() != Ticket.StatusValues.PENDING) result.alreadyFinal.add(id);
+                else {
+                    pending.add(ticket);
+                    result.finalized.add(id);
+                }
+            }
+            position = finalize(pending, newStatus);
+        }
+        log.sync(position);
+        return pending;
+    }
+
+    /**
+     * Finalizes every pending ticket matching the given filters (see TicketRepository.finalizeTicketsMatching).
+     * @return The tickets that were finalized, as they were before (that is, still pending)
+     */
+    List<Ticket> finalizeTicketsMatching(int filterEmplID, Ticket.ReimbursementType filterType, BigDecimal maxAmount,
+                                         Ticket.StatusValues newStatus) throws IOException {
+        long position;
+        List<Ticket> pending = new ArrayList<>();
+        synchronized (writeLock) {
+            for (Ticket ticket : tickets.find(filterEmplID, Ticket.StatusValues.PENDING, filterType, 0, -1)) {
+                if (maxAmount == null || ticket.getAmount().compareTo(maxAmount) <= 0) pending.add(ticket);
+            }
+            position = finalize(pending, newStatus);
+        }
+        log.sync(position);
+        return pending;
+    }
+
+    //Logs and applies the finalizing of tickets which are known to be pending; must be called with the write lock held
+    // @return The position in the log to sync up to (0 if there was nothing to finalize)
+    private long finalize(List<Ticket> pending, Ticket.StatusValues newStatus) throws IOException {
+        if (pending.isEmpty()) return 0;
+        long position = log.append(encodeFinalized(pending, newStatus));
+        for (Ticket ticket : pending) tickets.recordFinalized(ticket.getId(), newStatus);
+        rotateIfFull();
+        return position;
+    }
+
+    //Starts a new log segment once the current one is full, and snapshots the tables as of that point in the
+    // background; must be called with the write lock held, after the last change has been applied
+    private void rotateIfFull() throws IOException {
+        if (log.getSegmentBytes() < segmentMaxBytes) return;
+        long segment = log.rotate();
+        State state = captureState();
+        snapshotWriter.execute(() -> {
+            try {
+                writeSnapshot(segment, state);
+            } catch (IOException e) {
+                //The log segments are only deleted once a snapshot is written, so nothing is lost
+                e.printStackTrace();
+            }
+        });
+    }
+
+    //Copies the references to every employee and ticket; both are immutable, so this is a consistent copy of the tables
+    private State captureState() {
+        State state = new State();
+        state.employees = new ArrayList<>(employeesById.values());
+        state.employees.sort(Comparator.comparingInt(Employee::getId));
+        state.tickets = tickets.find(-1, null, null, 0, -1);
+        state.lastEmployeeID = lastEmployeeID;
+        state.lastTicketID = lastTicketID;
+        return state;
+    }
+
+    /**
+     * Writes the tables as they were at the start of a log segment, then deletes the segments and snapshots that it
+     * replaces. The snapshot is written to a temporary file and renamed once it is complete and on disk, so a crash
+     * never leaves a partial snapshot behind under its real name.
+     */
+    private void writeSnapshot(long segment, State state) throws IOException {
+        Path temporary = directory.resolve(snapshotPath(segment).getFileName() + TEMPORARY_SUFFIX);
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            CRC32 crc = new CRC32();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new CheckedOutputStream(Channels.newOutputStream(channel), crc), 64 * 1024));
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(state.lastEmployeeID);
+            out.writeInt(state.lastTicketID);
+            out.writeInt(state.employees.size());
+            for (Employee employee : state.employees) writeEmployee(out, employee);
+            out.writeInt(state.tickets.size());
+            for (Ticket ticket : state.tickets) {
+                writeTicket(out, ticket);
+                out.writeByte(ticket.getStatus().ordinal());
+            }
+            out.flush();
+            //The checksum of everything before it ends the file
+            ByteBuffer checksum = ByteBuffer.allocate(8).putLong(crc.getValue());
+            checksum.flip();
+            while (checksum.hasRemaining()) channel.write(checksum);
+            channel.force(true);
+        }
+        Files.move(temporary, snapshotPath(segment), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        WriteAheadLog.syncDirectory(directory);
+        snapshots.increment();
+
+        for (long older : WriteAheadLog.segments(directory)) {
+            if (older < segment) Files.deleteIfExists(WriteAheadLog.segmentPath(directory, older));
+        }
+        for (long older : WriteAheadLog.numberedFiles(directory, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX)) {
+            if (older < segment) Files.deleteIfExists(snapshotPath(older));
+        }
+    }
+
+    private static void readSnapshot(Path file, Tables tables) throws IOException {
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(file), 64 * 1024), crc))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) throw new IOException(file + " is not a snapshot.");
+            tables.lastEmployeeID = in.readInt();
+            tables.lastTicketID = in.readInt();
+            for (int i = in.readInt(); i > 0; i--) {
+                Employee employee = readEmployee(in);
+                tables.employees.put(employee.getId(), employee);
+            }
+            for (int i = in.readInt(); i > 0; i--) {
+                Ticket ticket = readTicket(in, null);
+                tables.tickets.put(ticket.getId(), ticket);
+            }
+            long expected = crc.getValue();
+            if (in.readLong() != expected) throw new IOException(file + " is corrupt.");
+        }
+    }
+
+    private Path snapshotPath(long segment) {
+        return directory.resolve(String.format("%s%016d%s", SNAPSHOT_PREFIX, segment, SNAPSHOT_SUFFIX));
+    }
+
+    private static byte[] encodeRegistered(Employee employee) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(EMPLOYEE_REGISTERED);
+        writeEmployee(out, employee);
+        return bytes.toByteArray();
+    }
+
+    private static byte[] encodeRoleChanged(Employee employee) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(8);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(EMPLOYEE_ROLE_CHANGED);
+        out.writeInt(employee.getId());
+        out.writeByte(employee.getRole().ordinal());
+        return bytes.toByteArray();
+    }
+
+    private static byte[] encodeCreated(List<Ticket> created) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * created.size());
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(TICKETS_CREATED);
+        out.writeInt(created.size());
+        for (Ticket ticket : created) writeTicket(out, ticket);
+        return bytes.toByteArray();
+    }
+
+    private static byte[] encodeFinalized(List<Ticket> finalized, Ticket.StatusValues newStatus) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(8 + 4 * finalized.size());
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(TICKETS_FINALIZED);
+        out.writeByte(newStatus.ordinal());
+        out.writeInt(finalized.size());
+        for (Ticket ticket : finalized) out.writeInt(ticket.getId());
+        return bytes.toByteArray();
+    }
+
+    private static void writeEmployee(DataOutputStream out, Employee employee) throws IOException {
+        out.writeInt(employee.getId());
+        writeString(out, employee.getEmail());
+        out.writeInt(employee.getPassword());
+        out.writeByte(employee.getRole().ordinal());
+    }
+
+    private static Employee readEmployee(DataInputStream in) throws IOException {
+        int id = in.readInt();
+        String email = readString(in);
+        int password = in.readInt();
+        return new Employee(email, password, ROLES[in.readByte()], id);
+    }
+
+    //Writes everything about a ticket except its status
+    private static void writeTicket(DataOutputStream out, Ticket ticket) throws IOException {
+        out.writeInt(ticket.getId());
+        out.writeInt(ticket.getEmployeeId());
+        out.writeByte(ticket.getReimbursementType().ordinal());
+        writeString(out, ticket.getAmount().toPlainString());
+        writeString(out, ticket.getDescription());
+    }
+
+    //Reads what writeTicket wrote; the status is read after the rest if it is not given
+    private static Ticket readTicket(DataInputStream in, Ticket.StatusValues status) throws IOException {
+        int id = in.readInt();
+        int employeeID = in.readInt();
+        Ticket.ReimbursementType type = TYPES[in.readByte()];
+        BigDecimal amount = new BigDecimal(readString(in));
+        String description = readString(in);
+        if (status == null) status = STATUSES[in.readByte()];
+        return new Ticket(employeeID, amount, description, type, status, id);
+    }
+
+    //Strings are written as their length and UTF-8 bytes, since writeUTF can't write more than 64KB
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    //The tables being rebuilt from a snapshot and the log while the store opens
+    private static class Tables {
+        private final Map<Integer, Employee> employees = new HashMap<>();
+        private final Map<Integer, Ticket> tickets = new HashMap<>();
+        private int lastEmployeeID;
+        private int lastTicketID;
+        private long replayedRecords;
+
+        void apply(DataInputStream record) throws IOException {
+            switch (record.readByte()) {
+                case EMPLOYEE_REGISTERED: {
+                    Employee employee = readEmployee(record);
+                    employees.put(employee.getId(), employee);
+                    lastEmployeeID = Math.max(lastEmployeeID, employee.getId());
+                    break;
+                }
+                case EMPLOYEE_ROLE_CHANGED: {
+                    Employee employee = employees.get(record.readInt());
+                    Employee.Roles role = ROLES[record.readByte()];
+                    if (employee != null) {
+                        employees.put(employee.getId(), new Employee(employee.getEmail(), employee.getPassword(), role, employee.getId()));
+                    }
+                    break;
+                }
+                case TICKETS_CREATED:
+                    for (int i = record.readInt(); i > 0; i--) {
+                        Ticket ticket = readTicket(record, Ticket.StatusValues.PENDING);
+                        tickets.put(ticket.getId(), ticket);
+                        lastTicketID = Math.max(lastTicketID, ticket.getId());
+                    }
+                    break;
+                case TICKETS_FINALIZED: {
+                    Ticket.StatusValues status = STATUSES[record.readByte()];
+                    for (int i = record.readInt(); i > 0; i--) {
+                        Ticket old = tickets.get(record.readInt());
+                        if (old == null) continue;
+                        tickets.put(old.getId(), new Ticket(old.getEmployeeId(), old.getAmount(), old.getDescription(),
+                                old.getReimbursementType(), status, old.getId()));
+                    }
+                    break;
+                }
+                default:
+                    throw new IOException("Unknown kind of log record.");
+            }
+            replayedRecords++;
+        }
+    }
+
+    //A copy of the tables, to be written as a snapshot
+    private static class State {
+        private List<Employee> employees;
+        private List<Ticket> tickets;
+        private int lastEmployeeID;
+        private int lastTicketID;
+    }
+}
@@ -0,0 +1,151 @@
+package com.revature.repository;
+
+import com.revature.controller.Controller;
+import com.revature.model.Ticket;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class is how the [TicketService] class interacts with the tickets of an EmbeddedStore. Listings are answered by
+ * the store's own ticket index, which always holds every ticket.
+ */
+class EmbeddedTicketRepository implements TicketRepository {
+    private final EmbeddedStore store;
+    //Counts and totals of tickets, kept up to date by the write methods of this class and rebuilt from the store
+    private final TicketSummary summary;
+    private final AtomicLong version = new AtomicLong();
+
+    EmbeddedTicketRepository(EmbeddedStore store) {
+        this.store = store;
+        this.summary = new TicketSummary(group -> {
+            for (Ticket ticket : store.tickets().find(-1, null, null, 0, -1)) {
+                group.add(ticket.getEmployeeId(), ticket.getStatus(), ticket.getReimbursementType(), 1, ticket.getAmount());
+            }
+        });
+    }
+
+    @Override
+    public Controller.WebTuple finalizeTicketByID(int id, Ticket.StatusValues newStatus) {
+        //Bad input handling
+        if (newStatus == null)
+            return new Controller.WebTuple(400, "That is not a valid status for tickets.");
+        if (newStatus == Ticket.StatusValues.PENDING)
+            return new Controller.WebTuple(403, "Tickets cannot be made pending after having been finalized!");
+
+        FinalizeResult result = finalizeTicketsByID(Collections.singletonList(id), newStatus);
+        if (result == null) return new Controller.WebTuple(500, "Something went wrong.");
+        if (!result.finalized.isEmpty()) return new Controller.WebTuple(200, "The ticket was successfully updated.");
+        if (!result.missing.isEmpty()) return new Controller.WebTuple(404, "That ticket does not exist!");
+        return new Controller.WebTuple(403, "That ticket has already been finalized!");
+    }
+
+    @Override
+    public FinalizeResult finalizeTicketsByID(List<Integer> ids, Ticket.StatusValues newStatus) {
+        FinalizeResult result = new FinalizeResult();
+        try {
+            //Each ticket is only counted once, in order of ID, as the Postgres repository does
+            recordFinalized(store.finalizeTickets(new TreeSet<>(ids), newStatus, result), newStatus);
+        } catch (IOException e) {
+            e.printStackTrace();
+            version.incrementAndGet();
+            return null;
+        }
+        return result;
+    }
+
+    @Override
+    public FinalizeResult finalizeTicketsMatching(int filterEmplID, Ticket.ReimbursementType filterType, BigDecimal maxAmount,
+                                                  Ticket.StatusValues newStatus) {
+        FinalizeResult result = new FinalizeResult();
+        try {
+            List<Ticket> finalized = store.finalizeTicketsMatching(filterEmplID, filterType, maxAmount, newStatus);
+            for (Ticket ticket : finalized) result.finalized.add(ticket.getId());
+            recordFinalized(finalized, newStatus);
+        } catch (IOException e) {
+            e.printStackTrace();
+            version.incrementAndGet();
+            return null;
+        }
+        return result;
+    }
+
+    private void recordFinalized(List<Ticket> finalized, Ticket.StatusValues newStatus) {
+        for (Ticket ticket : finalized) {
+            summary.recordFinalized(ticket.getEmployeeId(), ticket.getReimbursementType(), ticket.getAmount(), newStatus);
+        }
+        if (!finalized.isEmpty()) version.incrementAndGet();
+    }
+
+    @Override
+    public TicketSummary getSummary() {
+        return summary;
+    }
+
+    @Override
+    public long getVersion() {
+        return version.get();
+    }
+
+    @Override
+    public TicketIndex getIndex() {
+        return store.tickets();
+    }
+
+    @Override
+    public void loadIndex() {
+        //The store's index was loaded when the store was opened
+    }
+
+    @Override
+    public Ticket getTicketByID(int id) {
+        return store.tickets().get(id);
+    }
+
+    @Override
+    public Controller.WebTuple createNewTicket(int employeeID, Ticket.ReimbursementType type, BigDecimal amount, String description) {
+        try {
+            createNewTickets(Collections.singletonList(new Ticket(employeeID, amount, description, type, Ticket.StatusValues.PENDING)));
+        } catch (UnavailableException e) {
+            return new Controller.WebTuple(500, "Ticket could not be submitted.");
+        }
+        return new Controller.WebTuple(200, "Ticket was successfully submitted.");
+    }
+
+    @Override
+    public List<Integer> createNewTickets(List<Ticket> tickets) {
+        List<Ticket> created;
+        try {
+            created = store.createTickets(tickets);
+        } catch (IOException e) {
+            //The store stops taking writes after an I/O error, so the tickets themselves aren't at fault
+            e.printStackTrace();
+            version.incrementAndGet();
+            throw new UnavailableException(e);
+        }
+        List<Integer> ids = new ArrayList<>(created.size());
+        for (Ticket ticket : created) {
+            summary.recordCreated(ticket.getEmployeeId(), ticket.getReimbursementType(), ticket.getAmount());
+            ids.add(ticket.getId());
+        }
+        version.incrementAndGet();
+        return ids;
+    }
+
+    @Override
+    public List<Ticket> getTicketsFiltered(int filterEmplID, Ticket.StatusValues filterStatus, Ticket.ReimbursementType filterType,
+                                           int afterID, int limit) {
+        return store.tickets().find(filterEmplID, filterStatus, filterType, afterID, limit);
+    }
+
+    @Override
+    public Iterable<Ticket> openTicketsFiltered(int filterEmplID, Ticket.StatusValues filterStatus, Ticket.ReimbursementType filterType,
+                                                int afterID, int limit) {
+        return getTicketsFiltered(filterEmplID, filterStatus, filterType, afterID, limit);
+    }
+}
@@ -0,0 +1,121 @@
+package com.revature.repository;
+
+import com.revature.model.Employee;
+import com.revature.model.Ticket;
+import com.revature.utils.ConnectionUtil;
+import com.revature.utils.Metrics;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+
+/**
+ * The IDs that the statuses, tickettypes and roles tables give to Ticket.StatusValues, Ticket.ReimbursementType and
+ * Employee.Roles. They are read once at startup (see load), so that the Postgres repositories can read and write the
+ * ID columns of tickets and employees directly, without joining those tables; an ID is turned back into its enum value
+ * by indexing an array.
+ * Until they are loaded, the IDs are taken to be ordinal() + 1, which is how the tables are set up.
+ */
+public final class LookupTables {
+    //The largest ID a lookup table may use, so that the arrays indexed by ID stay small
+    private static final int MAX_ID = 1024;
+
+    private static volatile Table<Ticket.StatusValues> statuses = Table.byOrdinal(Ticket.StatusValues.class);
+    private static volatile Table<Ticket.ReimbursementType> types = Table.byOrdinal(Ticket.ReimbursementType.class);
+    private static volatile Table<Employee.Roles> roles = Table.byOrdinal(Employee.Roles.class);
+
+    private LookupTables() {}
+
+    /**
+     * Reads the lookup tables from the database, checking that each one has exactly one row for every value of its enum
+     * and nothing else.
+     * @throws IllegalStateException If a table could not be read, or doesn't match its enum; the server can't map
+     *  tickets or employees correctly, so it shouldn't start
+     */
+    public static void load() {
+        Metrics.Timer timer = Metrics.timeQuery("LookupTables.load");
+        try (Connection con = ConnectionUtil.getConnection()) {
+            Table<Ticket.StatusValues> loadedStatuses = read(con, "statuses", "SELECT ticsid, ticsname FROM statuses", Ticket.StatusValues.class);
+            Table<Ticket.ReimbursementType> loadedTypes = read(con, "tickettypes", "SELECT tictid, tictname FROM tickettypes", Ticket.ReimbursementType.class);
+            Table<Employee.Roles> loadedRoles = read(con, "roles", "SELECT roleid, rolename FROM roles", Employee.Roles.class);
+            statuses = loadedStatuses;
+            types = loadedTypes;
+            roles = loadedRoles;
+        } catch (SQLException e) {
+            throw new IllegalStateException("The lookup tables could not be read.", e);
+        } finally {
+            timer.stop();
+        }
+    }
+
+    private static <E extends Enum<E>> Table<E> read(Connection con, String tableName, String sql, Class<E> enumType) throws SQLException {
+        E[] values = enumType.getEnumConstants();
+        int[] idOf = new int[values.length];
+        @SuppressWarnings("unchecked")
+        E[] byId = (E[]) java.lang.reflect.Array.newInstance(enumType, MAX_ID + 1);
+        int maxId = 0;
+
+        Statement stmt = con.createStatement();
+        ResultSet rs = stmt.executeQuery(sql);
+        while (rs.next()) {
+            int id = rs.getInt(1);
+            String name = rs.getString(2);
+            if (id < 1 || id > MAX_ID)
+                throw new IllegalStateException("The " + tableName + " table gives " + name + " the ID " + id + ", which is not between 1 and " + MAX_ID + ".");
+            E value;
+            try {
+                value = Enum.valueOf(enumType, name == null ? "" : name.trim());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalStateException("The " + tableName + " table has " + name + ", which is not one of " + Arrays.toString(values) + ".");
+            }
+            if (byId[id] != null || idOf[value.ordinal()] != 0)
+                throw new IllegalStateException("The " + tableName + " table has more than one row for ID " + id + " or for " + value + ".");
+            byId[id] = value;
+            idOf[value.ordinal()] = id;
+            maxId = Math.max(maxId, id);
+        }
+        for (E value : values) {
+            if (idOf[value.ordinal()] == 0)
+                throw new IllegalStateException("The " + tableName + " table has no row for " + value + ".");
+        }
+        return new Table<>(tableName, Arrays.copyOf(byId, maxId + 1), idOf);
+    }
+
+    public static Ticket.StatusValues status(int id) { return statuses.get(id); }
+    public static int statusId(Ticket.StatusValues status) { return statuses.idOf[status.ordinal()]; }
+    public static Ticket.ReimbursementType type(int id) { return types.get(id); }
+    public static int typeId(Ticket.ReimbursementType type) { return types.idOf[type.ordinal()]; }
+    public static Employee.Roles role(int id) { return roles.get(id); }
+    public static int roleId(Employee.Roles role) { return roles.idOf[role.ordinal()]; }
+
+    //One lookup table, in both directions: enum values indexed by ID, and IDs indexed by ordinal
+    private static final class Table<E extends Enum<E>> {
+        private final String name;
+        private final E[] byId;
+        private final int[] idOf;
+
+        Table(String name, E[] byId, int[] idOf) {
+            this.name = name;
+            this.byId = byId;
+            this.idOf = idOf;
+        }
+
+        static <E extends Enum<E>> Table<E> byOrdinal(Class<E> enumType) {
+            E[] values = enumType.getEnumConstants();
+            E[] byId = Arrays.copyOf(values, values.length + 1);
+            System.arraycopy(values, 0, byId, 1, values.length);
+            byId[0] = null;
+            int[] idOf = new int[values.length];
+            for (E value : values) idOf[value.ordinal()] = value.ordinal() + 1;
+            return new Table<>(enumType.getSimpleName(), byId, idOf);
+        }
+
+        E get(int id) {
+            E value = id >= 0 && id < byId.length ? byId[id] : null;
+            if (value == null) throw new IllegalStateException("BAD DATA: " + id + " is not an ID in the " + name + " table");
+            return value;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.revature.repository;
+
+import com.revature.controller.Controller;
+import com.revature.model.Employee;
+import com.revature.utils.ConfigUtil;
+import com.revature.utils.ConnectionUtil;
+import com.revature.utils.LruCache;
+import com.revature.utils.Metrics;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class is how [EmployeeService] interacts with the database, when employees are kept in Postgres
+ */
+public class PostgresEmployeeRepository implements EmployeeRepository {
+    //Employees that have been read recently, by email address and by ID. Every write made through this class updates
+    // these, so they only go stale if the employees table is changed by something else (for at most the TTL).
+    private final LruCache<String, Employee> cacheByEmail = new LruCache<>(
+            ConfigUtil.getInt("PZERO_EMPLOYEE_CACHE_MAX", 1000), ConfigUtil.getLong("PZERO_EMPLOYEE_CACHE_TTL_MS", 60000));
+    private final LruCache<Integer, Employee> cacheById = new LruCache<>(
+            ConfigUtil.getInt("PZERO_EMPLOYEE_CACHE_MAX", 1000), ConfigUtil.getLong("PZERO_EMPLOYEE_CACHE_TTL_MS", 60000));
+    //Counts up every time an employee is added or changed, so that anything derived from the employees can tell
+    // whether it is out of date. A read only caches what it found if no write happened while it was running, since it
+    // may have read the row from before that write.
+    private final AtomicLong version = new AtomicLong();
+
+    //Attempt to add an employee to the database; this will return a String indicating
+    // what happened when this function was called
+    public Controller.WebTuple createNewEmployee(String email, String password) {
+        //Checking for an existing employee and adding the new one happen in a single statement. The NOT EXISTS
+        // check covers databases without a unique index on emplemail; where there is one, ON CONFLICT also covers two
+        // registrations with the same email address racing each other.
+        String sql = "INSERT INTO Employees (emplEmail, emplPassword) " +
+                "SELECT ?, ? WHERE NOT EXISTS (SELECT 1 FROM Employees WHERE emplEmail = ?) " +
+                "ON CONFLICT DO NOTHING " +
+                "RETURNING emplid, emplrole";
+        Metrics.Timer timer = Metrics.timeQuery("EmployeeRepository.createNewEmployee");
+        try (Connection con = ConnectionUtil.getConnection()) {
+            PreparedStatement prst = con.prepareStatement(sql);
+
+            prst.setString(1, email);
+            prst.setInt(2, password.hashCode());
+            prst.setString(3, email);
+
+            ResultSet rs = prst.executeQuery();
+            //No row is returned when nothing was inserted
+            if (!rs.next()) return new Controller.WebTuple(403, "That email address is already in use.");
+            written(new Employee(email, password.hashCode(), LookupTables.role(rs.getInt(2)), rs.getInt(1)));
+        } catch (SQLException | RuntimeException e) {
+            e.printStackTrace();
+            return new Controller.WebTuple(500, email + " could not be registered.");
+        } finally {
+            timer.stop();
+        }
+
+        return new Controller.WebTuple(200, email + " was successfully registered.");
+    }
+
+    /**
+     * This attempts to get the Employee object associated with a particular email address.
+     * @param email The email of the employee to find
+     * @return An Employee representing the one in the database if it exists; null otherwise
+     */
+    public Employee getEmployeeByEmail(String email) {
+        if(email == null) return null;
+        Employee cached = cacheByEmail.get(email);
+        if(cached != null) return cached;
+
+        //Querying the database
+        String sql = "SELECT emplid, emplemail, emplpassword, emplrole FROM Employees WHERE emplemail = ?";
+        long readVersion = version.get();
+        return cacheIfCurrent(queryOneEmployee("EmployeeRepository.getEmployeeByEmail", sql, stmt -> stmt.setString(1, email)), readVersion);
+    }
+
+    /**
+     * This attempts to get the Employee object with a particular ID.
+     * @param id The ID of the employee to find
+     * @return An Employee representing the one in the database if it exists; null otherwise
+     */
+    public Employee getEmployeeById(int id) {
+        Employee cached = cacheById.get(id);
+        if(cached != null) return cached;
+
+        //Querying the database
+        String sql = "SELECT emplid, emplemail, emplpassword, emplrole FROM Employees WHERE emplid = ?";
+        long readVersion = version.get();
+        return cacheIfCurrent(queryOneEmployee("EmployeeRepository.getEmployeeById", sql, stmt -> stmt.setInt(1, id)), readVersion);
+    }
+
+    //Runs a query which selects (emplid, emplemail, emplpassword, emplrole) and returns the first employee it finds
+    private Employee queryOneEmployee(String queryName, String sql, ParameterSetter parameters) {
+        List<Employee> employeeList = new ArrayList<>();
+        Employee employee = null;
+
+        //Create the connection
+        Metrics.Timer timer = Metrics.timeQuery(queryName);
+        try (Connection con = ConnectionUtil.getConnection()) {
+            //Create the querying object
+            PreparedStatement stmt = con.prepareStatement(sql);
+            parameters.set(stmt);
+            //Execute the query
+            ResultSet rs = stmt.executeQuery();
+            //Mapping information from a table to our data structure
+            while (rs.next()) {
+                employeeList.add(mapEmployee(rs));
+            }
+        } catch (SQLException | IllegalStateException e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            timer.stop();
+        }
+        if(employeeList.size() > 0) employee = employeeList.get(0);
+        return employee;
+    }
+
+    //Maps a row selected as (emplid, emplemail, emplpassword, emplrole) to an Employee
+    private static Employee mapEmployee(ResultSet rs) throws SQLException {
+        return new Employee(rs.getString(2), rs.getInt(3), LookupTables.role(rs.getInt(4)), rs.getInt(1));
+    }
+
+    //Remembers an employee that was just read from the database, unless the employees were written since readVersion.
+    // This is synchronized with written and forget, so that a write can't land between the check and the put.
+    private synchronized Employee cacheIfCurrent(Employee employee, long readVersion) {
+        if(employee != null && version.get() == readVersion) {
+            cacheByEmail.put(employee.getEmail(), employee);
+            cacheById.put(employee.getId(), employee);
+        }
+        return employee;
+    }
+
+    //Remembers an employee that was just written to the database
+    private synchronized void written(Employee employee) {
+        version.incrementAndGet();
+        cacheByEmail.put(employee.getEmail(), employee);
+        cacheById.put(employee.getId(), employee);
+    }
+
+    //Forgets an employee whose row may or may not have been changed, so that it is read again next time
+    private synchronized void forget(String email) {
+        version.incrementAndGet();
+        Employee cached = cacheByEmail.get(email);
+        cacheByEmail.remove(email);
+        if (cached != null) cacheById.remove(cached.getId());
+    }
+
+    public long getVersion() { return version.get(); }
+
+    //Statistics about the employee caches, for sizing them
+    public LruCache<String, Employee> getCacheByEmail() { return cacheByEmail; }
+    public LruCache<Integer, Employee> getCacheById() { return cacheById; }
+
+    //Sets the parameters of a prepared query
+    private interface ParameterSetter {
+        void set(PreparedStatement stmt) throws SQLException;
+    }
+
+    /**
+     * Creates a list of Employees representing every employee in the database.
+     * @return An ArrayList representing containing all information about every employee in the database.
+     */
+    public ArrayList<Employee> getAllEmployees() {
+        ArrayList<Employee> employeeList = new ArrayList<>();
+
+        //Querying the database
+        String sql = "SELECT emplid, emplemail, emplpassword, emplrole FROM Employees";
+        //Create the connection
+        Metrics.Timer timer = Metrics.timeQuery("EmployeeRepository.getAllEmployees");
+        try (Connection con = ConnectionUtil.getConnection()) {
+            //Create the querying object
+            Statement stmt = con.createStatement();
+            //Execute the query
+            ResultSet rs = stmt.executeQuery(sql);
+            //Mapping information from a table to our data structure
+            while (rs.next()) {
+                employeeList.add(mapEmployee(rs));
+            }
+        } catch (SQLException | IllegalStateException e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            timer.stop();
+        }
+        return employeeList;
+    }
+
+    /**
+     * This attempts to promote/demote the employee specified in otherUserEmail to a new role. The caller is responsible
+     * for verifying that whoever asked for this is a manager before calling this.
+     * This will return a String describing the result of this operation, whether successful or otherwise.
+     *
+     * @param otherUserEmail The email address of the account whose role is to change.
+     * @param newRole        The new role of the account.
+     * @return A string describing the result of this operation. This operation will fail if
+     * otherUserEmail does not point to any entry in the database.
+     */
+    public Controller.WebTuple alterEmployeeRole(String otherUserEmail, Employee.Roles newRole) {
+        //Performing the database action; no row is returned if the employee doesn't exist
+        String sql = "UPDATE employees SET emplrole = ? WHERE emplemail = ? RETURNING emplid, emplpassword";
+        //Create the connection
+        Metrics.Timer timer = Metrics.timeQuery("EmployeeRepository.alterEmployeeRole");
+        try (Connection con = ConnectionUtil.getConnection()) {
+            PreparedStatement stmt = con.prepareStatement(sql);
+            stmt.setInt(1, LookupTables.roleId(newRole));
+            stmt.setString(2, otherUserEmail);
+            //Execute the query
+            ResultSet rs = stmt.executeQuery();
+            if (!rs.next()) return new Controller.WebTuple(400, "The account whose role you are changing doesn't exist!");
+            written(new Employee(otherUserEmail, rs.getInt(2), newRole, rs.getInt(1)));
+        } catch (SQLException e) {
+            e.printStackTrace();
+            //The update may or may not have happened, so the employee has to be read again next time
+            forget(otherUserEmail);
+            return new Controller.WebTuple(500, "Something went wrong, likely on the database side.");
+        } finally {
+            timer.stop();
+        }
+        return new Controller.WebTuple(200, otherUserEmail + " is now a " + newRole + " kind of employee!");
+    }
+}
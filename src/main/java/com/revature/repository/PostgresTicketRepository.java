@@ -0,0 +1,417 @@
+package com.revature.repository;
+
+import com.revature.controller.Controller;
+import com.revature.model.Ticket;
+import com.revature.utils.ConfigUtil;
+import com.revature.utils.ConnectionUtil;
+import com.revature.utils.Metrics;
+
+import java.math.BigDecimal;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class is how the [TicketService] class interacts with the database, when tickets are kept in Postgres.
+ */
+public class PostgresTicketRepository implements TicketRepository {
+    //How many rows a ticket cursor fetches from the database at a time
+    private static final int FETCH_SIZE = ConfigUtil.getInt("PZERO_TICKET_FETCH_SIZE", 500);
+
+    //Counts and totals of tickets, kept up to date by the write methods of this class
+    private final TicketSummary summary = new TicketSummary();
+    //Every ticket, indexed in memory, once loadIndex has been called; also kept up to date by the write methods
+    private final TicketIndex index = new TicketIndex(ConfigUtil.getLong("PZERO_TICKET_INDEX_MAX_BYTES", 64L * 1024 * 1024));
+    //Counts up every time tickets are added or changed, so that anything derived from the tickets can tell whether it
+    // is out of date. A failed write counts too, since it may have happened anyway.
+    private final AtomicLong version = new AtomicLong();
+
+    //Which optional parts the filtered ticket query has; every combination has its own fixed query text
+    static final int FILTER_EMPLOYEE = 1, FILTER_STATUS = 2, FILTER_TYPE = 4, FILTER_AFTER = 8, FILTER_LIMIT = 16;
+    //The text of the filtered ticket query, indexed by its combination of FILTER_ flags. Since the text is the same
+    // every time a combination is used, the driver can keep each one prepared on the server for every pooled connection.
+    private static final String[] FILTERED_TICKETS_SQL = new String[32];
+    static {
+        for (int filters = 0; filters < FILTERED_TICKETS_SQL.length; filters++) {
+            FILTERED_TICKETS_SQL[filters] = filteredTicketsSql(filters);
+        }
+    }
+
+    //Attempts to finalize a ticket, setting its status to what is specified in the parameter.
+    //You cannot un-finalize a ticket by changing its status to PENDING, or by changing a ticket which is not PENDING.
+    //Returns a WebTuple containing a description of what happened when this function was run and a
+    // relevant HTTP status code.
+    public Controller.WebTuple finalizeTicketByID(int id, Ticket.StatusValues newStatus) {
+        //Bad input handling
+        if (newStatus == null)
+            return new Controller.WebTuple(400, "That is not a valid status for tickets.");
+        if (newStatus == Ticket.StatusValues.PENDING)
+            return new Controller.WebTuple(403, "Tickets cannot be made pending after having been finalized!");
+
+        //Update the ticket only if it is still pending, and read the status it had before this statement, all at once.
+        //The UPDATE re-checks tickstatus on the locked row, so if two managers finalize the same ticket at the same time,
+        // only one of them succeeds. (The outer SELECT doesn't see the UPDATE's change, so it gets the old status.)
+        String sql = "WITH updated AS (" +
+                    "UPDATE tickets SET tickstatus = ? WHERE tickid = ? AND tickstatus = ? RETURNING tickid, tickemplid, ticktype, tickamount" +
+                ") SELECT (SELECT count(*) FROM updated), (SELECT tickstatus FROM tickets WHERE tickid = ?), " +
+                "updated.tickemplid, updated.ticktype, updated.tickamount FROM (SELECT 1) AS one LEFT JOIN updated ON true";
+        //Create the connection
+        Metrics.Timer timer = Metrics.timeQuery("TicketRepository.finalizeTicketByID");
+        try (Connection con = ConnectionUtil.getConnection()) {
+            PreparedStatement stmt = con.prepareStatement(sql);
+            stmt.setInt(1, LookupTables.statusId(newStatus));
+            stmt.setInt(2, id);
+            stmt.setInt(3, LookupTables.statusId(Ticket.StatusValues.PENDING));
+            stmt.setInt(4, id);
+            //Execute the query
+            ResultSet rs = stmt.executeQuery();
+            rs.next();
+            if (rs.getInt(1) == 1) {
+                summary.recordFinalized(rs.getInt(3), LookupTables.type(rs.getInt(4)), rs.getBigDecimal(5), newStatus);
+                index.recordFinalized(id, newStatus);
+                version.incrementAndGet();
+                return new Controller.WebTuple(200, "The ticket was successfully updated.");
+            }
+            rs.getInt(2);
+            if (rs.wasNull()) return new Controller.WebTuple(404, "That ticket does not exist!");
+            return new Controller.WebTuple(403, "That ticket has already been finalized!");
+        } catch (SQLException e) {
+            e.printStackTrace();
+            version.incrementAndGet();
+            return new Controller.WebTuple(500, "Something went wrong.");
+        } finally {
+            timer.stop();
+        }
+    }
+
+    /**
+     * Finalizes many tickets at once with a single set-based UPDATE. Only tickets that are still pending are changed,
+     * and the check happens on each locked row, so a ticket finalized by someone else in the meantime is left alone.
+     * @param ids       The IDs of the tickets to finalize
+     * @param newStatus APPROVED or DENIED
+     * @return Which of the given tickets were finalized, were already final, or don't exist; null if the update failed
+     */
+    public FinalizeResult finalizeTicketsByID(List<Integer> ids, Ticket.StatusValues newStatus) {
+        //The UPDATE runs first; the outer query then sorts every requested ID into one of the three outcomes.
+        //(The outer query doesn't see the UPDATE's changes, so "exists" is whether the ticket existed beforehand.)
+        String sql = "WITH updated AS (" +
+                    "UPDATE tickets SET tickstatus = ? WHERE tickid = ANY(?) AND tickstatus = ? RETURNING tickid, tickemplid, ticktype, tickamount" +
+                ") SELECT requested.id, updated.tickid IS NOT NULL, EXISTS (SELECT 1 FROM tickets WHERE tickid = requested.id), " +
+                "updated.tickemplid, updated.ticktype, updated.tickamount " +
+                "FROM (SELECT DISTINCT unnest(?::int[]) AS id) AS requested LEFT JOIN updated ON updated.tickid = requested.id " +
+                "ORDER BY requested.id";
+        FinalizeResult result = new FinalizeResult();
+        Metrics.Timer timer = Metrics.timeQuery("TicketRepository.finalizeTicketsByID");
+        try (Connection con = ConnectionUtil.getConnection()) {
+            Array idArray = con.createArrayOf("integer", ids.toArray());
+            PreparedStatement stmt = con.prepareStatement(sql);
+            stmt.setInt(1, LookupTables.statusId(newStatus));
+            stmt.setArray(2, idArray);
+            stmt.setInt(3, LookupTables.statusId(Ticket.StatusValues.PENDING));
+            stmt.setArray(4, idArray);
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                if (rs.getBoolean(2)) {
+                    result.finalized.add(rs.getInt(1));
+                    summary.recordFinalized(rs.getInt(4), LookupTables.type(rs.getInt(5)), rs.getBigDecimal(6), newStatus);
+                    index.recordFinalized(rs.getInt(1), newStatus);
+                }
+                else if (rs.getBoolean(3)) result.alreadyFinal.add(rs.getInt(1));
+                else result.missing.add(rs.getInt(1));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            version.incrementAndGet();
+            return null;
+        } finally {
+            timer.stop();
+        }
+        if (!result.finalized.isEmpty()) version.incrementAndGet();
+        return result;
+    }
+
+    /**
+     * Finalizes every pending ticket that matches the given filters with a single UPDATE.
+     * @param filterEmplID The ID of an employee in the database (-1 causes this filter to be ignored)
+     * @param filterType   A filter on the category of tickets (null causes this filter to be ignored)
+     * @param maxAmount    Only tickets for at most this amount are finalized (null causes this filter to be ignored)
+     * @param newStatus    APPROVED or DENIED
+     * @return The tickets that were finalized; null if the update failed
+     */
+    public FinalizeResult finalizeTicketsMatching(int filterEmplID, Ticket.ReimbursementType filterType, BigDecimal maxAmount,
+                                                  Ticket.StatusValues newStatus) {
+        String sql = "UPDATE tickets SET tickstatus = ? WHERE tickstatus = ?";
+        if(filterEmplID != -1) sql += " AND tickemplid = ?";
+        if(filterType != null) sql += " AND ticktype = ?";
+        if(maxAmount != null) sql += " AND tickamount <= ?";
+        sql += " RETURNING tickid, tickemplid, ticktype, tickamount";
+
+        FinalizeResult result = new FinalizeResult();
+        Metrics.Timer timer = Metrics.timeQuery("TicketRepository.finalizeTicketsMatching");
+        try (Connection con = ConnectionUtil.getConnection()) {
+            PreparedStatement stmt = con.prepareStatement(sql);
+            int parameter = 1;
+            stmt.setInt(parameter++, LookupTables.statusId(newStatus));
+            stmt.setInt(parameter++, LookupTables.statusId(Ticket.StatusValues.PENDING));
+            if(filterEmplID != -1) stmt.setInt(parameter++, filterEmplID);
+            if(filterType != null) stmt.setInt(parameter++, LookupTables.typeId(filterType));
+            if(maxAmount != null) stmt.setBigDecimal(parameter, maxAmount);
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                result.finalized.add(rs.getInt(1));
+                summary.recordFinalized(rs.getInt(2), LookupTables.type(rs.getInt(3)), rs.getBigDecimal(4), newStatus);
+                index.recordFinalized(rs.getInt(1), newStatus);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            version.incrementAndGet();
+            return null;
+        } finally {
+            timer.stop();
+        }
+        if (!result.finalized.isEmpty()) version.incrementAndGet();
+        return result;
+    }
+
+    public TicketSummary getSummary() {
+        return summary;
+    }
+
+    public long getVersion() {
+        return version.get();
+    }
+
+    public TicketIndex getIndex() {
+        return index;
+    }
+
+    //Loads every ticket into the in-memory index, after which it can answer filtered ticket listings
+    public void loadIndex() {
+        index.load(FILTERED_TICKETS_SQL[0], this::mapTicket);
+    }
+
+    public Ticket getTicketByID(int id) {
+        List<Ticket> ticketList = new ArrayList<>();
+        Ticket result = null;
+
+        //Querying the database
+        String sql = "SELECT tickid, tickemplid, tickstatus, ticktype, tickamount, tickdescription FROM tickets WHERE tickid = ?";
+        //Create the connection
+        Metrics.Timer timer = Metrics.timeQuery("TicketRepository.getTicketByID");
+        try (Connection con = ConnectionUtil.getConnection()) {
+            //Create the querying object
+            PreparedStatement stmt = con.prepareStatement(sql);
+            stmt.setInt(1, id);
+            //Execute the query
+            ResultSet rs = stmt.executeQuery();
+            //Mapping information from a table to our data structure
+            while (rs.next()) {
+                ticketList.add(mapTicket(rs));
+            }
+        } catch (SQLException | IllegalStateException e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            timer.stop();
+        }
+
+        if (ticketList.size() > 0) result = ticketList.get(0);
+        return result;
+    }
+
+
+    //Attempt to add a ticket to the database; this will return a String indicating
+    // what happened when this function was called
+    public Controller.WebTuple createNewTicket(int employeeID, Ticket.ReimbursementType type, BigDecimal amount, String description) {
+        String sql = "INSERT INTO TICKETS (tickemplid, ticktype, tickamount, tickdescription) VALUES (?, ?, ?, ?)";
+        int id;
+        Metrics.Timer timer = Metrics.timeQuery("TicketRepository.createNewTicket");
+        try (Connection con = ConnectionUtil.getConnection()) {
+            PreparedStatement prst = con.prepareStatement(sql, new String[]{"tickid"});
+
+            prst.setInt(1, employeeID);
+            prst.setInt(2, LookupTables.typeId(type));
+            prst.setBigDecimal(3, amount);
+            prst.setString(4, description);
+
+            prst.execute();
+            ResultSet keys = prst.getGeneratedKeys();
+            keys.next();
+            id = keys.getInt(1);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            version.incrementAndGet();
+            return new Controller.WebTuple(500, "Ticket could not be submitted.");
+        } finally {
+            timer.stop();
+        }
+        summary.recordCreated(employeeID, type, amount);
+        index.recordCreated(new Ticket(employeeID, amount, description, type, Ticket.StatusValues.PENDING, id));
+        version.incrementAndGet();
+        return new Controller.WebTuple(200,"Ticket was successfully submitted.");
+    }
+
+    /**
+     * Adds many tickets to the database in a single transaction, sending them as one JDBC batch. Either every ticket
+     * is added or none of them are.
+     * @param tickets The tickets to add; their statuses are ignored, since new tickets are always pending
+     * @return The IDs given to the tickets, in the same order, or null if the database refused the tickets themselves
+     * @throws UnavailableException If they could not be added for any other reason (see isDataError)
+     */
+    public List<Integer> createNewTickets(List<Ticket> tickets) {
+        String sql = "INSERT INTO TICKETS (tickemplid, ticktype, tickamount, tickdescription) VALUES (?, ?, ?, ?)";
+        List<Integer> ids = new ArrayList<>(tickets.size());
+        Metrics.Timer timer = Metrics.timeQuery("TicketRepository.createNewTickets");
+        try (Connection con = ConnectionUtil.getConnection()) {
+            con.setAutoCommit(false);
+            PreparedStatement prst = con.prepareStatement(sql, new String[]{"tickid"});
+            for (Ticket ticket : tickets) {
+                prst.setInt(1, ticket.getEmployeeId());
+                prst.setInt(2, LookupTables.typeId(ticket.getReimbursementType()));
+                prst.setBigDecimal(3, ticket.getAmount());
+                prst.setString(4, ticket.getDescription());
+                prst.addBatch();
+            }
+            prst.executeBatch();
+
+            ResultSet keys = prst.getGeneratedKeys();
+            while (keys.next()) {
+                ids.add(keys.getInt(1));
+            }
+            if (ids.size() != tickets.size()) throw new SQLException("Expected " + tickets.size() + " ticket IDs but got " + ids.size());
+            con.commit();
+        } catch (SQLException e) {
+            //Closing the connection without committing rolls the whole batch back
+            if (!isDataError(e)) throw new UnavailableException(e);
+            e.printStackTrace();
+            return null;
+        } finally {
+            timer.stop();
+        }
+        for (int i = 0; i < tickets.size(); i++) {
+            Ticket ticket = tickets.get(i);
+            summary.recordCreated(ticket.getEmployeeId(), ticket.getReimbursementType(), ticket.getAmount());
+            index.recordCreated(new Ticket(ticket.getEmployeeId(), ticket.getAmount(), ticket.getDescription(),
+                    ticket.getReimbursementType(), Ticket.StatusValues.PENDING, ids.get(i)));
+        }
+        version.incrementAndGet();
+        return ids;
+    }
+
+    /**
+     * Gets one page of the tickets matching the given filters, in order of their IDs.
+     * Pages are found by ID (keyset pagination) rather than with an OFFSET, so later pages cost the database no more
+     * to find than the first one.
+     *
+     * @param afterID The ID of the last ticket on the previous page (0 to start from the first ticket)
+     * @param limit   The most tickets to return (-1 for no limit)
+     * @return An ArrayList containing the matching tickets with an ID greater than afterID.
+     */
+    public ArrayList<Ticket> getTicketsFiltered(int filterEmplID, Ticket.StatusValues filterStatus, Ticket.ReimbursementType filterType,
+                                                int afterID, int limit) {
+        ArrayList<Ticket> tickets = new ArrayList<>();
+
+        //Create the connection
+        Metrics.Timer timer = Metrics.timeQuery("TicketRepository.getTicketsFiltered");
+        try (Connection con = ConnectionUtil.getConnection()) {
+            //Create the querying object
+            PreparedStatement stmt = prepareTicketsFiltered(con, filterEmplID, filterStatus, filterType, afterID, limit);
+            //Execute the query
+            ResultSet rs = stmt.executeQuery();
+            //Mapping information from a table to our data structure
+            while (rs.next()) {
+                tickets.add(mapTicket(rs));
+            }
+        } catch (SQLException | IllegalStateException e) {
+            e.printStackTrace();
+            throw new RuntimeException(e);
+        } finally {
+            timer.stop();
+        }
+        return tickets;
+    }
+
+    /**
+     * Works like getTicketsFiltered, except that the matching tickets are not all loaded into memory at once.
+     * The query runs through a server-side cursor which fetches PZERO_TICKET_FETCH_SIZE rows at a time, and each row is
+     * only mapped to a Ticket when the returned cursor reaches it.
+     *
+     * @return An open cursor over the matching tickets. The caller must close it, which returns its connection to the pool.
+     */
+    public TicketCursor openTicketsFiltered(int filterEmplID, Ticket.StatusValues filterStatus, Ticket.ReimbursementType filterType,
+                                            int afterID, int limit) throws SQLException {
+        //Only the time taken to get the first rows is measured; the rest depends on how fast the client reads them
+        Metrics.Timer timer = Metrics.timeQuery("TicketRepository.openTicketsFiltered");
+        Connection con = ConnectionUtil.getConnection();
+        try {
+            //The Postgres driver only uses a cursor (instead of reading every row up front) outside of auto-commit mode
+            con.setAutoCommit(false);
+            PreparedStatement stmt = prepareTicketsFiltered(con, filterEmplID, filterStatus, filterType, afterID, limit);
+            stmt.setFetchSize(FETCH_SIZE);
+            ResultSet rs = stmt.executeQuery();
+            return new TicketCursor(con, stmt, rs, this::mapTicket);
+        } catch (SQLException | RuntimeException e) {
+            con.close();
+            throw e;
+        } finally {
+            timer.stop();
+        }
+    }
+
+    //Prepares the query used by getTicketsFiltered and openTicketsFiltered, with its parameters already set.
+    //The filter values are always bound as parameters, so the query text only depends on which filters are used.
+    private PreparedStatement prepareTicketsFiltered(Connection con, int filterEmplID, Ticket.StatusValues filterStatus,
+                                                     Ticket.ReimbursementType filterType, int afterID, int limit) throws SQLException {
+        int filters = 0;
+        if(filterEmplID != -1) filters |= FILTER_EMPLOYEE;
+        if(filterStatus != null) filters |= FILTER_STATUS;
+        if(filterType != null) filters |= FILTER_TYPE;
+        if(afterID > 0) filters |= FILTER_AFTER;
+        if(limit != -1) filters |= FILTER_LIMIT;
+
+        PreparedStatement stmt = con.prepareStatement(FILTERED_TICKETS_SQL[filters], ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        int parameter = 1;
+        if(filterEmplID != -1) stmt.setInt(parameter++, filterEmplID);
+        if(filterStatus != null) stmt.setInt(parameter++, LookupTables.statusId(filterStatus));
+        if(filterType != null) stmt.setInt(parameter++, LookupTables.typeId(filterType));
+        if(afterID > 0) stmt.setInt(parameter++, afterID);
+        if(limit != -1) stmt.setInt(parameter, limit);
+        return stmt;
+    }
+
+    //Builds the text of the filtered ticket query for one combination of the FILTER_ flags
+    static String filteredTicketsSql(int filters) {
+        String sql = "SELECT tickid, tickemplid, tickstatus, ticktype, tickamount, tickdescription FROM tickets WHERE true";
+        if((filters & FILTER_EMPLOYEE) != 0) sql += " AND tickemplid = ?";
+        if((filters & FILTER_STATUS) != 0) sql += " AND tickstatus = ?";
+        if((filters & FILTER_TYPE) != 0) sql += " AND ticktype = ?";
+        if((filters & FILTER_AFTER) != 0) sql += " AND tickid > ?";
+        //Paging (the ORDER BY is what makes "after" meaningful, so it is only added when paging)
+        if((filters & (FILTER_AFTER | FILTER_LIMIT)) != 0) sql += " ORDER BY tickid";
+        if((filters & FILTER_LIMIT) != 0) sql += " LIMIT ?";
+        return sql;
+    }
+
+    //Maps a row selected as (tickid, tickemplid, tickstatus, ticktype, tickamount, tickdescription) to a Ticket
+    private Ticket mapTicket(ResultSet rs) throws SQLException {
+        return new Ticket(
+                rs.getInt(2),
+                rs.getBigDecimal(5),
+                rs.getString(6),
+                LookupTables.type(rs.getInt(4)),
+                LookupTables.status(rs.getInt(3)),
+                rs.getInt(1));
+    }
+
+    //Whether the database refused a statement because of the values in it: SQLState class 22 (data exception) or 23
+    // (integrity constraint violation). Anything else, such as class 08 (connection exception), a statement timeout or
+    // running out of pooled connections, would have failed whatever the values were.
+    private static boolean isDataError(SQLException e) {
+        for (SQLException next = e; next != null; next = next.getNextException()) {
+            String state = next.getSQLState();
+            if (state != null && (state.startsWith("22") || state.startsWith("23"))) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,176 @@
+package com.revature.repository;
+
+import com.revature.utils.ConfigUtil;
+import com.revature.utils.ConnectionUtil;
+import com.revature.utils.Metrics;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Brings the Postgres schema up to date at startup (PZERO_MIGRATE, on by default). The schema is built by versioned SQL
+ * scripts on the classpath under db/migration, named V<version>__<description>.sql and run in order of version. Each
+ * script that has been applied is recorded in the schema_version table, along with a checksum of its text, so that
+ * it is never run twice; a script which has been changed since it was applied stops the server from starting.
+ * Scripts are applied under an advisory lock, so that servers starting at the same time don't both apply them. Each
+ * script runs in its own transaction, so that one which fails leaves the schema as that script found it, unless its
+ * first line is NO_TRANSACTION: then each of its statements runs on its own, as CREATE INDEX CONCURRENTLY has to.
+ * Such a script should only hold statements that can safely be run again, since one which fails part of the way
+ * through is run again from the start.
+ */
+public final class SchemaMigrations {
+    //Every script, in the order they are applied; a new script is added to the end with the next version
+    private static final String[] SCRIPTS = {
+            "V1__create_schema.sql",
+            "V2__add_query_indexes.sql",
+    };
+    private static final String SCRIPT_DIRECTORY = "db/migration/";
+    //Identifies this application's advisory lock among any others taken on the same database
+    private static final long LOCK_KEY = 0x707A65726FL;
+    //How long a server waits before asking again for the lock that another server holds
+    private static final long LOCK_RETRY_MILLIS = 1000;
+    //The first line of a script whose statements can't run inside a transaction
+    private static final String NO_TRANSACTION = "-- no-transaction";
+
+    private SchemaMigrations() {}
+
+    /**
+     * Applies every script that hasn't been applied yet, unless PZERO_MIGRATE is false.
+     * @throws IllegalStateException If the schema could not be brought up to date; the server shouldn't start against it
+     */
+    public static void run() {
+        if (!ConfigUtil.getBoolean("PZERO_MIGRATE", true)) return;
+        Metrics.Timer timer = Metrics.timeQuery("SchemaMigrations.run");
+        try (Connection con = ConnectionUtil.getConnection()) {
+            Statement stmt = con.createStatement();
+            //A session lock rather than a transaction lock, since some scripts run outside of a transaction; it isn't
+            // released when the connection goes back to the pool, so it is released here
+            lock(stmt);
+            try {
+                migrate(con, stmt);
+            } finally {
+                stmt.execute("SELECT pg_advisory_unlock(" + LOCK_KEY + ")");
+            }
+        } catch (SQLException | IOException e) {
+            throw new IllegalStateException("The database schema could not be brought up to date.", e);
+        } finally {
+            timer.stop();
+        }
+    }
+
+    private static void migrate(Connection con, Statement stmt) throws SQLException, IOException {
+        stmt.execute("CREATE TABLE IF NOT EXISTS schema_version (" +
+                "version integer PRIMARY KEY, script varchar(255) NOT NULL, checksum bigint NOT NULL, " +
+                "applied_at timestamptz NOT NULL DEFAULT now())");
+
+        Map<Integer, Long> applied = new HashMap<>();
+        ResultSet rs = stmt.executeQuery("SELECT version, checksum FROM schema_version");
+        while (rs.next()) applied.put(rs.getInt(1), rs.getLong(2));
+
+        for (String script : SCRIPTS) {
+            int version = versionOf(script);
+            String sql = read(script);
+            long checksum = checksum(sql);
+            Long appliedChecksum = applied.get(version);
+            if (appliedChecksum != null) {
+                if (appliedChecksum != checksum)
+                    throw new IllegalStateException(script + " has been changed since it was applied; add a new script instead.");
+                continue;
+            }
+            if (sql.startsWith(NO_TRANSACTION)) {
+                for (String statement : statements(sql)) stmt.execute(statement);
+                record(con, script, version, checksum);
+            } else {
+                //Rolled back straight away if anything fails, so that the lock can still be released afterwards
+                con.setAutoCommit(false);
+                try {
+                    stmt.execute(sql);
+                    record(con, script, version, checksum);
+                    con.commit();
+                } catch (SQLException | RuntimeException e) {
+                    con.rollback();
+                    throw e;
+                } finally {
+                    con.setAutoCommit(true);
+                }
+            }
+            System.out.println("Applied schema migration " + script + ".");
+        }
+    }
+
+    //Waits for the advisory lock without sitting in a query while another server holds it: CREATE INDEX CONCURRENTLY
+    // waits for every query that started before it to finish, so a server blocked in pg_advisory_lock would deadlock
+    // with the one building the index
+    private static void lock(Statement stmt) throws SQLException {
+        while (true) {
+            ResultSet rs = stmt.executeQuery("SELECT pg_try_advisory_lock(" + LOCK_KEY + ")");
+            rs.next();
+            if (rs.getBoolean(1)) return;
+            System.out.println("Waiting for another server to finish migrating the database schema...");
+            try {
+                Thread.sleep(LOCK_RETRY_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting to migrate the database schema.", e);
+            }
+        }
+    }
+
+    private static void record(Connection con, String script, int version, long checksum) throws SQLException {
+        PreparedStatement record = con.prepareStatement("INSERT INTO schema_version (version, script, checksum) VALUES (?, ?, ?)");
+        record.setInt(1, version);
+        record.setString(2, script);
+        record.setLong(3, checksum);
+        record.executeUpdate();
+    }
+
+    //The statements of a script, each ending with a semicolon at the end of a line; comments between them are kept
+    // with the statement that follows, and a trailing comment on its own is dropped
+    static List<String> statements(String sql) {
+        List<String> statements = new ArrayList<>();
+        for (String statement : sql.split(";[ \\t]*(\\r?\\n|$)")) {
+            boolean onlyComments = true;
+            for (String line : statement.split("\\r?\\n")) {
+                String trimmed = line.trim();
+                if (!trimmed.isEmpty() && !trimmed.startsWith("--")) onlyComments = false;
+            }
+            if (!onlyComments) statements.add(statement.trim());
+        }
+        return statements;
+    }
+
+    //The version at the start of a script's name, such as 2 for V2__add_query_indexes.sql
+    private static int versionOf(String script) {
+        return Integer.parseInt(script.substring(1, script.indexOf("__")));
+    }
+
+    private static String read(String script) throws IOException {
+        try (InputStream in = SchemaMigrations.class.getClassLoader().getResourceAsStream(SCRIPT_DIRECTORY + script)) {
+            if (in == null) throw new IOException(SCRIPT_DIRECTORY + script + " is not on the classpath");
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) != -1) out.write(buffer, 0, n);
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    //Line endings are ignored, so that a checkout with CRLF line endings doesn't count as a changed script
+    private static long checksum(String sql) {
+        CRC32 crc = new CRC32();
+        crc.update(sql.replace("\r\n", "\n").getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,84 @@
+package com.revature.repository;
+
+import com.revature.model.Ticket;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A forward-only view of tickets that are still being read from the database.
+ * Rows are fetched from a server-side cursor a batch at a time and mapped to Tickets only as they are iterated over,
+ * so the memory used does not depend on how many tickets match. The underlying connection is held until this is
+ * closed, so it must always be closed (try-with-resources) once the caller is finished with it.
+ * This can only be iterated over once.
+ */
+public class TicketCursor implements Iterable<Ticket>, Iterator<Ticket>, AutoCloseable {
+    private final Connection con;
+    private final PreparedStatement stmt;
+    private final ResultSet rs;
+    private final RowMapper<Ticket> mapper;
+    private Boolean hasNext; //null when the next row has not been looked at yet
+    private boolean closed;
+
+    TicketCursor(Connection con, PreparedStatement stmt, ResultSet rs, RowMapper<Ticket> mapper) {
+        this.con = con;
+        this.stmt = stmt;
+        this.rs = rs;
+        this.mapper = mapper;
+    }
+
+    @Override
+    public Iterator<Ticket> iterator() {
+        return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (hasNext == null) {
+            try {
+                hasNext = !closed && rs.next();
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return hasNext;
+    }
+
+    @Override
+    public Ticket next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        hasNext = null;
+        try {
+            return mapper.map(rs);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        try {
+            rs.close();
+            stmt.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        } finally {
+            try {
+                con.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    //Converts the current row of a ResultSet into an object
+    interface RowMapper<T> {
+        T map(ResultSet rs) throws SQLException;
+    }
+}
@@ -0,0 +1,301 @@
+package com.revature.repository;
+
+import com.revature.model.Ticket;
+import com.revature.utils.ConnectionUtil;
+import com.revature.utils.IntObjectMap;
+import com.revature.utils.Metrics;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A copy of every ticket held in memory, indexed so that filtered ticket listings can be answered without the database.
+ * Tickets are indexed by ID, by employee ID, and by their (status, type) bucket; each index holds ticket IDs in
+ * ascending order, so pages can be found the same way as with the keyset pagination of the SQL query.
+ * The index is loaded once, and kept up to date by the write methods of TicketRepository. Changes made to the tickets
+ * table by anything other than this server are not seen until it restarts.
+ * If the tickets would take more than the memory budget, the index is dropped and every listing goes to the database.
+ */
+public class TicketIndex {
+    //A rough estimate of what one ticket costs in memory: the Ticket, its BigDecimal and String, and its index entries
+    private static final long BYTES_PER_TICKET = 200;
+
+    private final long maxBytes;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final IntObjectMap<Ticket> byId = new IntObjectMap<>();
+    private final IntObjectMap<IdList> byEmployee = new IntObjectMap<>();
+    private final EnumMap<Ticket.StatusValues, EnumMap<Ticket.ReimbursementType, IdList>> byStatusAndType =
+            new EnumMap<>(Ticket.StatusValues.class);
+    private long estimatedBytes;
+    //Only true once every ticket has been loaded, and false again for good if the memory budget is exceeded
+    private volatile boolean ready;
+    private volatile boolean overBudget;
+    //True while a load is running. Writes made in the meantime may be missing from what it reads, so instead of being
+    // dropped (as they are while the index isn't in use) they wait for the load to finish and are then applied.
+    private volatile boolean loading;
+
+    public TicketIndex(long maxBytes) {
+        this.maxBytes = maxBytes;
+        for (Ticket.StatusValues status : Ticket.StatusValues.values()) {
+            EnumMap<Ticket.ReimbursementType, IdList> byType = new EnumMap<>(Ticket.ReimbursementType.class);
+            for (Ticket.ReimbursementType type : Ticket.ReimbursementType.values()) byType.put(type, new IdList());
+            byStatusAndType.put(status, byType);
+        }
+    }
+
+    /**
+     * Loads every ticket from the database. Writes made while this runs wait for it to finish before updating the index,
+     * and applying one that the load has already seen changes nothing, so no change is lost.
+     * @param sql A query selecting (tickid, tickemplid, tickstatus, ticktype, tickamount, tickdescription) for every ticket
+     * @param mapper Maps a row of that query to a Ticket
+     */
+    void load(String sql, TicketCursor.RowMapper<Ticket> mapper) {
+        //Set before the query runs: a write that doesn't see it committed before the query, so the query will see it
+        loading = true;
+        lock.writeLock().lock();
+        Metrics.Timer timer = Metrics.timeQuery("TicketIndex.load");
+        try (Connection con = ConnectionUtil.getConnection()) {
+            con.setAutoCommit(false);
+            PreparedStatement stmt = con.prepareStatement(sql);
+            stmt.setFetchSize(1000);
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next() && !overBudget) {
+                add(mapper.map(rs));
+            }
+            if (!overBudget) ready = true;
+        } catch (SQLException | RuntimeException e) {
+            e.printStackTrace();
+            clear();
+        } finally {
+            timer.stop();
+            loading = false;
+            lock.writeLock().unlock();
+        }
+        System.out.println("Ticket index " + (ready ? "loaded " + byId.size() + " tickets" : "is not in use") + ".");
+    }
+
+    /**
+     * Loads the given tickets instead of reading them from the database, for stores which already hold every ticket.
+     * The index is then ready, unless the tickets are over the memory budget.
+     */
+    void load(Iterable<Ticket> tickets) {
+        loading = true;
+        lock.writeLock().lock();
+        try {
+            for (Ticket ticket : tickets) {
+                if (overBudget) break;
+                add(ticket);
+            }
+            if (!overBudget) ready = true;
+        } finally {
+            loading = false;
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public boolean isOverBudget() {
+        return overBudget;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return byId.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+
+    //The ticket with the given ID, or null if there is none or the index is not in use
+    Ticket get(int ticketID) {
+        if (!ready) return null;
+        lock.readLock().lock();
+        try {
+            return ready ? byId.get(ticketID) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    //Called once a new ticket (with its ID) has been added to the database
+    void recordCreated(Ticket ticket) {
+        if (!ready && !loading) return;
+        lock.writeLock().lock();
+        try {
+            if (ready) add(ticket);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    //Called once a pending ticket has been approved or denied in the database
+    void recordFinalized(int ticketID, Ticket.StatusValues newStatus) {
+        if (!ready && !loading) return;
+        lock.writeLock().lock();
+        try {
+            Ticket old = byId.get(ticketID);
+            if (!ready || old == null || old.getStatus() == newStatus) return;
+            bucketOf(old.getStatus(), old.getReimbursementType()).remove(ticketID);
+            Ticket updated = new Ticket(old.getEmployeeId(), old.getAmount(), old.getDescription(),
+                    old.getReimbursementType(), newStatus, ticketID);
+            byId.put(ticketID, updated);
+            bucketOf(newStatus, updated.getReimbursementType()).add(ticketID);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the tickets matching the given filters, in order of their IDs, in the same way as
+     * TicketRepository.getTicketsFiltered.
+     * @return The matching tickets, or null if the index is not in use and the database has to be asked instead
+     */
+    public List<Ticket> find(int filterEmplID, Ticket.StatusValues filterStatus, Ticket.ReimbursementType filterType,
+                             int afterID, int limit) {
+        if (!ready) return null;
+        lock.readLock().lock();
+        try {
+            if (!ready) return null;
+            //The ID lists that could hold a match: the employee's own tickets, or every (status, type) bucket that
+            // matches. Whichever side is smaller is walked, and each ticket on it is checked against the other filters.
+            List<IdList> sources = new ArrayList<>();
+            int bucketTickets = 0;
+            for (Ticket.StatusValues status : Ticket.StatusValues.values()) {
+                if (filterStatus != null && status != filterStatus) continue;
+                for (Ticket.ReimbursementType type : Ticket.ReimbursementType.values()) {
+                    if (filterType != null && type != filterType) continue;
+                    IdList bucket = bucketOf(status, type);
+                    sources.add(bucket);
+                    bucketTickets += bucket.size;
+                }
+            }
+            if (filterEmplID != -1) {
+                IdList employeeTickets = byEmployee.get(filterEmplID);
+                if (employeeTickets == null) return new ArrayList<>();
+                if (employeeTickets.size <= bucketTickets) {
+                    sources.clear();
+                    sources.add(employeeTickets);
+                }
+            }
+
+            List<Ticket> result = new ArrayList<>(limit == -1 ? 16 : Math.min(limit, 256));
+            //Merges the ID lists in ascending order
+            int[] positions = new int[sources.size()];
+            for (int i = 0; i < positions.length; i++) positions[i] = sources.get(i).indexAfter(afterID);
+            while (limit == -1 || result.size() < limit) {
+                int next = -1;
+                for (int i = 0; i < positions.length; i++) {
+                    IdList source = sources.get(i);
+                    if (positions[i] < source.size && (next == -1 || source.ids[positions[i]] < sources.get(next).ids[positions[next]])) {
+                        next = i;
+                    }
+                }
+                if (next == -1) break;
+                Ticket ticket = byId.get(sources.get(next).ids[positions[next]++]);
+                if ((filterEmplID == -1 || ticket.getEmployeeId() == filterEmplID) &&
+                        (filterStatus == null || ticket.getStatus() == filterStatus) &&
+                        (filterType == null || ticket.getReimbursementType() == filterType)) {
+                    result.add(ticket);
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    //Adds a ticket to every index; must be called with the write lock held
+    private void add(Ticket ticket) {
+        Ticket old = byId.put(ticket.getId(), ticket);
+        if (old != null) {
+            //Already indexed (the load and a write both saw it); just move it to its current bucket
+            bucketOf(old.getStatus(), old.getReimbursementType()).remove(ticket.getId());
+        } else {
+            estimatedBytes += BYTES_PER_TICKET + 2L * ticket.getDescription().length();
+            if (maxBytes > 0 && estimatedBytes > maxBytes) {
+                System.out.println("Ticket index exceeded its memory budget of " + maxBytes + " bytes; " +
+                        "ticket listings will be read from the database.");
+                overBudget = true;
+                clear();
+                return;
+            }
+            IdList employeeTickets = byEmployee.get(ticket.getEmployeeId());
+            if (employeeTickets == null) {
+                employeeTickets = new IdList();
+                byEmployee.put(ticket.getEmployeeId(), employeeTickets);
+            }
+            employeeTickets.add(ticket.getId());
+        }
+        bucketOf(ticket.getStatus(), ticket.getReimbursementType()).add(ticket.getId());
+    }
+
+    private void clear() {
+        ready = false;
+        byId.clear();
+        byEmployee.clear();
+        for (EnumMap<Ticket.ReimbursementType, IdList> byType : byStatusAndType.values()) {
+            for (IdList bucket : byType.values()) bucket.clear();
+        }
+        estimatedBytes = 0;
+    }
+
+    private IdList bucketOf(Ticket.StatusValues status, Ticket.ReimbursementType type) {
+        return byStatusAndType.get(status).get(type);
+    }
+
+    //A growable, sorted array of ticket IDs. New tickets almost always have the highest ID yet, so adding is usually
+    // an append.
+    private static class IdList {
+        private int[] ids = new int[8];
+        private int size;
+
+        void add(int id) {
+            int at = indexAfter(id - 1);
+            if (at < size && ids[at] == id) return;
+            if (size == ids.length) ids = Arrays.copyOf(ids, size << 1);
+            System.arraycopy(ids, at, ids, at + 1, size - at);
+            ids[at] = id;
+            size++;
+        }
+
+        void remove(int id) {
+            int at = indexAfter(id - 1);
+            if (at == size || ids[at] != id) return;
+            System.arraycopy(ids, at + 1, ids, at, size - at - 1);
+            size--;
+        }
+
+        //The position of the first ID greater than the given one
+        int indexAfter(int id) {
+            if (size == 0 || ids[size - 1] <= id) return size;
+            int low = 0, high = size - 1;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (ids[mid] <= id) low = mid + 1; else high = mid;
+            }
+            return low;
+        }
+
+        void clear() {
+            ids = new int[8];
+            size = 0;
+        }
+    }
+}
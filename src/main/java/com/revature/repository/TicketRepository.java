@@ -2,181 +2,115 @@ package com.revature.repository;
 
 import com.revature.controller.Controller;
 import com.revature.model.Ticket;
-import com.revature.utils.ConnectionUtil;
 
 import java.math.BigDecimal;
-import java.sql.*;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
- * This class is how the [TicketService] class interacts with the database.
+ * This is how the [TicketService] class reads and changes tickets, wherever they are kept: in Postgres
+ * (PostgresTicketRepository) or in the files of an embedded store (EmbeddedStore).
  */
-public class TicketRepository {
+public interface TicketRepository {
     //Attempts to finalize a ticket, setting its status to what is specified in the parameter.
     //You cannot un-finalize a ticket by changing its status to PENDING, or by changing a ticket which is not PENDING.
-    //Returns a WebTuple containing a description of what happened when this function was run and a
-    // relevant HTTP status code.
-    public Controller.WebTuple finalizeTicketByID(int id, Ticket.StatusValues newStatus) {
-        //Bad input handling
-        if (newStatus == null)
-            return new Controller.WebTuple(400, "That is not a valid status for tickets.");
-        if (newStatus == Ticket.StatusValues.PENDING)
-            return new Controller.WebTuple(403, "Tickets cannot be made pending after having been finalized!");
-
-        //Checking the ticket in the database to see if it exists and can be updated
-        Ticket ticketInDatabase = getTicketByID(id);
-        if(ticketInDatabase == null) return new Controller.WebTuple(404, "That ticket does not exist!");
-        if(ticketInDatabase.getStatus() != Ticket.StatusValues.PENDING) return new Controller.WebTuple(403, "That ticket has already been finalized!");
-
-        //Query the database to update the ticket
-        String sql = "UPDATE tickets SET tickstatus = ? WHERE tickid = ?";
-        //Create the connection
-        try (Connection con = ConnectionUtil.getConnection()) {
-            PreparedStatement stmt = con.prepareStatement(sql);
-            stmt.setInt(1, newStatus.ordinal() + 1); //Hard to maintain, but values in the status enum map to the ones in the database like this.
-            stmt.setInt(2, id);
-            //Execute the query
-            stmt.execute();
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return new Controller.WebTuple(500, "Something went wrong.");
-        }
-        return new Controller.WebTuple(200, "The ticket was successfully updated.");
-    }
+    //Returns a WebTuple containing a description of what happened and a relevant HTTP status code.
+    Controller.WebTuple finalizeTicketByID(int id, Ticket.StatusValues newStatus);
 
-    public Ticket getTicketByID(int id) {
-        List<Ticket> ticketList = new ArrayList<>();
-        Ticket result = null;
-
-        //Querying the database
-        String sql = "SELECT tickid, tickemplid, ticsname, tictname, tickamount, tickdescription FROM tickets " +
-                "INNER JOIN statuses on tickstatus = ticsid " +
-                "INNER JOIN tickettypes on ticktype = tictid " +
-                "WHERE tickid = ?";
-        //Create the connection
-        try (Connection con = ConnectionUtil.getConnection()) {
-            //Create the querying object
-            PreparedStatement stmt = con.prepareStatement(sql);
-            stmt.setInt(1, id);
-            //Execute the query
-            ResultSet rs = stmt.executeQuery();
-            //Mapping information from a table to our data structure
-            while (rs.next()) {
-                Ticket.StatusValues status;
-                switch(rs.getString(3)){
-                    case "PENDING": status = Ticket.StatusValues.PENDING; break;
-                    case "APPROVED": status = Ticket.StatusValues.APPROVED; break;
-                    case "DENIED": status = Ticket.StatusValues.DENIED; break;
-                    default: throw new IllegalStateException("BAD DATA IN TICKET TABLE");
-                };
-                Ticket.ReimbursementType type;
-                 switch(rs.getString(4)){
-                    case "FOOD": type = Ticket.ReimbursementType.FOOD; break;
-                    case "LODGING": type = Ticket.ReimbursementType.LODGING; break;
-                    case "TRAVEL": type = Ticket.ReimbursementType.TRAVEL; break;
-                    default: type = Ticket.ReimbursementType.OTHER;
-                };
-
-                Ticket ticket = new Ticket(
-                        rs.getInt(2),
-                        rs.getBigDecimal(5),
-                        rs.getString(6),
-                        type,
-                        status);
-                ticketList.add(ticket);
-            }
-        } catch (SQLException | IllegalStateException e) {
-            e.printStackTrace();
-            return null;
-        }
+    /**
+     * Finalizes many tickets at once. Only tickets that are still pending are changed.
+     * @param ids       The IDs of the tickets to finalize
+     * @param newStatus APPROVED or DENIED
+     * @return Which of the given tickets were finalized, were already final, or don't exist; null if the update failed
+     */
+    FinalizeResult finalizeTicketsByID(List<Integer> ids, Ticket.StatusValues newStatus);
 
-        if (ticketList.size() > 0) result = ticketList.get(0);
-        return result;
-    }
+    /**
+     * Finalizes every pending ticket that matches the given filters.
+     * @param filterEmplID The ID of an employee (-1 causes this filter to be ignored)
+     * @param filterType   A filter on the category of tickets (null causes this filter to be ignored)
+     * @param maxAmount    Only tickets for at most this amount are finalized (null causes this filter to be ignored)
+     * @param newStatus    APPROVED or DENIED
+     * @return The tickets that were finalized; null if the update failed
+     */
+    FinalizeResult finalizeTicketsMatching(int filterEmplID, Ticket.ReimbursementType filterType, BigDecimal maxAmount,
+                                           Ticket.StatusValues newStatus);
 
+    //Counts and totals of tickets, kept up to date by the write methods
+    TicketSummary getSummary();
 
-    //Attempt to add a ticket to the database; this will return a String indicating
-    // what happened when this function was called
-    public Controller.WebTuple createNewTicket(int employeeID, Ticket.ReimbursementType type, BigDecimal amount, String description) {
-        String sql = "INSERT INTO TICKETS (tickemplid, ticktype, tickamount, tickdescription) VALUES (?, ?, ?, ?)";
-        try (Connection con = ConnectionUtil.getConnection()) {
-            PreparedStatement prst = con.prepareStatement(sql);
+    //Counts up every time tickets are added or changed, so that anything derived from the tickets can tell whether it
+    // is out of date. A failed write counts too, since it may have happened anyway.
+    long getVersion();
 
-            prst.setInt(1, employeeID);
-            prst.setInt(2, type.ordinal() + 1);
-            prst.setBigDecimal(3, amount);
-            prst.setString(4, description);
+    //Every ticket, indexed in memory, once loadIndex has been called
+    TicketIndex getIndex();
 
-            prst.execute();
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return new Controller.WebTuple(500, "Ticket could not be submitted.");
-        }
-        return new Controller.WebTuple(200,"Ticket was successfully submitted.");
-    }
+    //Loads every ticket into the in-memory index, after which it can answer filtered ticket listings
+    void loadIndex();
+
+    //The ticket with the given ID, or null if there is none
+    Ticket getTicketByID(int id);
+
+    //Attempts to add a ticket; this will return a String indicating what happened when this function was called
+    Controller.WebTuple createNewTicket(int employeeID, Ticket.ReimbursementType type, BigDecimal amount, String description);
 
     /**
-     * This function collects every ticket from the database and filters them according to the passed-in parameters.
-     * The parameters may be empty (see parameter entries), in which case this will simply be all tickets.
+     * Adds many tickets at once. Either every ticket is added or none of them are.
+     * @param tickets The tickets to add; their statuses are ignored, since new tickets are always pending
+     * @return The IDs given to the tickets, in the same order, or null if the tickets were refused (such as a value out
+     *  of range, or a constraint they break), in which case each of them might still be added on its own
+     * @throws UnavailableException If the tickets could not be added for any other reason, such as the database being
+     *  unreachable; trying again straight away, with the same tickets or fewer, is no more likely to work
+     */
+    List<Integer> createNewTickets(List<Ticket> tickets);
+
+    /**
+     * Collects every ticket matching the given filters. The parameters may be empty (see parameter entries), in
+     * which case this will simply be all tickets.
      *
-     * @param filterEmplID The ID of an employee in the database (-1 causes this filter to be ignored)
+     * @param filterEmplID The ID of an employee (-1 causes this filter to be ignored)
      * @param filterStatus A filter on the status of tickets (null causes this filter to be ignored)
      * @param filterType   A filter on the category of tickets (null causes this filter to be ignored)
-     * @return An ArrayList containing every ticket in the database that match the provided filters.
      */
-    public ArrayList<Ticket> getTicketsFiltered(int filterEmplID, Ticket.StatusValues filterStatus, Ticket.ReimbursementType filterType) {
-        ArrayList<Ticket> tickets = new ArrayList<>();
-
-        //Querying the database
-        String sql = "SELECT tickid, tickemplid, ticsname, tictname, tickamount, tickdescription FROM tickets " +
-                "INNER JOIN statuses on tickstatus = ticsid " +
-                "INNER JOIN tickettypes on ticktype = tictid " +
-                "WHERE true";
-        if(filterEmplID != -1) {
-            sql += " AND tickemplid = '" + filterEmplID + "'";
-        }
-        if(filterStatus != null){
-            sql += " AND ticsname = '" + filterStatus + "'";
-        }
-        if(filterType != null){
-            sql += " AND tictname = '" + filterType + "'";
-        }
-        //Create the connection
-        try (Connection con = ConnectionUtil.getConnection()) {
-            //Create the querying object
-            Statement stmt = con.createStatement();
-            //Execute the query
-            ResultSet rs = stmt.executeQuery(sql);
-            //Mapping information from a table to our data structure
-            while (rs.next()) {
-                Ticket.StatusValues status;
-                switch(rs.getString(3)){
-                    case "PENDING": status = Ticket.StatusValues.PENDING; break;
-                    case "APPROVED": status = Ticket.StatusValues.APPROVED; break;
-                    case "DENIED": status = Ticket.StatusValues.DENIED; break;
-                    default: throw new IllegalStateException("BAD DATA IN TICKET TABLE");
-                };
-                Ticket.ReimbursementType type;
-                 switch(rs.getString(4)){
-                    case "FOOD": type = Ticket.ReimbursementType.FOOD; break;
-                    case "LODGING": type = Ticket.ReimbursementType.LODGING; break;
-                    case "TRAVEL": type = Ticket.ReimbursementType.TRAVEL; break;
-                    default: type = Ticket.ReimbursementType.OTHER;
-                };
-
-                Ticket ticket = new Ticket(
-                        rs.getInt(2),
-                        rs.getBigDecimal(5),
-                        rs.getString(6),
-                        type,
-                        status);
-                tickets.add(ticket);
-            }
-        } catch (SQLException | IllegalStateException e) {
-            e.printStackTrace();
-            throw new RuntimeException(e);
+    default List<Ticket> getTicketsFiltered(int filterEmplID, Ticket.StatusValues filterStatus, Ticket.ReimbursementType filterType) {
+        return getTicketsFiltered(filterEmplID, filterStatus, filterType, 0, -1);
+    }
+
+    /**
+     * Gets one page of the tickets matching the given filters, in order of their IDs.
+     * @param afterID The ID of the last ticket on the previous page (0 to start from the first ticket)
+     * @param limit   The most tickets to return (-1 for no limit)
+     */
+    List<Ticket> getTicketsFiltered(int filterEmplID, Ticket.StatusValues filterStatus, Ticket.ReimbursementType filterType,
+                                    int afterID, int limit);
+
+    /**
+     * Works like getTicketsFiltered, except that the matching tickets may be read as they are iterated over instead of
+     * all at once.
+     * @return The matching tickets. If this is AutoCloseable (such as a TicketCursor), the caller must close it.
+     */
+    Iterable<Ticket> openTicketsFiltered(int filterEmplID, Ticket.StatusValues filterStatus, Ticket.ReimbursementType filterType,
+                                         int afterID, int limit) throws SQLException;
+
+    //What happened to each ticket when finalizing many tickets at once
+    class FinalizeResult {
+        final List<Integer> finalized = new ArrayList<>();
+        final List<Integer> alreadyFinal = new ArrayList<>();
+        final List<Integer> missing = new ArrayList<>();
+
+        public List<Integer> getFinalized() { return finalized; }
+        public List<Integer> getAlreadyFinal() { return alreadyFinal; }
+        public List<Integer> getMissing() { return missing; }
+    }
+
+    //Thrown when a write could not be made for reasons that have nothing to do with what was being written
+    class UnavailableException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public UnavailableException(Throwable cause) {
+            super(cause);
         }
-        return tickets;
     }
 }
@@ -0,0 +1,275 @@
+package com.revature.repository;
+
+import com.revature.model.Ticket;
+import com.revature.utils.ConnectionUtil;
+import com.revature.utils.Metrics;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Running counts and totals of tickets by status and type, and by status for each employee.
+ * These are seeded from a single GROUP BY over the tickets table, kept up to date by the write methods of
+ * TicketRepository, and periodically rebuilt from the database to correct any drift (for instance, from tickets changed
+ * by something other than this server). Reading them never touches the database.
+ * While the summary is being seeded or rebuilt, the changes recorded in the meantime are also kept aside and replayed
+ * onto the rebuilt counts before they replace the old ones, so a change made during a rebuild is never lost.
+ * Amounts are kept in cents, so they are exact for amounts with at most two decimal places.
+ */
+public class TicketSummary {
+    private static final Ticket.StatusValues[] STATUSES = Ticket.StatusValues.values();
+    private static final Ticket.ReimbursementType[] TYPES = Ticket.ReimbursementType.values();
+
+    //Where the summary is rebuilt from: the tickets table, unless the tickets are kept somewhere else
+    private final Source source;
+    //Replaced wholesale when the summary is rebuilt from the database; null until it has been seeded
+    private volatile Counts counts;
+    //The changes recorded since the current rebuild started reading its source; null unless a rebuild is running
+    private volatile Counts changesDuringRebuild;
+    //Held exclusively while a rebuild starts or finishes, and shared by changes recorded while one is running, so that
+    // every such change reaches both the counts in use and changesDuringRebuild, or neither
+    private final ReadWriteLock rebuildLock = new ReentrantReadWriteLock();
+    private ScheduledExecutorService reconciler;
+
+    public TicketSummary() {
+        this(TicketSummary::readDatabase);
+    }
+
+    TicketSummary(Source source) {
+        this.source = source;
+    }
+
+    /**
+     * Seeds the summary from the database in the background, then rebuilds it every reconcileMillis.
+     * @param reconcileMillis How often to rebuild the summary from the database (0 or less to only seed it)
+     */
+    public synchronized void start(long reconcileMillis) {
+        if (reconciler != null) return;
+        reconciler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ticket-summary-reconciler");
+            t.setDaemon(true);
+            return t;
+        });
+        if (reconcileMillis > 0) {
+            reconciler.scheduleWithFixedDelay(this::reconcile, 0, reconcileMillis, TimeUnit.MILLISECONDS);
+        } else {
+            reconciler.execute(this::reconcile);
+        }
+    }
+
+    /**
+     * Rebuilds the summary from its source, replacing whatever it held before.
+     * Changes recorded while the source is read are replayed onto the rebuilt counts. A change is recorded just after it
+     * is committed, so one committed just before the source is read, but recorded after, is counted twice until the
+     * next rebuild; that window is far narrower than the read itself.
+     */
+    public synchronized void reconcile() {
+        Counts fresh = new Counts();
+        rebuildLock.writeLock().lock();
+        try {
+            changesDuringRebuild = new Counts();
+        } finally {
+            rebuildLock.writeLock().unlock();
+        }
+        boolean read = false;
+        try {
+            source.readGroups(fresh::add);
+            read = true;
+        } catch (SQLException | RuntimeException e) {
+            e.printStackTrace();
+        } finally {
+            rebuildLock.writeLock().lock();
+            try {
+                if (read) {
+                    fresh.addAll(changesDuringRebuild);
+                    counts = fresh;
+                }
+                changesDuringRebuild = null;
+            } finally {
+                rebuildLock.writeLock().unlock();
+            }
+        }
+    }
+
+    private static void readDatabase(Group group) throws SQLException {
+        String sql = "SELECT tickemplid, tickstatus, ticktype, count(*), sum(tickamount) FROM tickets " +
+                "GROUP BY tickemplid, tickstatus, ticktype";
+        Metrics.Timer timer = Metrics.timeQuery("TicketSummary.reconcile");
+        try (Connection con = ConnectionUtil.getConnection()) {
+            Statement stmt = con.createStatement();
+            ResultSet rs = stmt.executeQuery(sql);
+            while (rs.next()) {
+                group.add(rs.getInt(1), LookupTables.status(rs.getInt(2)), LookupTables.type(rs.getInt(3)), rs.getLong(4), rs.getBigDecimal(5));
+            }
+        } finally {
+            timer.stop();
+        }
+    }
+
+    public boolean isReady() {
+        return counts != null;
+    }
+
+    //Called once a new ticket has been added to the database
+    void recordCreated(int employeeID, Ticket.ReimbursementType type, BigDecimal amount) {
+        record(employeeID, type, amount, null, Ticket.StatusValues.PENDING);
+    }
+
+    //Called once a pending ticket has been approved or denied in the database
+    void recordFinalized(int employeeID, Ticket.ReimbursementType type, BigDecimal amount, Ticket.StatusValues newStatus) {
+        record(employeeID, type, amount, Ticket.StatusValues.PENDING, newStatus);
+    }
+
+    //Moves a ticket from one status to another (from null for a new ticket)
+    private void record(int employeeID, Ticket.ReimbursementType type, BigDecimal amount,
+                        Ticket.StatusValues from, Ticket.StatusValues to) {
+        //Read first: if a rebuild starts (or even finishes) after this, it reads the source after this change was
+        // committed, so it sees the change itself and it doesn't matter that only these older counts get it
+        Counts current = counts;
+        if (changesDuringRebuild == null) {
+            if (current != null) current.move(employeeID, type, amount, from, to);
+            return;
+        }
+        rebuildLock.readLock().lock();
+        try {
+            current = counts;
+            if (current != null) current.move(employeeID, type, amount, from, to);
+            Counts changes = changesDuringRebuild;
+            if (changes != null) changes.move(employeeID, type, amount, from, to);
+        } finally {
+            rebuildLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Describes every ticket, as {"<status>":{"<type>":{"count":n, "amount":x}, ..., "total":{...}}, ..., "total":{...}}
+     * @return The description, or null if the summary has not been seeded yet
+     */
+    public Map<String, Object> describeAll() {
+        Counts current = counts;
+        if (current == null) return null;
+        Map<String, Object> result = new LinkedHashMap<>();
+        long allCount = 0, allCents = 0;
+        for (Ticket.StatusValues status : STATUSES) {
+            Map<String, Object> byType = new LinkedHashMap<>();
+            long statusCount = 0, statusCents = 0;
+            for (Ticket.ReimbursementType type : TYPES) {
+                long count = current.count[status.ordinal()][type.ordinal()].sum();
+                long cents = current.cents[status.ordinal()][type.ordinal()].sum();
+                byType.put(type.name(), describe(count, cents));
+                statusCount += count;
+                statusCents += cents;
+            }
+            byType.put("total", describe(statusCount, statusCents));
+            result.put(status.name(), byType);
+            allCount += statusCount;
+            allCents += statusCents;
+        }
+        result.put("total", describe(allCount, allCents));
+        return result;
+    }
+
+    /**
+     * Describes the tickets of one employee, as {"<status>":{"count":n, "amount":x}, ..., "total":{...}}
+     * @return The description, or null if the summary has not been seeded yet
+     */
+    public Map<String, Object> describeEmployee(int employeeID) {
+        Counts current = counts;
+        if (current == null) return null;
+        EmployeeCounts employee = current.byEmployee.get(employeeID);
+        Map<String, Object> result = new LinkedHashMap<>();
+        long allCount = 0, allCents = 0;
+        for (Ticket.StatusValues status : STATUSES) {
+            long count = employee == null ? 0 : employee.count[status.ordinal()].sum();
+            long cents = employee == null ? 0 : employee.cents[status.ordinal()].sum();
+            result.put(status.name(), describe(count, cents));
+            allCount += count;
+            allCents += cents;
+        }
+        result.put("total", describe(allCount, allCents));
+        return result;
+    }
+
+    private static Map<String, Object> describe(long count, long cents) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("count", count);
+        result.put("amount", BigDecimal.valueOf(cents, 2));
+        return result;
+    }
+
+    private static long toCents(BigDecimal amount) {
+        return amount == null ? 0 : amount.movePointRight(2).longValue();
+    }
+
+    //One complete set of counters. LongAdders are striped internally, so concurrent writers rarely contend.
+    private static class Counts {
+        private final LongAdder[][] count = newAdders(STATUSES.length, TYPES.length);
+        private final LongAdder[][] cents = newAdders(STATUSES.length, TYPES.length);
+        private final ConcurrentHashMap<Integer, EmployeeCounts> byEmployee = new ConcurrentHashMap<>();
+
+        void add(int employeeID, Ticket.StatusValues status, Ticket.ReimbursementType type, long tickets, BigDecimal amount) {
+            long amountCents = toCents(amount);
+            count[status.ordinal()][type.ordinal()].add(tickets);
+            cents[status.ordinal()][type.ordinal()].add(amountCents);
+            EmployeeCounts employee = byEmployee.computeIfAbsent(employeeID, id -> new EmployeeCounts());
+            employee.count[status.ordinal()].add(tickets);
+            employee.cents[status.ordinal()].add(amountCents);
+        }
+
+        void move(int employeeID, Ticket.ReimbursementType type, BigDecimal amount, Ticket.StatusValues from, Ticket.StatusValues to) {
+            if (from != null) add(employeeID, from, type, -1, amount.negate());
+            add(employeeID, to, type, 1, amount);
+        }
+
+        //Adds every counter of another set to this one; the other set must no longer be changing
+        void addAll(Counts other) {
+            for (int i = 0; i < count.length; i++) {
+                for (int j = 0; j < count[i].length; j++) {
+                    count[i][j].add(other.count[i][j].sum());
+                    cents[i][j].add(other.cents[i][j].sum());
+                }
+            }
+            for (Map.Entry<Integer, EmployeeCounts> entry : other.byEmployee.entrySet()) {
+                EmployeeCounts employee = byEmployee.computeIfAbsent(entry.getKey(), id -> new EmployeeCounts());
+                for (int i = 0; i < employee.count.length; i++) {
+                    employee.count[i].add(entry.getValue().count[i].sum());
+                    employee.cents[i].add(entry.getValue().cents[i].sum());
+                }
+            }
+        }
+    }
+
+    private static class EmployeeCounts {
+        private final LongAdder[] count = newAdders(1, STATUSES.length)[0];
+        private final LongAdder[] cents = newAdders(1, STATUSES.length)[0];
+    }
+
+    //Reads every ticket, as groups of tickets which share an employee, a status and a type (a group may be one ticket)
+    interface Source {
+        void readGroups(Group group) throws SQLException;
+    }
+
+    interface Group {
+        void add(int employeeID, Ticket.StatusValues status, Ticket.ReimbursementType type, long tickets, BigDecimal amount);
+    }
+
+    private static LongAdder[][] newAdders(int rows, int columns) {
+        LongAdder[][] adders = new LongAdder[rows][columns];
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < columns; j++) adders[i][j] = new LongAdder();
+        }
+        return adders;
+    }
+}
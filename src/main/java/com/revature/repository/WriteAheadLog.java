@@ -0,0 +1,236 @@
+package com.revature.repository;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+/**
+ * The write-ahead log of an EmbeddedStore. Every change to the store is appended here before it is acknowledged, so
+ * the store can be rebuilt by replaying the log. The log is split into numbered segment files (wal-<segment>.log), and
+ * each record is framed as [payload length][CRC32 of the payload][payload], so a record torn by a crash is detected.
+ * Appending only hands a record to the OS; sync makes it durable. Threads which call sync at the same time share one
+ * fsync: whichever of them forces the file first covers every record appended before it started, and the others
+ * find their records already on disk.
+ */
+class WriteAheadLog implements Closeable {
+    private static final String PREFIX = "wal-", SUFFIX = ".log";
+    private static final int HEADER_BYTES = 8;
+    //Anything longer than this is taken to be a corrupt length rather than a real record
+    private static final int MAX_RECORD_BYTES = 64 * 1024 * 1024;
+
+    private final Path directory;
+    private final boolean fsync;
+    private final Object syncLock = new Object();
+    //Only replaced by rotate, which holds both this object's lock and syncLock
+    private FileChannel channel;
+    private long segment;
+    private long segmentBytes;
+    //Bytes appended, and bytes known to be on disk, across every segment since the log was opened
+    private volatile long appended;
+    private volatile long synced;
+    //Set once a write or fsync fails. Nothing more is appended after that, since what reached the disk is unknown.
+    private volatile IOException failure;
+
+    private final LongAdder records = new LongAdder();
+    private final LongAdder syncs = new LongAdder();
+
+    /**
+     * Opens a new, empty segment to append to.
+     * @param fsync Whether sync forces records to disk; without it, records written just before a crash of the machine
+     *              (but not just of the server) may be lost
+     */
+    WriteAheadLog(Path directory, long segment, boolean fsync) throws IOException {
+        this.directory = directory;
+        this.fsync = fsync;
+        this.segment = segment;
+        this.channel = openSegment(segment);
+    }
+
+    private FileChannel openSegment(long segment) throws IOException {
+        FileChannel opened = FileChannel.open(segmentPath(directory, segment),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        //The new file has to survive a crash too, or the records in it would be lost with it
+        syncDirectory(directory);
+        return opened;
+    }
+
+    /**
+     * Appends one record to the current segment. It is not durable until sync has been called with the returned position.
+     * @return The position in the log just after the record
+     */
+    synchronized long append(byte[] payload) throws IOException {
+        checkHealthy();
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + payload.length);
+        buffer.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) channel.write(buffer);
+        } catch (IOException e) {
+            failure = e;
+            throw e;
+        }
+        segmentBytes += buffer.limit();
+        appended += buffer.limit();
+        records.increment();
+        return appended;
+    }
+
+    //Waits until every record up to the given position is on disk, forcing the file if nobody else already has
+    void sync(long position) throws IOException {
+        if (!fsync || synced >= position) return;
+        synchronized (syncLock) {
+            if (synced >= position) return;
+            checkHealthy();
+            long target = appended;
+            try {
+                channel.force(false);
+            } catch (IOException e) {
+                failure = e;
+                throw e;
+            }
+            synced = target;
+            syncs.increment();
+        }
+    }
+
+    /**
+     * Finishes the current segment and starts appending to the next one.
+     * @return The number of the new segment
+     */
+    synchronized long rotate() throws IOException {
+        synchronized (syncLock) {
+            checkHealthy();
+            try {
+                if (fsync) channel.force(false);
+                channel.close();
+                synced = appended;
+                channel = openSegment(segment + 1);
+            } catch (IOException e) {
+                failure = e;
+                throw e;
+            }
+            segment++;
+            segmentBytes = 0;
+            return segment;
+        }
+    }
+
+    private void checkHealthy() throws IOException {
+        if (failure != null) throw new IOException("The write-ahead log failed earlier, so nothing more can be written.", failure);
+    }
+
+    synchronized long getSegmentBytes() { return segmentBytes; }
+    long getAppendedBytes() { return appended; }
+    long getRecordCount() { return records.sum(); }
+    long getSyncCount() { return syncs.sum(); }
+    boolean hasFailed() { return failure != null; }
+
+    @Override
+    public synchronized void close() throws IOException {
+        synchronized (syncLock) {
+            if (fsync && failure == null) channel.force(false);
+            channel.close();
+        }
+    }
+
+    static Path segmentPath(Path directory, long segment) {
+        return directory.resolve(String.format("%s%016d%s", PREFIX, segment, SUFFIX));
+    }
+
+    //The numbers of the segments in a directory, in ascending order
+    static List<Long> segments(Path directory) throws IOException {
+        return numberedFiles(directory, PREFIX, SUFFIX);
+    }
+
+    //The numbers of the files named <prefix><number><suffix> in a directory, in ascending order
+    static List<Long> numberedFiles(Path directory, String prefix, String suffix) throws IOException {
+        List<Long> numbers = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*" + suffix)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    numbers.add(Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())));
+                } catch (NumberFormatException e) {
+                    //Not one of ours
+                }
+            }
+        }
+        Collections.sort(numbers);
+        return numbers;
+    }
+
+    /**
+     * Reads every intact record of a segment, in order, stopping at the first one which is torn or corrupt.
+     * @return How many bytes at the start of the file hold intact records; less than its size if the rest is damaged
+     */
+    static long replay(Path file, RecordHandler handler) throws IOException {
+        long valid = 0;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file), 64 * 1024)) {
+            byte[] header = new byte[HEADER_BYTES];
+            CRC32 crc = new CRC32();
+            while (true) {
+                if (readFully(in, header) < HEADER_BYTES) return valid;
+                ByteBuffer fields = ByteBuffer.wrap(header);
+                int length = fields.getInt();
+                int checksum = fields.getInt();
+                if (length < 0 || length > MAX_RECORD_BYTES) return valid;
+                byte[] payload = new byte[length];
+                if (readFully(in, payload) < length) return valid;
+                crc.reset();
+                crc.update(payload, 0, length);
+                if ((int) crc.getValue() != checksum) return valid;
+                handler.apply(new DataInputStream(new ByteArrayInputStream(payload)));
+                valid += HEADER_BYTES + length;
+            }
+        }
+    }
+
+    //Reads until the array is full or the stream ends, returning how many bytes were read
+    private static int readFully(InputStream in, byte[] bytes) throws IOException {
+        int read = 0;
+        while (read < bytes.length) {
+            int n = in.read(bytes, read, bytes.length - read);
+            if (n == -1) break;
+            read += n;
+        }
+        return read;
+    }
+
+    //Cuts off the damaged end of a segment, so that later records never follow it
+    static void truncate(Path file, long length) throws IOException {
+        try (FileChannel truncated = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            truncated.truncate(length);
+            truncated.force(true);
+        }
+    }
+
+    //Makes files created in or removed from a directory survive a crash; not every platform can do this
+    static void syncDirectory(Path directory) {
+        try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            //Windows can't open a directory as a file; its file system keeps directory entries on its own
+        }
+    }
+
+    //Applies one record read back from the log
+    interface RecordHandler {
+        void apply(DataInputStream record) throws IOException;
+    }
+}
@@ -2,124 +2,148 @@ package com.revature.service;
 
 import com.revature.controller.Controller;
 import com.revature.model.Employee;
+import com.revature.utils.RateLimiter;
 import org.codehaus.jackson.JsonNode;
-import org.codehaus.jackson.map.ObjectMapper;
 
 import java.io.IOException;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 
 public class EmployeeService extends Service{
     /**
      * Gets a list of all employees and formats it in JSON. This action requires the authorization
      * of a manager (achieved here by checking their credentials against the database).
      *
-     * @param json A JSON String containing the email address and password of a manager
+     * @param json A JSON body containing the email address and password of a manager
      * @return JSON text representing all employee data.
      */
-    public static Controller.WebTuple getAllEmployees(String json) {
-        ObjectMapper objectMapper = new ObjectMapper();
+    public static CompletableFuture<Controller.WebTuple> getAllEmployees(byte[] json) {
+        return getAllEmployees(json, null);
+    }
+
+    /**
+     * Works like getAllEmployees(String), except that the list is sent from the response cache if the employees haven't
+     * changed since it was last rendered, and not sent at all if the client already has it.
+     * @param ifNoneMatch The ETags of the responses that the client already has (may be null)
+     */
+    public static CompletableFuture<Controller.WebTuple> getAllEmployees(byte[] json, String ifNoneMatch) {
         JsonNode jsonNode;
         try {
-            jsonNode = objectMapper.readTree(json);
+            jsonNode = OBJECT_MAPPER.readTree(json);
         } catch (IOException e) {
             e.printStackTrace();
-            return new Controller.WebTuple(400, "Something went wrong. Did you send a malformed request?");
+            return completed(new Controller.WebTuple(400, "Something went wrong. Did you send a malformed request?"));
         }
-        JsonNode emailNode = jsonNode.get("email");
-        JsonNode passwordNode = jsonNode.get("password");
-        if (emailNode == null || passwordNode == null) {
-            return new Controller.WebTuple(400, 
+        if (!hasCredentials(jsonNode)) {
+            return completed(new Controller.WebTuple(400, 
                     "Could not add employee; missing data in request.\n" +
                     "Correct format for request body:\n" +
                       "{\n" +
                         "  'email':'<email address>',\n" +
                         "  'password':'<password>'\n" +
+                        "  ['token':'<session token>'] << may be sent instead of email and password after logging in\n" +
                       "}\n" +
-                    ");");
+                    ");"));
         }
-        String email = emailNode.asText();
-        String password = passwordNode.asText();
 
-        Employee manager = EMPLOYEE_REPOSITORY.getEmployeeByEmail(email);
-        if (manager == null) return new Controller.WebTuple(403, "Failed to verify credentials.");
-        if (!Objects.equals(manager.getEmail(), email) || !Objects.equals(manager.getPassword(), password.hashCode()))
-            return new Controller.WebTuple(403, "Failed to verify credentials.");
-        if (manager.getRole() != Employee.Roles.MANAGER) return new Controller.WebTuple(403, "Only a manager can perform this action.");
+        return authenticateAsync(jsonNode).thenCompose(manager -> {
+            if (manager == null) return completed(new Controller.WebTuple(403, "Failed to verify credentials."));
+            if (manager.getRole() != Employee.Roles.MANAGER) return completed(new Controller.WebTuple(403, "Only a manager can perform this action."));
+
+            //By this line, we have successfully verified that the person attempting this action is a manager.
+            //The version is read before the list, so that a change made while it is being read makes the copy outdated
+            String cacheKey = "getEmployeeList " + manager.getRole();
+            long version = EMPLOYEE_REPOSITORY.getVersion();
+            Controller.WebTuple cached = RESPONSES.lookup(cacheKey, version, ifNoneMatch);
+            if(cached != null) return completed(cached);
 
-        //By this line, we have successfully verified that the person attempting this action is a manager.
-        //Create a list of all employees
-        List<Employee> employeeList = EMPLOYEE_REPOSITORY.getAllEmployees();
-        if(employeeList == null)
-            return new Controller.WebTuple(500, "Something went wrong while retrieving the employee list");
-        //Format all entries as JSON and return them
-        return new Controller.WebTuple(200, makeJsonOf(employeeList));
+            //Create a list of all employees
+            return onDatabase(EMPLOYEE_REPOSITORY::getAllEmployees).thenApply(employeeList -> {
+                if(employeeList == null)
+                    return new Controller.WebTuple(500, "Something went wrong while retrieving the employee list");
+                //Stream all entries to the client as JSON
+                return RESPONSES.store(cacheKey, version, streamJsonOf(employeeList));
+            });
+        });
     }
 
     //This function expects a valid employee from JSON.
     //It will return a String which is passed to the endpoint.
     // This string indicates what happened when this function was called.
-    public static Controller.WebTuple registerEmployee(String json) {
+    public static CompletableFuture<Controller.WebTuple> registerEmployee(byte[] json) {
         try {
-            ObjectMapper objectMapper = new ObjectMapper();
-            JsonNode jsonNode = objectMapper.readTree(json);
+            JsonNode jsonNode = OBJECT_MAPPER.readTree(json);
             JsonNode emailNode = jsonNode.get("email");
             JsonNode passwordNode = jsonNode.get("password");
             if (emailNode == null || passwordNode == null) {
-                return new Controller.WebTuple(400, 
+                return completed(new Controller.WebTuple(400, 
                         "Could not add employee; missing data in request.\n" +
                         "Correct format for request body:\n" +
                         "  {\n" +
                         "    'email':'<email address>'',\n" +
                         "    'password':'<password>'\n" +
                         "  }\n"
-                        );
+                        ));
             }
             String email = emailNode.asText();
             String password = passwordNode.asText();
 
-            if(email.equals("")) return new Controller.WebTuple(403, "You cannot register an employee without an email address!");
-            if(password.equals("")) return new Controller.WebTuple(403, "You cannot register an employee without a password!");
+            if(email.equals("")) return completed(new Controller.WebTuple(403, "You cannot register an employee without an email address!"));
+            if(password.equals("")) return completed(new Controller.WebTuple(403, "You cannot register an employee without a password!"));
 
-            return EMPLOYEE_REPOSITORY.createNewEmployee(email, password);
+            return onDatabase(() -> EMPLOYEE_REPOSITORY.createNewEmployee(email, password));
         } catch (IOException e) {
             e.printStackTrace();
-            return new Controller.WebTuple(400,"Something went wrong. Did you send a malformed request?");
+            return completed(new Controller.WebTuple(400,"Something went wrong. Did you send a malformed request?"));
         }
     }
 
     /**
      * Validates an employee. This means comparing the given email address and password to what is in the database
-     * in order to determine if the given credentials match an existing employee
+     * in order to determine if the given credentials match an existing employee.
+     * If they do, a session is opened for the employee, and its token is returned as {"message":..., "token":...}.
      *
-     * @param json A JSON string containing the relevant information
+     * @param json A JSON body containing the relevant information
      * @return A string describing the result of this operation; this is passed back to the endpoint.
      */
-    public static Controller.WebTuple validateEmployee(String json) {
+    public static CompletableFuture<Controller.WebTuple> validateEmployee(byte[] json) {
         try {
-            ObjectMapper objectMapper = new ObjectMapper();
-            JsonNode jsonNode = objectMapper.readTree(json);
+            JsonNode jsonNode = OBJECT_MAPPER.readTree(json);
             JsonNode emailNode = jsonNode.get("email");
             JsonNode passwordNode = jsonNode.get("password");
             if (emailNode == null || passwordNode == null) {
-                return new Controller.WebTuple(400, 
+                return completed(new Controller.WebTuple(400, 
                         "Could not add employee; missing data in request.\n" +
                         "Correct format for request body:\n" +
                         "  {\n" +
                         "    'email':'<email address>'',\n" +
                         "    'password':'<password>'\n" +
                         "  }\n"
-                        );
+                        ));
             }
             String email = emailNode.asText();
             String password = passwordNode.asText();
-            Employee toValidate = EMPLOYEE_REPOSITORY.getEmployeeByEmail(email);
-            if (toValidate == null) return new Controller.WebTuple(403, "Incorrect email address or password.");
-            if (!Objects.equals(toValidate.getPassword(), password.hashCode())) return new Controller.WebTuple(403, "Incorrect email address or password.");
-            return new Controller.WebTuple(200, "Successfully logged in");
+            RateLimiter.Budget budget = RateLimiter.currentBudget();
+            //Read before the employee, so that a role change made while they are logging in ends this session too
+            long generation = SESSIONS.generation(email);
+            return onDatabase(() -> EMPLOYEE_REPOSITORY.getEmployeeByEmail(email)).thenCompose(toValidate -> {
+                if (toValidate == null) return completed(new Controller.WebTuple(403, "Incorrect email address or password."));
+                if (!Objects.equals(toValidate.getPassword(), password.hashCode())) return completed(new Controller.WebTuple(403, "Incorrect email address or password."));
+                CompletableFuture<Controller.WebTuple> refused = refuseIfLimited(budget, toValidate);
+                if (refused != null) return refused;
+
+                //Open a session, so that later requests can send this token instead of the email address and password
+                Map<String, Object> session = new LinkedHashMap<>();
+                session.put("message", "Successfully logged in");
+                session.put("token", SESSIONS.open(toValidate, generation));
+                return completed(new Controller.WebTuple(200, makeJsonOf(session)));
+            });
         } catch (IOException e) {
             e.printStackTrace();
-            return new Controller.WebTuple(400, "Something went wrong. Did you send a malformed request?");
+            return completed(new Controller.WebTuple(400, "Something went wrong. Did you send a malformed request?"));
         }
     }
 
@@ -128,38 +152,47 @@ public class EmployeeService extends Service{
      * Fails if either employee does not exist, the credentials do not match with the manager's credentials, or
      * if the "manager employee" is not actually a manager.
      *
-     * @param json    A JSON string with three inputs:
+     * @param json    A JSON body with three inputs:
      *                1. email - the email address of an employee authorized to promote/demote another employee (a manager)
      *                2. password - the password of that same privileged employee
+     *                   (or, instead of 1 and 2, token - the session token of that employee)
      *                3. otherUserEmail - the email address of the other employee whose role is changed
      * @param newRole The new role of the user if this function was successfully called.
      * @return A descriptive String indicating what happened when this function was run.
      */
-    public static Controller.WebTuple alterEmployeeRole(String json, Employee.Roles newRole) {
+    public static CompletableFuture<Controller.WebTuple> alterEmployeeRole(byte[] json, Employee.Roles newRole) {
         try {
-            ObjectMapper objectMapper = new ObjectMapper();
-            JsonNode jsonNode = objectMapper.readTree(json);
-            JsonNode emailNode = jsonNode.get("email");
-            JsonNode passwordNode = jsonNode.get("password");
+            JsonNode jsonNode = OBJECT_MAPPER.readTree(json);
             JsonNode otherUserNode = jsonNode.get("otherUserEmail");
-            if (emailNode == null || passwordNode == null || otherUserNode == null) {
-                return new Controller.WebTuple(400, 
+            if (!hasCredentials(jsonNode) || otherUserNode == null) {
+                return completed(new Controller.WebTuple(400, 
                 "Could not add employee; missing data in request.\n" +
                 "Correct format for request body:\n" +
                 "  {\n" +
                 "    'email':'<email address>'',\n" +
                 "    'password':'<password>'\n" +
+                "    ['token':'<session token>'] << may be sent instead of email and password after logging in\n" +
                 "     'otherUserEmail':'<other user's email address>'\n" +
                 "  }\n"
-                );
+                ));
             }
-            String email = emailNode.asText();
-            String password = passwordNode.asText();
             String otherUserEmail = otherUserNode.asText();
-            return EMPLOYEE_REPOSITORY.alterEmployeeRole(email, password, otherUserEmail, newRole);
+
+            //Error handling - the order here is important. In this order, a potential bad actor cannot use this function to determine
+            // what employees do and do not exist unless they are already a manager.
+            return authenticateAsync(jsonNode).thenCompose(manager -> {
+                if (manager == null) return completed(new Controller.WebTuple(403, "Failed to verify credentials."));
+                if (manager.getRole() != Employee.Roles.MANAGER) return completed(new Controller.WebTuple(403, "You are not authorized to perform this action."));
+
+                return onDatabase(() -> EMPLOYEE_REPOSITORY.alterEmployeeRole(otherUserEmail, newRole)).thenApply(result -> {
+                    //Any open sessions of the employee still carry their old role, so they have to log in again
+                    if (result.statusCode() == 200) SESSIONS.invalidate(otherUserEmail);
+                    return result;
+                });
+            });
         } catch (IOException e) {
             e.printStackTrace();
-            return new Controller.WebTuple(400, "Something went wrong. Did you send a malformed request?");
+            return completed(new Controller.WebTuple(400, "Something went wrong. Did you send a malformed request?"));
         }
     }
 }
@@ -0,0 +1,147 @@
+package com.revature.service;
+
+import com.revature.controller.Controller;
+import com.revature.utils.LruCache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Listings that were already rendered to JSON, kept so that the same request can be answered again without querying or
+ * serializing anything, as long as the data behind it hasn't changed since.
+ * Each listing is cached under a key describing the request (its filters and the role of the caller), along with the
+ * version of the repository it was read from. The repositories count up their version on every write, so a listing
+ * cached at an older version is never sent again.
+ * The version also makes up the ETag of the response, so clients that send it back in If-None-Match get a 304 without
+ * a body for as long as the data stays the same. The ETag is weak, since the same listing is sent both compressed and
+ * uncompressed (depending on the client's Accept-Encoding) and the bytes of the two differ.
+ */
+public class ResponseCache {
+    //Differs every time the server starts, since versions start over from 0 and would otherwise repeat old ETags
+    private static final String EPOCH = Long.toHexString(ThreadLocalRandom.current().nextLong() >>> 16);
+
+    private final LruCache<String, Rendered> cache; //null when no listings are kept
+    private final int maxEntryBytes;
+
+    /**
+     * @param maxEntries    The most listings to keep (0 to only use ETags)
+     * @param maxEntryBytes Listings larger than this are sent but not kept
+     */
+    public ResponseCache(int maxEntries, int maxEntryBytes) {
+        this.cache = maxEntries > 0 ? new LruCache<>(maxEntries, 0) : null;
+        this.maxEntryBytes = maxEntryBytes;
+    }
+
+    /**
+     * Answers a request from the cache if possible.
+     * @param key         Describes the request; two requests with the same key must get the same response
+     * @param version     The current version of the data that the response is read from
+     * @param ifNoneMatch The If-None-Match header sent with the request (may be null)
+     * @return A 304 if the client already has this response, the cached response if there is one for this version,
+     *         or null if it has to be rendered (in which case it should be passed to store)
+     */
+    public Controller.WebTuple lookup(String key, long version, String ifNoneMatch) {
+        String etag = etagOf(key, version);
+        if (matches(ifNoneMatch, etag)) return new Controller.WebTuple(304, "").withETag(etag);
+        Rendered rendered = cache == null ? null : cache.get(key);
+        if (rendered == null || rendered.version != version) return null;
+        byte[] bytes = rendered.bytes;
+        return new Controller.WebTuple(200, out -> out.write(bytes)).withETag(etag);
+    }
+
+    /**
+     * Tags a freshly rendered response with its ETag and, if it is successful, keeps a copy of it as it is sent.
+     * @param version The version of the data read before the response was rendered
+     */
+    public Controller.WebTuple store(String key, long version, Controller.WebTuple response) {
+        if (response.body() == null || response.statusCode() != 200) return response;
+        String etag = etagOf(key, version);
+        if (cache == null) return response.withETag(etag);
+        return new Controller.WebTuple(200, new CopyingBody(key, version, response.body())).withETag(etag);
+    }
+
+    public LruCache<String, Rendered> getCache() {
+        return cache;
+    }
+
+    private static String etagOf(String key, long version) {
+        return "W/\"" + EPOCH + "-" + Integer.toHexString(key.hashCode()) + "-" + version + "\"";
+    }
+
+    //Whether an If-None-Match header names the given ETag; as If-None-Match requires, the W/ prefix is ignored on both
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) return false;
+        String opaque = etag.substring(2);
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) candidate = candidate.substring(2);
+            if (candidate.equals(opaque) || candidate.equals("*")) return true;
+        }
+        return false;
+    }
+
+    public static class Rendered {
+        private final long version;
+        private final byte[] bytes;
+
+        Rendered(long version, byte[] bytes) {
+            this.version = version;
+            this.bytes = bytes;
+        }
+    }
+
+    //Sends a body as usual, keeping a copy of what was written; the copy is cached only if the whole body was written
+    // and it fit within maxEntryBytes
+    private class CopyingBody implements Controller.StreamingBody {
+        private final String key;
+        private final long version;
+        private final Controller.StreamingBody body;
+
+        CopyingBody(String key, long version, Controller.StreamingBody body) {
+            this.key = key;
+            this.version = version;
+            this.body = body;
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            CopyingStream copying = new CopyingStream(out);
+            body.writeTo(copying);
+            if (copying.copy != null) cache.put(key, new Rendered(version, copying.copy.toByteArray()));
+        }
+
+        @Override
+        public void close() throws IOException {
+            body.close();
+        }
+    }
+
+    //Passes everything written to it along, keeping a copy of up to maxEntryBytes
+    private class CopyingStream extends FilterOutputStream {
+        private ByteArrayOutputStream copy = new ByteArrayOutputStream(); //null once the body has grown too large
+
+        CopyingStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            if (keep(1)) copy.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            if (keep(len)) copy.write(b, off, len);
+        }
+
+        private boolean keep(int len) {
+            if (copy != null && copy.size() + len > maxEntryBytes) copy = null;
+            return copy != null;
+        }
+    }
+}
@@ -1,24 +1,258 @@
 package com.revature.service;
 
+import com.revature.controller.Controller;
+import com.revature.model.Employee;
+import com.revature.repository.EmbeddedStore;
 import com.revature.repository.EmployeeRepository;
+import com.revature.repository.LookupTables;
+import com.revature.repository.PostgresEmployeeRepository;
+import com.revature.repository.PostgresTicketRepository;
+import com.revature.repository.SchemaMigrations;
+import com.revature.repository.TicketIndex;
 import com.revature.repository.TicketRepository;
+import com.revature.utils.ConfigUtil;
+import com.revature.utils.DatabaseExecutor;
+import com.revature.utils.LruCache;
+import com.revature.utils.Metrics;
+import com.revature.utils.RateLimiter;
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonNode;
 import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.map.ObjectWriter;
+import org.codehaus.jackson.map.SerializationConfig;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
 
 public abstract class Service {
-    protected static final EmployeeRepository EMPLOYEE_REPOSITORY = new EmployeeRepository();
-    protected static final TicketRepository TICKET_REPOSITORY = new TicketRepository();
+    //Set when PZERO_STORE=embedded, in which case employees and tickets are kept in local files instead of Postgres
+    protected static final EmbeddedStore EMBEDDED_STORE = EmbeddedStore.fromConfig();
+    protected static final EmployeeRepository EMPLOYEE_REPOSITORY = EMBEDDED_STORE != null
+            ? EMBEDDED_STORE.getEmployeeRepository() : new PostgresEmployeeRepository();
+    protected static final TicketRepository TICKET_REPOSITORY = EMBEDDED_STORE != null
+            ? EMBEDDED_STORE.getTicketRepository() : new PostgresTicketRepository();
+    //Set when PZERO_GROUP_COMMIT is on, in which case single ticket submissions are inserted in batches
+    protected static final TicketSubmissionQueue SUBMISSIONS = TicketSubmissionQueue.fromConfig(TICKET_REPOSITORY);
+
+    //Sessions opened by /login; these let later requests skip checking a password against the database
+    protected static final SessionCache SESSIONS = new SessionCache(
+            ConfigUtil.getLong("PZERO_SESSION_TTL_MS", 30 * 60 * 1000),
+            ConfigUtil.getInt("PZERO_SESSION_MAX", 10000));
+
+    //Listings already rendered to JSON, along with their ETags; these are dropped as soon as the data changes
+    protected static final ResponseCache RESPONSES = new ResponseCache(
+            ConfigUtil.getInt("PZERO_RESPONSE_CACHE_MAX", 256),
+            ConfigUtil.getInt("PZERO_RESPONSE_CACHE_MAX_ENTRY_BYTES", 1024 * 1024));
+
+    //ObjectMappers are thread-safe once configured, and expensive to create, so every service shares this one.
+    protected static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final ObjectWriter JSON_WRITER;
+    static {
+        //Streamed lists are written one element at a time; flushing after each one would send one chunk per element
+        OBJECT_MAPPER.configure(SerializationConfig.Feature.FLUSH_AFTER_WRITE_VALUE, false);
+        JSON_WRITER = OBJECT_MAPPER.writer();
+    }
+
+    //Brings the schema up to date (see SchemaMigrations), then reads the lookup tables that tickets and employees are
+    // mapped with (see LookupTables), when they are kept in Postgres. This throws if either fails, so that the server
+    // fails at startup instead of on a request that happens to find a missing index or a mismatched row.
+    public static void prepareDatabase() {
+        if (EMBEDDED_STORE == null) {
+            SchemaMigrations.run();
+            LookupTables.load();
+        }
+    }
+
+    //Reports the state of the caches shared by the services from /metrics
+    public static void registerMetrics() {
+        Metrics.register("pzero_session_hits_total", "Requests authenticated by a session token.", "counter", SESSIONS::getHitCount);
+        Metrics.register("pzero_session_misses_total", "Session tokens which were unknown or had expired.", "counter", SESSIONS::getMissCount);
+        Metrics.register("pzero_session_evictions_total", "Sessions dropped to make room for newer ones.", "counter", SESSIONS::getEvictionCount);
+        if (EMPLOYEE_REPOSITORY.getCacheByEmail() != null) registerCacheMetrics("employee_by_email", EMPLOYEE_REPOSITORY.getCacheByEmail());
+        if (EMPLOYEE_REPOSITORY.getCacheById() != null) registerCacheMetrics("employee_by_id", EMPLOYEE_REPOSITORY.getCacheById());
+        if (RESPONSES.getCache() != null) registerCacheMetrics("response", RESPONSES.getCache());
+        TicketIndex index = TICKET_REPOSITORY.getIndex();
+        Metrics.register("pzero_ticket_index_tickets", "Tickets held by the in-memory ticket index.", "gauge", index::size);
+        Metrics.register("pzero_ticket_index_estimated_bytes", "An estimate of the memory used by the ticket index.", "gauge", index::getEstimatedBytes);
+        if (EMBEDDED_STORE != null) {
+            Metrics.register("pzero_store_log_records_total", "Records appended to the embedded store's write-ahead log.", "counter", EMBEDDED_STORE::getLoggedRecords);
+            Metrics.register("pzero_store_log_bytes_total", "Bytes appended to the embedded store's write-ahead log.", "counter", EMBEDDED_STORE::getLoggedBytes);
+            Metrics.register("pzero_store_fsyncs_total", "Times the write-ahead log was forced to disk.", "counter", EMBEDDED_STORE::getSyncCount);
+            Metrics.register("pzero_store_snapshots_total", "Snapshots of the embedded store written to disk.", "counter", EMBEDDED_STORE::getSnapshotCount);
+            Metrics.register("pzero_store_failed", "1 once the embedded store has stopped accepting writes after an I/O error.", "gauge",
+                    () -> EMBEDDED_STORE.hasFailed() ? 1 : 0);
+        }
+        if (SUBMISSIONS != null) {
+            Metrics.register("pzero_group_commit_batches_total", "Batches of submitted tickets committed together.", "counter", SUBMISSIONS::getBatchCount);
+            Metrics.register("pzero_group_commit_tickets_total", "Tickets committed in batches; divided by the batches, the average batch size.", "counter", SUBMISSIONS::getTicketCount);
+            Metrics.register("pzero_group_commit_largest_batch", "The most tickets committed in one batch.", "gauge", SUBMISSIONS::getLargestBatch);
+            Metrics.register("pzero_group_commit_failed_batches_total", "Batches that could not be inserted as a whole; those refused because of their tickets were split up to find them.", "counter", SUBMISSIONS::getFailedBatchCount);
+            Metrics.register("pzero_group_commit_failed_tickets_total", "Submitted tickets that could not be inserted, even on their own.", "counter", SUBMISSIONS::getFailedTicketCount);
+            Metrics.register("pzero_group_commit_queued", "Submitted tickets waiting for the next batch.", "gauge", SUBMISSIONS::getQueuedCount);
+            Metrics.register("pzero_group_commit_rejected_total", "Submissions turned away because the queue was full.", "counter", SUBMISSIONS::getRejectedCount);
+        }
+    }
+
+    private static void registerCacheMetrics(String cache, LruCache<?, ?> lruCache) {
+        String prefix = "pzero_" + cache + "_cache_";
+        Metrics.register(prefix + "size", "Entries in the " + cache + " cache.", "gauge", lruCache::size);
+        Metrics.register(prefix + "hits_total", "Lookups answered by the " + cache + " cache.", "counter", lruCache::getHitCount);
+        Metrics.register(prefix + "misses_total", "Lookups the " + cache + " cache could not answer.", "counter", lruCache::getMissCount);
+        Metrics.register(prefix + "evictions_total", "Entries dropped from the " + cache + " cache to make room.", "counter", lruCache::getEvictionCount);
+    }
+
+    //Whether a request includes something that identifies who sent it (see authenticate)
+    protected static boolean hasCredentials(JsonNode request) {
+        return request.get("token") != null || (request.get("email") != null && request.get("password") != null);
+    }
+
+    /**
+     * Finds out who sent a request. A request identifies its sender either with the session token given out by
+     * /login ('token'), or with an email address and password ('email' and 'password'), which costs a trip to the database.
+     * @param request The body of the request
+     * @return The employee who sent the request, or null if their credentials could not be verified
+     */
+    protected static Employee authenticate(JsonNode request) {
+        JsonNode tokenNode = request.get("token");
+        if (tokenNode != null) return SESSIONS.get(tokenNode.asText());
+
+        JsonNode emailNode = request.get("email");
+        JsonNode passwordNode = request.get("password");
+        if (emailNode == null || passwordNode == null) return null;
+        String email = emailNode.asText();
+        String password = passwordNode.asText();
+
+        Employee employee = EMPLOYEE_REPOSITORY.getEmployeeByEmail(email);
+        if (employee == null) return null;
+        if (!Objects.equals(employee.getEmail(), email) || !Objects.equals(employee.getPassword(), password.hashCode()))
+            return null;
+        return employee;
+    }
+
+    //Works like authenticate, but only hands the work to a database thread when it might need one: a session token is
+    // checked in memory, while an email address and password may have to be looked up in the database.
+    //Once verified, the request is charged to the employee who sent it (see refuseIfLimited); a request which can't be
+    // verified has only been charged to its address.
+    protected static CompletableFuture<Employee> authenticateAsync(JsonNode request) {
+        RateLimiter.Budget budget = RateLimiter.currentBudget();
+        if (request.get("token") != null) return admit(budget, authenticate(request));
+        return onDatabase(() -> authenticate(request)).thenCompose(employee -> admit(budget, employee));
+    }
+
+    private static CompletableFuture<Employee> admit(RateLimiter.Budget budget, Employee employee) {
+        CompletableFuture<Employee> refused = employee == null ? null : refuseIfLimited(budget, employee);
+        return refused != null ? refused : CompletableFuture.completedFuture(employee);
+    }
+
+    //Charges a request to the employee who sent it, once their credentials have been verified, under the rate limit of
+    // its endpoint (see RateLimiter)
+    // @param budget The budget of the endpoint, read on the request thread with RateLimiter.currentBudget
+    // @return null if the request may go ahead, or a future which has already failed if the caller is over their budget
+    protected static <T> CompletableFuture<T> refuseIfLimited(RateLimiter.Budget budget, Employee caller) {
+        long waitNanos = RateLimiter.admitCaller(budget, "employee:" + caller.getId());
+        if (waitNanos == 0) return null;
+        CompletableFuture<T> refused = new CompletableFuture<>();
+        refused.completeExceptionally(new RateLimiter.LimitExceededException(waitNanos));
+        return refused;
+    }
+
+    //Runs blocking repository work on a database thread (see DatabaseExecutor). The future completes back on a request
+    // thread, so whatever is chained onto it, such as rendering the response, doesn't hold up the database threads.
+    protected static <T> CompletableFuture<T> onDatabase(Supplier<T> work) {
+        return DatabaseExecutor.supply(work);
+    }
+
+    //Answers a request straight away, without any work for the database threads
+    protected static CompletableFuture<Controller.WebTuple> completed(Controller.WebTuple response) {
+        return CompletableFuture.completedFuture(response);
+    }
 
     //Uses Jackson to convert any object to a string.
     protected static String makeJsonOf(Object o) {
-        ObjectMapper objectMapper = new ObjectMapper();
         String jsonString = "";
         try {
-            jsonString = objectMapper.writeValueAsString(o);
+            jsonString = JSON_WRITER.writeValueAsString(o);
         } catch (IOException e) {
             e.printStackTrace();
         }
         return jsonString;
     }
+
+    //Creates a response which writes the given elements as a JSON array directly into the response body,
+    // without ever building the whole document in memory. If the elements are AutoCloseable (a database cursor,
+    // for instance), they are closed once the response has been sent.
+    protected static Controller.WebTuple streamJsonOf(Iterable<?> elements) {
+        return new Controller.WebTuple(200, new JsonArrayBody<>(elements, null, -1, null));
+    }
+
+    /**
+     * Creates a response containing one page of elements, streamed the same way as streamJsonOf. The response is
+     * an object of the form {"<arrayName>":[...], "nextAfter":<key of the last element, or null>}, and nextAfter is only
+     * set if there is at least one more page, which is detected by passing in up to pageSize + 1 elements.
+     * @param elements Up to pageSize + 1 elements; anything past pageSize is not written
+     * @param cursorOf Gets the key that the next page should start after from an element
+     */
+    protected static <T> Controller.WebTuple streamJsonPageOf(String arrayName, Iterable<T> elements, int pageSize,
+                                                              ToIntFunction<T> cursorOf) {
+        return new Controller.WebTuple(200, new JsonArrayBody<>(elements, arrayName, pageSize, cursorOf));
+    }
+
+    private static class JsonArrayBody<T> implements Controller.StreamingBody {
+        private final Iterable<T> elements;
+        private final String arrayName; //null when the array is the whole response rather than one page of it
+        private final int pageSize;
+        private final ToIntFunction<T> cursorOf;
+
+        JsonArrayBody(Iterable<T> elements, String arrayName, int pageSize, ToIntFunction<T> cursorOf) {
+            this.elements = elements;
+            this.arrayName = arrayName;
+            this.pageSize = pageSize;
+            this.cursorOf = cursorOf;
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            JsonGenerator generator = OBJECT_MAPPER.getJsonFactory().createJsonGenerator(out, JsonEncoding.UTF8);
+            if (arrayName != null) {
+                generator.writeStartObject();
+                generator.writeFieldName(arrayName);
+            }
+            generator.writeStartArray();
+            Iterator<T> it = elements.iterator();
+            T last = null;
+            int written = 0;
+            while (it.hasNext() && (arrayName == null || written < pageSize)) {
+                last = it.next();
+                JSON_WRITER.writeValue(generator, last);
+                written++;
+            }
+            generator.writeEndArray();
+            if (arrayName != null) {
+                //Anything left over means that there is another page after this one
+                generator.writeFieldName("nextAfter");
+                if (last != null && it.hasNext()) generator.writeNumber(cursorOf.applyAsInt(last));
+                else generator.writeNull();
+                generator.writeEndObject();
+            }
+            generator.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!(elements instanceof AutoCloseable)) return;
+            try {
+                ((AutoCloseable) elements).close();
+            } catch (IOException | RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException(e);
+            }
+        }
+    }
 }
@@ -0,0 +1,134 @@
+package com.revature.service;
+
+import com.revature.model.Employee;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The sessions of employees who have logged in, kept in memory so that requests made with a session token don't
+ * need to check a password against the database.
+ * Sessions expire a fixed time after they are created. When more than maxSessions are open, the oldest are evicted.
+ * Each session is stamped with its employee's generation, which invalidate counts up; a session opened from an
+ * employee read before their role changed carries the old generation, so it is refused even if it was opened after
+ * the change was invalidated.
+ */
+public class SessionCache {
+    private final SecureRandom random = new SecureRandom();
+    private final long ttlMillis;
+    private final int maxSessions;
+
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+    //Tokens in the order they were issued, which is also the order in which they expire
+    private final ConcurrentLinkedQueue<String> issueOrder = new ConcurrentLinkedQueue<>();
+    //The generation of every employee whose sessions have been invalidated, by email address; this holds at most one
+    // entry per employee, and anyone missing from it is at generation 0
+    private final ConcurrentHashMap<String, Long> generations = new ConcurrentHashMap<>();
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    public SessionCache(long ttlMillis, int maxSessions) {
+        if (maxSessions < 1) throw new IllegalStateException("A session cache must be able to hold at least one session");
+        this.ttlMillis = ttlMillis;
+        this.maxSessions = maxSessions;
+    }
+
+    /**
+     * The current generation of an employee's sessions. This has to be read before the employee is, and passed to open.
+     */
+    public long generation(String email) {
+        Long generation = email == null ? null : generations.get(email);
+        return generation == null ? 0 : generation;
+    }
+
+    /**
+     * Opens a session for an employee whose credentials have already been verified.
+     * @param generation What generation returned for the employee before they were read
+     * @return The token that identifies this session in later requests
+     */
+    public String open(Employee employee, long generation) {
+        byte[] bytes = new byte[32];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+
+        sessions.put(token, new Session(employee, generation, System.currentTimeMillis() + ttlMillis));
+        issueOrder.add(token);
+        evictOverflow();
+        return token;
+    }
+
+    /**
+     * Finds the employee that a session token belongs to.
+     * @return The employee as they were when they logged in, or null if the token is unknown or has expired
+     */
+    public Employee get(String token) {
+        if (token == null) return null;
+        Session session = sessions.get(token);
+        if (session == null) {
+            missCount.incrementAndGet();
+            return null;
+        }
+        if (session.expiresAt < System.currentTimeMillis() || session.generation != generation(session.employee.getEmail())) {
+            sessions.remove(token, session);
+            missCount.incrementAndGet();
+            return null;
+        }
+        hitCount.incrementAndGet();
+        return session.employee;
+    }
+
+    //Ends every session belonging to the employee with this email address (for instance, because their role changed),
+    // including any being opened right now from what was read before the change
+    public void invalidate(String email) {
+        generations.merge(email, 1L, Long::sum);
+        sessions.values().removeIf(session -> Objects.equals(session.employee.getEmail(), email));
+    }
+
+    //Drops expired sessions, then the oldest remaining sessions until there is room for the newest one
+    private void evictOverflow() {
+        long now = System.currentTimeMillis();
+        Iterator<String> it = issueOrder.iterator();
+        while (it.hasNext()) {
+            String token = it.next();
+            Session session = sessions.get(token);
+            if (session == null) {
+                it.remove(); //Already invalidated or expired
+            } else if (session.expiresAt < now || sessions.size() > maxSessions) {
+                if (sessions.remove(token, session)) evictionCount.incrementAndGet();
+                it.remove();
+            } else {
+                break; //Everything after this was issued later, so it neither expires sooner nor is older
+            }
+        }
+    }
+
+    public int size() { return sessions.size(); }
+    public long getHitCount() { return hitCount.get(); }
+    public long getMissCount() { return missCount.get(); }
+    public long getEvictionCount() { return evictionCount.get(); }
+
+    private static class Session {
+        private final Employee employee;
+        private final long generation;
+        private final long expiresAt;
+
+        Session(Employee employee, long generation, long expiresAt) {
+            this.employee = employee;
+            this.generation = generation;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SessionCache{size=" + size() + ", hits=" + getHitCount() + ", misses=" + getMissCount() +
+                ", evictions=" + getEvictionCount() + "}";
+    }
+}
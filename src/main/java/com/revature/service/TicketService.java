@@ -3,51 +3,72 @@ package com.revature.service;
 import com.revature.controller.Controller;
 import com.revature.model.Employee;
 import com.revature.model.Ticket;
+import com.revature.repository.TicketRepository;
+import com.revature.repository.TicketSummary;
+import com.revature.utils.ConfigUtil;
 import org.codehaus.jackson.JsonNode;
-import org.codehaus.jackson.map.ObjectMapper;
 
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 public class TicketService extends Service {
+    //When true, ticket listings are read through a database cursor and written to the client as rows arrive,
+    // instead of being loaded into a list first
+    private static final boolean STREAM_TICKETS = ConfigUtil.getBoolean("PZERO_STREAM_TICKETS", true);
+    //The largest page of tickets that a client may ask for at once
+    private static final int MAX_PAGE_SIZE = ConfigUtil.getInt("PZERO_MAX_PAGE_SIZE", 1000);
+    //The most tickets that can be submitted in one request to /submitTickets
+    private static final int MAX_BATCH_SIZE = ConfigUtil.getInt("PZERO_MAX_BATCH_SIZE", 1000);
+    //The largest amount a ticket may be for, which is the most that tickamount (numeric(12, 2)) can hold
+    private static final BigDecimal MAX_AMOUNT = new BigDecimal("9999999999.99");
+    //The keys that a filter given to /finalizeTickets may have
+    private static final Set<String> FINALIZE_FILTERS = new HashSet<>(Arrays.asList("fromEmployee", "type", "maxAmount"));
+    //Whether filtered ticket listings are answered from an in-memory copy of the tickets (see TicketIndex)
+    private static final boolean INDEX_TICKETS = ConfigUtil.getBoolean("PZERO_TICKET_INDEX", false);
+    //How often the in-memory ticket summary is rebuilt from the database to correct any drift
+    private static final long SUMMARY_RECONCILE_MILLIS = ConfigUtil.getLong("PZERO_SUMMARY_RECONCILE_MS", 5 * 60 * 1000);
 
     /**
      * This will finalize a ticket in the database by changing its status to be either
      * APPROVED or DENIED. A ticket which has already been finalized cannot be altered again.
      * This action requires a manager's credentials.
-     * @param json A JSON String containing the relevant information: manager's credentials and a ticket ID.
+     * @param json A JSON body containing the relevant information: manager's credentials and a ticket ID.
      * @return A String indicating what happened when this action was attempted.
      */
-    public static Controller.WebTuple finalizeTicket(String json){
-        ObjectMapper objectMapper = new ObjectMapper();
+    public static CompletableFuture<Controller.WebTuple> finalizeTicket(byte[] json){
         JsonNode jsonNode;
         try {
-            jsonNode = objectMapper.readTree(json);
+            jsonNode = OBJECT_MAPPER.readTree(json);
         } catch (IOException e) {
             e.printStackTrace();
-            return new Controller.WebTuple(400, "Something went wrong. Did you send a malformed request?");
+            return completed(new Controller.WebTuple(400, "Something went wrong. Did you send a malformed request?"));
         }
-        JsonNode emailNode = jsonNode.get("email");
-        JsonNode passwordNode = jsonNode.get("password");
         JsonNode ticketIDNode = jsonNode.get("ticketID");
         JsonNode newStatusNode = jsonNode.get("newStatus");
-        if (emailNode == null || passwordNode == null || ticketIDNode == null || newStatusNode == null) {
-            return new Controller.WebTuple(400, 
+        if (!hasCredentials(jsonNode) || ticketIDNode == null || newStatusNode == null) {
+            return completed(new Controller.WebTuple(400, 
                     "Could not add employee; missing data in request.\n" +
                     "Correct format for request body:\n" +
                     "  {\n" +
                     "    'email':'<email address>',\n" +
                     "    'password':'<password>',\n" +
+                    "    ['token':'<session token>'] << may be sent instead of email and password after logging in\n" +
                     "    'ticketID':<id of the ticket to finalize>,\n" +
                     "    'newStatus':'<APPROVED/DENIED>'\n" +
                     "  }"
-                    );
+                    ));
         }
-        //Manager's credentials
-        String email = emailNode.asText();
-        String password = passwordNode.asText();
         //Ticket information
         int ticketID = ticketIDNode.asInt();
         Ticket.StatusValues newStatus; 
@@ -59,19 +80,145 @@ public class TicketService extends Service {
 
         //Input validation
         if(newStatus == null) {
-            return new Controller.WebTuple(400, "That is not a valid status to update the ticket to.");
+            return completed(new Controller.WebTuple(400, "That is not a valid status to update the ticket to."));
         }
 
         //Verifying that the credentials given are correct and come from a manager
-        Employee manager = EMPLOYEE_REPOSITORY.getEmployeeByEmail(email);
-        if (manager == null) return new Controller.WebTuple(403, "Failed to verify credentials.");
-        if (!Objects.equals(manager.getEmail(), email) || !Objects.equals(manager.getPassword(), password.hashCode()))
-            return new Controller.WebTuple(403, "Failed to verify credentials.");
-        if (manager.getRole() != Employee.Roles.MANAGER) return new Controller.WebTuple(403, "Only a manager can perform this action.");
-
-        //By this line, we have successfully verified that the person attempting this action is a manager.
-        //Update the ticket in the database and tell the user what happened
-        return TICKET_REPOSITORY.finalizeTicketByID(ticketID, newStatus);
+        return authenticateAsync(jsonNode).thenCompose(manager -> {
+            if (manager == null) return completed(new Controller.WebTuple(403, "Failed to verify credentials."));
+            if (manager.getRole() != Employee.Roles.MANAGER) return completed(new Controller.WebTuple(403, "Only a manager can perform this action."));
+
+            //By this line, we have successfully verified that the person attempting this action is a manager.
+            //Update the ticket in the database and tell the user what happened
+            return onDatabase(() -> TICKET_REPOSITORY.finalizeTicketByID(ticketID, newStatus));
+        });
+    }
+
+    /**
+     * Finalizes many tickets at once, changing every one that is still pending to either APPROVED or DENIED.
+     * The tickets are picked either by their IDs or by a filter over the pending tickets. This action requires a
+     * manager's credentials.
+     * @param json A JSON body containing a manager's credentials, the new status and either 'ticketIDs' or 'filter'
+     * @return A JSON object listing the tickets that were finalized (and, when IDs were given, those that were
+     *  already final or don't exist), or a String describing why nothing was done.
+     */
+    public static CompletableFuture<Controller.WebTuple> finalizeTickets(byte[] json){
+        JsonNode jsonNode;
+        try {
+            jsonNode = OBJECT_MAPPER.readTree(json);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return completed(new Controller.WebTuple(400, "Something went wrong. Did you send a malformed request?"));
+        }
+        JsonNode newStatusNode = jsonNode.get("newStatus");
+        JsonNode ticketIDsNode = jsonNode.get("ticketIDs");
+        JsonNode filterNode = jsonNode.get("filter");
+        boolean byID = ticketIDsNode != null && ticketIDsNode.isArray();
+        boolean byFilter = filterNode != null && filterNode.isObject();
+        if (!hasCredentials(jsonNode) || newStatusNode == null || byID == byFilter) {
+            return completed(new Controller.WebTuple(400,
+                    "Could not finalize tickets; missing data in request.\n" +
+                    "Correct format for request body:\n" +
+                    "  {\n" +
+                    "    'email':'<email address>',\n" +
+                    "    'password':'<password>',\n" +
+                    "    ['token':'<session token>'] << may be sent instead of email and password after logging in\n" +
+                    "    'newStatus':'<APPROVED/DENIED>',\n" +
+                    "    and exactly one of:\n" +
+                    "    'ticketIDs':[<id of a ticket to finalize>, ...]\n" +
+                    "    'filter':{ << finalize every pending ticket which matches all of the given filters\n" +
+                    "      ['fromEmployee':'<employee's email>'],\n" +
+                    "      ['type':'<travel/lodging/food/other>'],\n" +
+                    "      ['maxAmount':'<largest amount to finalize>']\n" +
+                    "    }\n" +
+                    "  }"
+                    ));
+        }
+        Ticket.StatusValues newStatus;
+        switch(newStatusNode.asText().toLowerCase()){
+            case "approved": newStatus =  Ticket.StatusValues.APPROVED; break;
+            case "denied": newStatus =  Ticket.StatusValues.DENIED; break;
+            default: newStatus =  null;
+        };
+
+        //Input validation
+        if(newStatus == null) {
+            return completed(new Controller.WebTuple(400, "That is not a valid status to update the tickets to."));
+        }
+        if (byFilter) {
+            //A filter finalizes every pending ticket it matches, so one which matches everything (because it is empty,
+            // or because its only key is misspelt) is refused rather than finalizing every pending ticket there is
+            if (filterNode.size() == 0)
+                return completed(new Controller.WebTuple(400, "A filter must include at least one of fromEmployee, type or maxAmount."));
+            for (Iterator<String> names = filterNode.getFieldNames(); names.hasNext(); ) {
+                String name = names.next();
+                if (!FINALIZE_FILTERS.contains(name))
+                    return completed(new Controller.WebTuple(400, "'" + name + "' is not a filter; the filters are fromEmployee, type and maxAmount."));
+            }
+        }
+        List<Integer> ticketIDs = new ArrayList<>();
+        if (byID) {
+            if (ticketIDsNode.size() > MAX_BATCH_SIZE)
+                return completed(new Controller.WebTuple(413, "At most " + MAX_BATCH_SIZE + " tickets can be finalized at once by ID."));
+            for (JsonNode idNode : ticketIDsNode) {
+                if (!idNode.isIntegralNumber()) return completed(new Controller.WebTuple(400, "Every ticket ID must be a number."));
+                ticketIDs.add(idNode.asInt());
+            }
+        }
+
+        //Verifying that the credentials given are correct and come from a manager
+        return authenticateAsync(jsonNode).thenCompose(manager -> {
+            if (manager == null) return completed(new Controller.WebTuple(403, "Failed to verify credentials."));
+            if (manager.getRole() != Employee.Roles.MANAGER) return completed(new Controller.WebTuple(403, "Only a manager can perform this action."));
+
+            //By this line, we have successfully verified that the person attempting this action is a manager.
+            if (byID) {
+                if (ticketIDs.isEmpty()) return completed(finalizeResponse(new TicketRepository.FinalizeResult()));
+                return onDatabase(() -> TICKET_REPOSITORY.finalizeTicketsByID(ticketIDs, newStatus))
+                        .thenApply(TicketService::finalizeResponse);
+            }
+
+            //Reading the filters
+            JsonNode fromEmployeeNode = filterNode.get("fromEmployee");
+            JsonNode typeNode = filterNode.get("type");
+            JsonNode maxAmountNode = filterNode.get("maxAmount");
+
+            Ticket.ReimbursementType type;
+            if(typeNode == null) type = null; else switch(typeNode.asText().toLowerCase()){
+                case "food": type = Ticket.ReimbursementType.FOOD; break;
+                case "lodging": type = Ticket.ReimbursementType.LODGING; break;
+                case "travel": type = Ticket.ReimbursementType.TRAVEL; break;
+                case "other": type = Ticket.ReimbursementType.OTHER; break;
+                default: return completed(new Controller.WebTuple(400, "That is not a valid type of ticket to filter by."));
+            };
+            BigDecimal maxAmount;
+            try {
+                maxAmount = maxAmountNode == null ? null : new BigDecimal(maxAmountNode.asText());
+            } catch (NumberFormatException exception) {
+                return completed(new Controller.WebTuple(400, "Could not parse the largest amount to finalize"));
+            }
+
+            String fromEmployee = fromEmployeeNode == null ? null : fromEmployeeNode.asText();
+            return employeeIdOf(fromEmployee).thenCompose(emplID -> {
+                if (fromEmployee != null && emplID == -1)
+                    return completed(new Controller.WebTuple(400, "The employee in that filter doesn't exist!"));
+                CompletableFuture<TicketRepository.FinalizeResult> result =
+                        onDatabase(() -> TICKET_REPOSITORY.finalizeTicketsMatching(emplID, type, maxAmount, newStatus));
+                return result.thenApply(TicketService::finalizeResponse);
+            });
+        });
+    }
+
+    //Looks up the ID of the employee named in a request on a database thread (-1 if they don't exist, or if nobody was named)
+    private static CompletableFuture<Integer> employeeIdOf(String email) {
+        if (email == null) return CompletableFuture.completedFuture(-1);
+        return onDatabase(() -> EMPLOYEE_REPOSITORY.getEmployeeId(email));
+    }
+
+    //Describes the tickets that were (or weren't) finalized; a null result means that the database failed
+    private static Controller.WebTuple finalizeResponse(TicketRepository.FinalizeResult result) {
+        if (result == null) return new Controller.WebTuple(500, "Something went wrong.");
+        return new Controller.WebTuple(200, makeJsonOf(result));
     }
 
     /**
@@ -79,47 +226,58 @@ public class TicketService extends Service {
      * The tickets retrieved can optionally be filtered based on information about the tickets themselves;
      * this can mean finding tickets from a specific employee, tickets that are pending/approved/denied, tickets
      * that ask to reimburse a specific type of purchase (food/lodging/etc), or any combination of these filters.
-     * @param json A JSON String that contains both a manager's credentials and any applicable
+     * @param json A JSON body that contains both a manager's credentials and any applicable
      *             filters to apply to the data.
      * @return A string containing a list of all tickets that match the filters (or all tickets if there are no
      *  filters), or a string containing a relevant error message if the operation was not successful.
      */
-    public static Controller.WebTuple getTicketsFiltered(String json){
-        ObjectMapper objectMapper = new ObjectMapper();
+    public static CompletableFuture<Controller.WebTuple> getTicketsFiltered(byte[] json){
+        return getTicketsFiltered(json, null);
+    }
+
+    /**
+     * Works like getTicketsFiltered(String), except that the list is sent from the response cache if the tickets
+     * haven't changed since it was last rendered with the same filters, and not sent at all if the client already has it.
+     * @param ifNoneMatch The ETags of the responses that the client already has (may be null)
+     */
+    public static CompletableFuture<Controller.WebTuple> getTicketsFiltered(byte[] json, String ifNoneMatch){
         JsonNode rootNode;
         try {
-            rootNode = objectMapper.readTree(json);
+            rootNode = OBJECT_MAPPER.readTree(json);
         } catch (IOException e) {
             e.printStackTrace();
-            return new Controller.WebTuple(400, "Something went wrong. Did you send a malformed request?");
+            return completed(new Controller.WebTuple(400, "Something went wrong. Did you send a malformed request?"));
         }
-        JsonNode emailNode = rootNode.get("email");
-        JsonNode passwordNode = rootNode.get("password");
         JsonNode fromEmployeeNode = rootNode.get("fromEmployee");
         JsonNode statusNode = rootNode.get("status");
         JsonNode typeNode = rootNode.get("type");
-        if (emailNode == null || passwordNode == null) {
-            return new Controller.WebTuple(400,
+        JsonNode limitNode = rootNode.get("limit");
+        JsonNode afterNode = rootNode.get("after");
+        if (!hasCredentials(rootNode)) {
+            return completed(new Controller.WebTuple(400,
                     "Could not add employee; missing data in request.\n" +
                     "Correct format for request body:\n" +
                     "  {\n" +
                     "    'email':'<email address>',\n" +
                     "    'password':'<password>'\n" +
+                    "    ['token':'<session token>'] << may be sent instead of email and password after logging in\n" +
                     "    ['fromEmployee':'<other employee's email>'] << get only the tickets that come from a specific employee (omit for all employees)\n" +
                     "    ['status':'<pending/approved/denied>'] << get only the tickets with a specific status (omit for all statuses)\n" +
                     "    ['type':'<travel/lodging/food/other>'] << get only the tickets asking to reimburse a specific type of purchase (omit for all types)\n" +
+                    "    ['limit':<page size>] << get at most this many tickets, along with the 'nextAfter' value of the next page (omit for every ticket)\n" +
+                    "    ['after':<ticket id>] << get only the tickets after this one (use the 'nextAfter' value of the previous page)\n" +
                     "  }\n" +
                     "Note that multiple filters as described above can be used in conjunction\n" +
                     "  (example: get all tickets from JonDoe@example.com which were denied)"
-                    );
+                    ));
         }
-        //Manager's credentials
-        String email = emailNode.asText();
-        String password = passwordNode.asText();
 
-        //Converting the other employee's email address into their ID number
+        //Paging
+        int limit = limitNode == null ? -1 : limitNode.asInt();
+        int after = afterNode == null ? 0 : afterNode.asInt();
+        Controller.WebTuple badPage = validatePage(limitNode, limit, after);
+        if (badPage != null) return completed(badPage);
         String fromEmployee = fromEmployeeNode == null? null : fromEmployeeNode.asText();
-        int emplID = EMPLOYEE_REPOSITORY.getEmployeeId(fromEmployee);
 
         //The status of the ticket
         Ticket.StatusValues status;
@@ -141,52 +299,64 @@ public class TicketService extends Service {
         };
 
         //Verifying that the credentials given are correct and come from a manager
-        Employee manager = EMPLOYEE_REPOSITORY.getEmployeeByEmail(email);
-        if (manager == null) return new Controller.WebTuple(403, "Failed to verify credentials.");
-        if (!Objects.equals(manager.getEmail(), email) || !Objects.equals(manager.getPassword(), password.hashCode()))
-            return new Controller.WebTuple(403, "Failed to verify credentials.");
-        if (manager.getRole() != Employee.Roles.MANAGER) return new Controller.WebTuple(403, "Only a manager can perform this action.");
-
-        //By this line, we have successfully verified that the person attempting this action is a manager.
-        //Create a list of all tickets based on the filters
-        List<Ticket> tickets = TICKET_REPOSITORY.getTicketsFiltered(emplID, status, type);
-        //Format all entries as JSON and return them
-        return new Controller.WebTuple(200, makeJsonOf(tickets));
+        return authenticateAsync(rootNode).thenCompose(manager -> {
+            if (manager == null) return completed(new Controller.WebTuple(403, "Failed to verify credentials."));
+            if (manager.getRole() != Employee.Roles.MANAGER) return completed(new Controller.WebTuple(403, "Only a manager can perform this action."));
+
+            //By this line, we have successfully verified that the person attempting this action is a manager.
+            return onDatabase(() -> {
+                //Converting the other employee's email address into their ID number
+                int emplID = EMPLOYEE_REPOSITORY.getEmployeeId(fromEmployee);
+
+                //The version is read before the tickets, so that a change made while they are being read makes the copy outdated
+                String cacheKey = "allTickets " + manager.getRole() + " " + emplID + " " + status + " " + type + " " + after + " " + limit;
+                long version = TICKET_REPOSITORY.getVersion();
+                Controller.WebTuple cached = RESPONSES.lookup(cacheKey, version, ifNoneMatch);
+                if (cached != null) return cached;
+
+                //Stream all tickets matching the filters to the client as JSON; they are written out on a request thread
+                return RESPONSES.store(cacheKey, version, streamTickets(emplID, status, type, after, limit));
+            });
+        });
     }
 
     //This function is similar to getTicketsFiltered, except it only gets an employee's own tickets with their
     // credentials. This operation does NOT require manager permissions to execute because an employee is only
     // viewing their own tickets.
-    public static Controller.WebTuple getMyTickets(String json){
-        ObjectMapper objectMapper = new ObjectMapper();
+    public static CompletableFuture<Controller.WebTuple> getMyTickets(byte[] json){
         JsonNode jsonNode;
         try {
-            jsonNode = objectMapper.readTree(json);
+            jsonNode = OBJECT_MAPPER.readTree(json);
         } catch (IOException e) {
             e.printStackTrace();
-            return new Controller.WebTuple(400, "Something went wrong. Did you send a malformed request?");
+            return completed(new Controller.WebTuple(400, "Something went wrong. Did you send a malformed request?"));
         }
-        JsonNode emailNode = jsonNode.get("email");
-        JsonNode passwordNode = jsonNode.get("password");
         JsonNode statusNode = jsonNode.get("status");
         JsonNode typeNode = jsonNode.get("type");
-        if (emailNode == null || passwordNode == null) {
-            return new Controller.WebTuple(400,
+        JsonNode limitNode = jsonNode.get("limit");
+        JsonNode afterNode = jsonNode.get("after");
+        if (!hasCredentials(jsonNode)) {
+            return completed(new Controller.WebTuple(400,
                     "Could not add employee; missing data in request.\n" +
                     "Correct format for request body:\n" +
                       "{\n" +
                         "'email':'<email address>',\n" +
                         "'password':'<password>'\n" +
+                        "['token':'<session token>'] << may be sent instead of email and password after logging in\n" +
                         "['status':'<pending/approved/denied>'] << get only the tickets with a specific status (omit for all statuses)\n" +
                         "['type':'<travel/lodging/food/other>'] << get only the tickets asking to reimburse a specific type of purchase (omit for all types)\n" +
+                        "['limit':<page size>] << get at most this many tickets, along with the 'nextAfter' value of the next page (omit for every ticket)\n" +
+                        "['after':<ticket id>] << get only the tickets after this one (use the 'nextAfter' value of the previous page)\n" +
                       "}\n" +
                     "Note that multiple filters as described above can be used in conjunction\n" +
                       "(example: get all tickets which are pending and ask to reimburse travel)\n"
-                    );
+                    ));
         }
-        //Employee's credentials
-        String email = emailNode.asText();
-        String password = passwordNode.asText();
+        //Paging
+        int limit = limitNode == null ? -1 : limitNode.asInt();
+        int after = afterNode == null ? 0 : afterNode.asInt();
+        Controller.WebTuple badPage = validatePage(limitNode, limit, after);
+        if (badPage != null) return completed(badPage);
 
         //The status of the ticket
         Ticket.StatusValues status;
@@ -213,72 +383,244 @@ public class TicketService extends Service {
         }
 
         //Verifying that the credentials given are correct
-        Employee employee = EMPLOYEE_REPOSITORY.getEmployeeByEmail(email);
-        if (employee == null) return new Controller.WebTuple(403, "Failed to verify credentials");
-        if (!Objects.equals(employee.getEmail(), email) || !Objects.equals(employee.getPassword(), password.hashCode()))
-            return new Controller.WebTuple(403,"Failed to verify credentials.");
-
-        //Create a list of all tickets from this employee, based on the given filters
-        List<Ticket> tickets = TICKET_REPOSITORY.getTicketsFiltered(employee.getId(), status, type);
-        //Format all entries as JSON and return them
-        return new Controller.WebTuple(200, makeJsonOf(tickets));
+        return authenticateAsync(jsonNode).thenCompose(employee -> {
+            if (employee == null) return completed(new Controller.WebTuple(403, "Failed to verify credentials."));
+
+            //Stream all tickets from this employee, based on the given filters, to the client as JSON
+            return onDatabase(() -> streamTickets(employee.getId(), status, type, after, limit));
+        });
+    }
+
+    /**
+     * Gets the number and total amount of tickets for each status and type of purchase, optionally along with the same
+     * for a single employee. This is answered from counters kept in memory, without querying the tickets table.
+     * This operation requires a manager's credentials.
+     * @param json A JSON body containing a manager's credentials and, optionally, 'fromEmployee'
+     * @return A JSON object containing the summary, or a String describing why it could not be given
+     */
+    public static CompletableFuture<Controller.WebTuple> getTicketSummary(byte[] json){
+        JsonNode jsonNode;
+        try {
+            jsonNode = OBJECT_MAPPER.readTree(json);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return completed(new Controller.WebTuple(400, "Something went wrong. Did you send a malformed request?"));
+        }
+        JsonNode fromEmployeeNode = jsonNode.get("fromEmployee");
+        if (!hasCredentials(jsonNode)) {
+            return completed(new Controller.WebTuple(400,
+                    "Could not get the ticket summary; missing data in request.\n" +
+                    "Correct format for request body:\n" +
+                    "  {\n" +
+                    "    'email':'<email address>',\n" +
+                    "    'password':'<password>'\n" +
+                    "    ['token':'<session token>'] << may be sent instead of email and password after logging in\n" +
+                    "    ['fromEmployee':'<other employee's email>'] << also summarize the tickets of a specific employee\n" +
+                    "  }"
+                    ));
+        }
+
+        //Verifying that the credentials given are correct and come from a manager
+        return authenticateAsync(jsonNode).thenCompose(manager -> {
+            if (manager == null) return completed(new Controller.WebTuple(403, "Failed to verify credentials."));
+            if (manager.getRole() != Employee.Roles.MANAGER) return completed(new Controller.WebTuple(403, "Only a manager can perform this action."));
+
+            //The summary itself is in memory; only finding the employee may need the database
+            String fromEmployee = fromEmployeeNode == null ? null : fromEmployeeNode.asText();
+            return employeeIdOf(fromEmployee).thenApply(emplID -> {
+                TicketSummary summary = TICKET_REPOSITORY.getSummary();
+                if (!summary.isReady()) return new Controller.WebTuple(503, "The ticket summary is still being calculated. Please try again.");
+                Map<String, Object> response = new LinkedHashMap<>();
+                response.put("tickets", summary.describeAll());
+                if (fromEmployee != null) {
+                    if (emplID == -1) return new Controller.WebTuple(400, "That employee doesn't exist!");
+                    response.put("employee", summary.describeEmployee(emplID));
+                }
+                return new Controller.WebTuple(200, makeJsonOf(response));
+            });
+        });
+    }
+
+    //Loads the in-memory ticket index in the background if it is enabled; until it is ready, listings use the database
+    public static void startTicketIndex() {
+        if (!INDEX_TICKETS) return;
+        Thread loader = new Thread(TICKET_REPOSITORY::loadIndex, "ticket-index-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    //Starts building the ticket summary in the background, so that it is ready by the time it is first asked for
+    public static void startTicketSummary() {
+        TICKET_REPOSITORY.getSummary().start(SUMMARY_RECONCILE_MILLIS);
     }
 
     /**
      * Attempts to register a reimbursement request ticket, using an employee's credentials to do so. This process
      * requires several things; the employee's email/password, the type of reimbursement,
      * the amount that the ticket is requesting, and a description of the expense
-     * @param json A JSON String containing all the relevant information
+     * @param json A JSON body containing all the relevant information
      * @return A String describing what happened when this function was run
      */
-    public static Controller.WebTuple submitTicket(String json){
-        ObjectMapper objectMapper = new ObjectMapper();
+    public static CompletableFuture<Controller.WebTuple> submitTicket(byte[] json){
         JsonNode jsonNode;
         try {
-            jsonNode = objectMapper.readTree(json);
+            jsonNode = OBJECT_MAPPER.readTree(json);
         } catch (IOException e) {
             e.printStackTrace();
-            return new Controller.WebTuple(400, "Something went wrong. Did you send a malformed request?");
+            return completed(new Controller.WebTuple(400, "Something went wrong. Did you send a malformed request?"));
         }
-        JsonNode emailNode = jsonNode.get("email");
-        JsonNode passwordNode = jsonNode.get("password");
         JsonNode reimbursementNode = jsonNode.get("reimbursementType");
         JsonNode amountNode = jsonNode.get("amount");
         JsonNode descriptionNode = jsonNode.get("description");
-        if(emailNode == null || passwordNode == null || amountNode == null || descriptionNode == null) {
-            return new Controller.WebTuple(400,
+        if(!hasCredentials(jsonNode) || amountNode == null || descriptionNode == null) {
+            return completed(new Controller.WebTuple(400,
                         "Could not add employee; missing data in request.\n" +
                         "Correct format for request body:\n" +
                         "  {\n" +
                         "    'email':'<email address>',\n" +
                         "    'password':'<password>',\n" +
+                        "    ['token':'<session token>'] << may be sent instead of email and password after logging in\n" +
                         "    'reimbursementType':['TRAVEL/LODGING/FOOD/OTHER'], <-- optional, defaults to OTHER\n" +
                         "    'amount':'<amount in ticket request>',\n" +
                         "    'description':'<description of the purchase>'\n" +
                         "  }\n"
-                        );
+                        ));
         }
         //Extracting all the information from the request into a format usable by TicketRepository
-        String email = emailNode.asText();
-        String password = passwordNode.asText();
-        Ticket.ReimbursementType reimbursementType;
-        if(reimbursementNode == null) {
-            reimbursementType = Ticket.ReimbursementType.OTHER;
-        } else {
-            switch(reimbursementNode.asText()){
-                case "TRAVEL": reimbursementType = Ticket.ReimbursementType.TRAVEL; break;
-                case "LODGING": reimbursementType = Ticket.ReimbursementType.LODGING; break;
-                case "FOOD": reimbursementType = Ticket.ReimbursementType.FOOD; break;
-                default: reimbursementType = Ticket.ReimbursementType.OTHER;
-            };
+        Ticket.ReimbursementType reimbursementType = readReimbursementType(reimbursementNode);
+
+        //Checking the credentials of the employee to ensure that they are valid.
+        return authenticateAsync(jsonNode).thenCompose(employee -> {
+            if(employee == null) return completed(new Controller.WebTuple(403, "Failed to verify credentials."));
+
+            //Input validation
+            Controller.WebTuple invalid = validateTicket(amountNode, descriptionNode);
+            if(invalid != null) return completed(invalid);
+            BigDecimal amount = new BigDecimal(amountNode.asText());
+            String description = descriptionNode.asText();
+
+            //Finally, running the database query, either together with other submissions or on its own
+            if (SUBMISSIONS != null) {
+                Ticket ticket = new Ticket(employee.getId(), amount, description, reimbursementType, Ticket.StatusValues.PENDING);
+                return SUBMISSIONS.submit(ticket).thenApply(id -> id == null
+                        ? new Controller.WebTuple(500, "Ticket could not be submitted.")
+                        : new Controller.WebTuple(200, "Ticket was successfully submitted."));
+            }
+            return onDatabase(() -> TICKET_REPOSITORY.createNewTicket(employee.getId(), reimbursementType, amount, description));
+        });
+    }
+
+    /**
+     * Submits many reimbursement request tickets at once for a single employee. The employee's credentials are only
+     * checked once, every ticket is checked with the same rules as submitTicket, and all of the valid tickets are
+     * inserted together in a single transaction.
+     * @param json A JSON body containing the employee's credentials and an array of tickets ('tickets'), each in the
+     *             same format as the ticket fields of submitTicket
+     * @return A JSON object describing what happened to each ticket, in the order they were sent
+     */
+    public static CompletableFuture<Controller.WebTuple> submitTickets(byte[] json){
+        JsonNode jsonNode;
+        try {
+            jsonNode = OBJECT_MAPPER.readTree(json);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return completed(new Controller.WebTuple(400, "Something went wrong. Did you send a malformed request?"));
         }
+        JsonNode ticketsNode = jsonNode.get("tickets");
+        if(!hasCredentials(jsonNode) || ticketsNode == null || !ticketsNode.isArray()) {
+            return completed(new Controller.WebTuple(400,
+                        "Could not add tickets; missing data in request.\n" +
+                        "Correct format for request body:\n" +
+                        "  {\n" +
+                        "    'email':'<email address>',\n" +
+                        "    'password':'<password>',\n" +
+                        "    ['token':'<session token>'] << may be sent instead of email and password after logging in\n" +
+                        "    'tickets':[\n" +
+                        "      {\n" +
+                        "        'reimbursementType':['TRAVEL/LODGING/FOOD/OTHER'], <-- optional, defaults to OTHER\n" +
+                        "        'amount':'<amount in ticket request>',\n" +
+                        "        'description':'<description of the purchase>'\n" +
+                        "      }, ...\n" +
+                        "    ]\n" +
+                        "  }\n"
+                        ));
+        }
+        if(ticketsNode.size() > MAX_BATCH_SIZE)
+            return completed(new Controller.WebTuple(413, "At most " + MAX_BATCH_SIZE + " tickets can be submitted at once."));
 
         //Checking the credentials of the employee to ensure that they are valid.
-        Employee employee = EMPLOYEE_REPOSITORY.getEmployeeByEmail(email);
-        if(employee == null) return new Controller.WebTuple(403, "Failed to verify credentials.");
-        if(!Objects.equals(employee.getPassword(), password.hashCode())) return new Controller.WebTuple(403, "Failed to verify credentials.");
+        return authenticateAsync(jsonNode).thenCompose(employee -> {
+            if(employee == null) return completed(new Controller.WebTuple(403, "Failed to verify credentials."));
 
-        //Input validation
+            //Input validation; each ticket is either rejected here or queued up for the database
+            List<Map<String, Object>> results = new ArrayList<>();
+            List<Ticket> toInsert = new ArrayList<>();
+            List<Map<String, Object>> insertResults = new ArrayList<>();
+            for(int i = 0; i < ticketsNode.size(); i++) {
+                JsonNode ticketNode = ticketsNode.get(i);
+                JsonNode amountNode = ticketNode.get("amount");
+                JsonNode descriptionNode = ticketNode.get("description");
+                Controller.WebTuple invalid = amountNode == null || descriptionNode == null
+                        ? new Controller.WebTuple(400, "This ticket is missing its amount or description.")
+                        : validateTicket(amountNode, descriptionNode);
+
+                Map<String, Object> result = new LinkedHashMap<>();
+                result.put("index", i);
+                if(invalid != null) {
+                    result.put("status", invalid.statusCode());
+                    result.put("message", invalid.response());
+                } else {
+                    toInsert.add(new Ticket(employee.getId(), new BigDecimal(amountNode.asText()), descriptionNode.asText(),
+                            readReimbursementType(ticketNode.get("reimbursementType")), Ticket.StatusValues.PENDING));
+                    insertResults.add(result);
+                }
+                results.add(result);
+            }
+
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("submitted", toInsert.size());
+            response.put("rejected", results.size() - toInsert.size());
+            response.put("results", results);
+            if(toInsert.isEmpty()) return completed(new Controller.WebTuple(200, makeJsonOf(response)));
+
+            //Finally, running the database query
+            return onDatabase(() -> {
+                try {
+                    return TICKET_REPOSITORY.createNewTickets(toInsert);
+                } catch (TicketRepository.UnavailableException e) {
+                    e.printStackTrace();
+                    return null;
+                }
+            }).thenApply(ids -> {
+                for(int i = 0; i < insertResults.size(); i++) {
+                    Map<String, Object> result = insertResults.get(i);
+                    if(ids == null) {
+                        result.put("status", 500);
+                        result.put("message", "Ticket could not be submitted.");
+                    } else {
+                        result.put("status", 200);
+                        result.put("message", "Ticket was successfully submitted.");
+                        result.put("ticketID", ids.get(i));
+                    }
+                }
+                return new Controller.WebTuple(200, makeJsonOf(response));
+            });
+        });
+    }
+
+    //Reads the type of purchase that a ticket is asking to reimburse (OTHER if it isn't given or recognized)
+    private static Ticket.ReimbursementType readReimbursementType(JsonNode reimbursementNode) {
+        if(reimbursementNode == null) return Ticket.ReimbursementType.OTHER;
+        switch(reimbursementNode.asText()){
+            case "TRAVEL": return Ticket.ReimbursementType.TRAVEL;
+            case "LODGING": return Ticket.ReimbursementType.LODGING;
+            case "FOOD": return Ticket.ReimbursementType.FOOD;
+            default: return Ticket.ReimbursementType.OTHER;
+        }
+    }
+
+    //Checks the amount and description of a new ticket, returning a response describing the problem if either is invalid
+    private static Controller.WebTuple validateTicket(JsonNode amountNode, JsonNode descriptionNode) {
         BigDecimal amount;
         try{
             amount = new BigDecimal(amountNode.asText());
@@ -288,11 +630,45 @@ public class TicketService extends Service {
         if(amount.compareTo(new BigDecimal(0)) <= 0){
             return new Controller.WebTuple(403, "You cannot request a reimbursement for that amount of money!");
         }
+        //Compared before rounding too, since rounding an amount with a huge exponent would take a huge number
+        if(amount.compareTo(MAX_AMOUNT) > 0 || amount.setScale(2, RoundingMode.HALF_UP).compareTo(MAX_AMOUNT) > 0){
+            return new Controller.WebTuple(403, "A ticket may be for at most " + MAX_AMOUNT.toPlainString() + ".");
+        }
+
+        if(descriptionNode.asText().equals("")) return new Controller.WebTuple(403, "Your ticket description may not be empty.");
+        return null;
+    }
 
-        String description = descriptionNode.asText();
-        if(description.equals("")) return new Controller.WebTuple(403, "Your ticket description may not be empty.");
+    //Checks the paging parameters of a ticket listing, returning a response describing the problem if they are invalid
+    private static Controller.WebTuple validatePage(JsonNode limitNode, int limit, int after) {
+        if (limitNode != null && (limit < 1 || limit > MAX_PAGE_SIZE))
+            return new Controller.WebTuple(400, "The page size (limit) must be a number from 1 to " + MAX_PAGE_SIZE + ".");
+        if (after < 0)
+            return new Controller.WebTuple(400, "The ticket to start after (after) must be a valid ticket ID.");
+        return null;
+    }
 
-        //Finally, running the database query
-        return TICKET_REPOSITORY.createNewTicket(employee.getId(), reimbursementType, amount, description);
+    //Sends every ticket matching the given filters to the client as a JSON array, or a single page of them as
+    // {"tickets":[...], "nextAfter":<id>} if a page size was given (limit is -1 otherwise)
+    //This queries the database, so it has to run on a database thread; the response itself is written later
+    // (and, when reading through a cursor, the connection is held until it has been)
+    private static Controller.WebTuple streamTickets(int emplID, Ticket.StatusValues status, Ticket.ReimbursementType type,
+                                                     int after, int limit) {
+        //One extra ticket is requested to find out whether there is another page after this one
+        int rowLimit = limit == -1 ? -1 : limit + 1;
+        //The in-memory index answers if it is in use; otherwise (or until it has loaded) the database does
+        Iterable<Ticket> tickets = INDEX_TICKETS ? TICKET_REPOSITORY.getIndex().find(emplID, status, type, after, rowLimit) : null;
+        if (tickets == null && STREAM_TICKETS) {
+            try {
+                tickets = TICKET_REPOSITORY.openTicketsFiltered(emplID, status, type, after, rowLimit);
+            } catch (SQLException e) {
+                e.printStackTrace();
+                return new Controller.WebTuple(500, "Something went wrong while retrieving the ticket list");
+            }
+        } else if (tickets == null) {
+            tickets = TICKET_REPOSITORY.getTicketsFiltered(emplID, status, type, after, rowLimit);
+        }
+        if (limit == -1) return streamJsonOf(tickets);
+        return streamJsonPageOf("tickets", tickets, limit, Ticket::getId);
     }
 }
@@ -0,0 +1,168 @@
+package com.revature.service;
+
+import com.revature.model.Ticket;
+import com.revature.repository.TicketRepository;
+import com.revature.utils.ConfigUtil;
+import com.revature.utils.DatabaseExecutor;
+import com.revature.utils.Metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Group commit for /submitTicket (PZERO_GROUP_COMMIT). Instead of every submission being inserted and committed on its
+ * own, submissions wait on a bounded queue, and a single writer thread inserts whatever has gathered as one batch in one
+ * transaction: as soon as PZERO_GROUP_COMMIT_MAX_BATCH tickets are waiting, or PZERO_GROUP_COMMIT_MAX_DELAY_MS after
+ * the first of them arrived, whichever comes first. During a burst, one commit covers many submissions; when it is
+ * quiet, a submission waits at most that delay for company.
+ * A batch which the database refuses because of the tickets in it is split in half and each half is tried again, down
+ * to single tickets, so that a ticket the database refuses only fails its own submission rather than every submission
+ * it was batched with. A batch which fails for any other reason, such as the database being unreachable, fails every
+ * submission in it at once, since splitting it up would only send more work to a database that can't take any.
+ * When PZERO_GROUP_COMMIT_QUEUE submissions are already waiting, more are refused straight away (and answered with a
+ * 503 so that clients back off) rather than piling up behind the writer.
+ */
+class TicketSubmissionQueue {
+    private final TicketRepository repository;
+    private final BlockingQueue<Submission> queue;
+    private final int maxBatch;
+    private final long maxDelayNanos;
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder tickets = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder failedBatches = new LongAdder();
+    private final LongAdder failedTickets = new LongAdder();
+    private volatile int largestBatch; //Only written by the writer thread
+
+    TicketSubmissionQueue(TicketRepository repository, int capacity, int maxBatch, long maxDelayMillis) {
+        this.repository = repository;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.maxBatch = Math.max(1, maxBatch);
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxDelayMillis));
+        Thread writer = new Thread(this::run, "ticket-group-commit");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    //Creates the queue described by the configuration, or returns null if every submission commits on its own
+    static TicketSubmissionQueue fromConfig(TicketRepository repository) {
+        if (!ConfigUtil.getBoolean("PZERO_GROUP_COMMIT", false)) return null;
+        return new TicketSubmissionQueue(repository,
+                ConfigUtil.getInt("PZERO_GROUP_COMMIT_QUEUE", 10000),
+                ConfigUtil.getInt("PZERO_GROUP_COMMIT_MAX_BATCH", 200),
+                ConfigUtil.getLong("PZERO_GROUP_COMMIT_MAX_DELAY_MS", 5));
+    }
+
+    /**
+     * Queues a new ticket to be inserted with the next batch.
+     * @return A future which completes with the ID given to the ticket once its batch has been committed, or with null
+     *  if the batch could not be inserted; or, if the queue is full, one which has already failed with a
+     *  RejectedExecutionException
+     */
+    CompletableFuture<Integer> submit(Ticket ticket) {
+        Submission submission = new Submission(ticket);
+        if (!queue.offer(submission)) {
+            rejected.increment();
+            CompletableFuture<Integer> refused = new CompletableFuture<>();
+            refused.completeExceptionally(new RejectedExecutionException("Too many ticket submissions are waiting to be committed."));
+            return refused;
+        }
+        return submission.result;
+    }
+
+    private void run() {
+        List<Submission> batch = new ArrayList<>(maxBatch);
+        while (true) {
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < maxBatch) {
+                    //Whatever is already waiting joins the batch straight away; only then is it worth waiting for more
+                    if (queue.drainTo(batch, maxBatch - batch.size()) > 0) continue;
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) break;
+                    Submission next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+                commit(batch);
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                for (Submission submission : batch) submission.result.completeExceptionally(e);
+            }
+            batch.clear();
+        }
+    }
+
+    //Inserts one batch in a single transaction, then completes each submission with its own ticket ID
+    private void commit(List<Submission> batch) {
+        Integer[] ids = new Integer[batch.size()];
+        insert(batch, 0, batch.size(), ids);
+        batches.increment();
+        tickets.add(batch.size());
+        if (batch.size() > largestBatch) largestBatch = batch.size();
+
+        //Each submission is answered from a request thread, so that the writer can get on with the next batch
+        Executor callbacks = DatabaseExecutor.getCallbackExecutor();
+        for (int i = 0; i < batch.size(); i++) {
+            CompletableFuture<Integer> result = batch.get(i).result;
+            Integer id = ids[i];
+            if (id == null) failedTickets.increment();
+            callbacks.execute(() -> result.complete(id));
+        }
+    }
+
+    //Inserts the submissions from (inclusive) to (exclusive) of a batch in one transaction, filling in their IDs. If
+    // the database refuses them, each half is inserted on its own, and so on; the IDs of tickets which are refused on
+    // their own are left null. If the database is unavailable, nothing more is tried, and this returns false.
+    private boolean insert(List<Submission> batch, int from, int to, Integer[] ids) {
+        List<Ticket> toInsert = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) toInsert.add(batch.get(i).ticket);
+        List<Integer> inserted;
+        Metrics.Timer timer = Metrics.timeQuery("TicketSubmissionQueue.commit");
+        try {
+            inserted = repository.createNewTickets(toInsert);
+        } catch (TicketRepository.UnavailableException e) {
+            e.printStackTrace();
+            if (from == 0 && to == batch.size()) failedBatches.increment();
+            return false;
+        } finally {
+            timer.stop();
+        }
+        if (inserted != null) {
+            for (int i = from; i < to; i++) ids[i] = inserted.get(i - from);
+            return true;
+        }
+        if (from == 0 && to == batch.size()) failedBatches.increment();
+        if (to - from == 1) return true;
+        int middle = (from + to) >>> 1;
+        return insert(batch, from, middle, ids) && insert(batch, middle, to, ids);
+    }
+
+    long getBatchCount() { return batches.sum(); }
+    long getTicketCount() { return tickets.sum(); }
+    long getRejectedCount() { return rejected.sum(); }
+    long getFailedBatchCount() { return failedBatches.sum(); }
+    long getFailedTicketCount() { return failedTickets.sum(); }
+    int getLargestBatch() { return largestBatch; }
+    int getQueuedCount() { return queue.size(); }
+
+    private static class Submission {
+        private final Ticket ticket;
+        private final CompletableFuture<Integer> result = new CompletableFuture<>();
+
+        Submission(Ticket ticket) {
+            this.ticket = ticket;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.revature.utils;
+
+//This class is responsible for reading tuning options for the server.
+//Every option can be given either as a JVM system property (-DPZERO_POOL_MAX=20) or as an environment variable
+// of the same name, in that order of precedence. Anything missing or malformed falls back to the given default.
+public class ConfigUtil {
+
+    //Private constructor to prevent this object from being instantiated
+    private ConfigUtil(){}
+
+    public static String getString(String name, String defaultValue) {
+        String value = System.getProperty(name);
+        if (value == null) value = System.getenv(name);
+        if (value == null || value.trim().equals("")) return defaultValue;
+        return value.trim();
+    }
+
+    public static int getInt(String name, int defaultValue) {
+        String value = getString(name, null);
+        if (value == null) return defaultValue;
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            System.err.println("Ignoring malformed value for " + name + ": " + value);
+            return defaultValue;
+        }
+    }
+
+    public static long getLong(String name, long defaultValue) {
+        String value = getString(name, null);
+        if (value == null) return defaultValue;
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            System.err.println("Ignoring malformed value for " + name + ": " + value);
+            return defaultValue;
+        }
+    }
+
+    public static boolean getBoolean(String name, boolean defaultValue) {
+        String value = getString(name, null);
+        if (value == null) return defaultValue;
+        return value.equalsIgnoreCase("true") || value.equals("1") || value.equalsIgnoreCase("yes");
+    }
+}
@@ -0,0 +1,281 @@
+package com.revature.utils;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded pool of physical database connections.
+ * Connections handed out by this pool are proxies; calling close() on them returns the physical connection to the
+ * pool (closing any statements that were left open on it) instead of disconnecting from the database.
+ */
+public class ConnectionPool {
+    private final String url;
+    private final Properties info; //The credentials and driver settings every connection is opened with
+
+    private final int minSize; //Idle connections below this count are never evicted
+    private final int maxSize; //At most this many connections may exist at once
+    private final long idleTimeoutMillis; //Idle connections older than this are evicted (down to minSize)
+    private final long borrowTimeoutMillis; //How long a caller may wait for a free connection before failing
+    private final long validateAfterIdleMillis; //Connections idle for longer than this are validated before use
+
+    //Idle connections; the most recently returned connection is at the front so that the rest can age out
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    //One permit per connection that may still be borrowed
+    private final Semaphore permits;
+    private final ScheduledExecutorService evictor;
+
+    //Pool usage counters
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong waitCount = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong destroyedCount = new AtomicLong();
+    private final AtomicLong validationFailureCount = new AtomicLong();
+
+    public ConnectionPool(String url, Properties info, int minSize, int maxSize,
+                          long idleTimeoutMillis, long borrowTimeoutMillis, long validateAfterIdleMillis) {
+        if (maxSize < 1) throw new IllegalStateException("The maximum size of a connection pool must be at least 1");
+        if (minSize < 0 || minSize > maxSize)
+            throw new IllegalStateException("The minimum size of a connection pool must be between 0 and its maximum size");
+
+        this.url = url;
+        this.info = info;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.validateAfterIdleMillis = validateAfterIdleMillis;
+        this.permits = new Semaphore(maxSize, true);
+
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "connection-pool-evictor");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1000, idleTimeoutMillis / 2);
+        evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrows a connection from the pool, opening a new one if no idle connection is available and the pool
+     * is not full. Fails with an SQLException if no connection becomes free within the borrow timeout.
+     * @return A connection which must be closed by the caller to return it to the pool
+     */
+    public Connection borrow() throws SQLException {
+        borrowCount.incrementAndGet();
+        if (!permits.tryAcquire()) {
+            //The pool is exhausted; wait for another caller to return a connection
+            waitCount.incrementAndGet();
+            long start = System.nanoTime();
+            boolean acquired;
+            try {
+                acquired = permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for a database connection", e);
+            } finally {
+                waitNanos.addAndGet(System.nanoTime() - start);
+            }
+            if (!acquired) {
+                timeoutCount.incrementAndGet();
+                throw new SQLException("Timed out after " + borrowTimeoutMillis + "ms waiting for a database connection");
+            }
+        }
+
+        try {
+            PooledConnection pooled;
+            while ((pooled = idle.pollFirst()) != null) {
+                if (isUsable(pooled)) return pooled.lend();
+                destroy(pooled);
+            }
+            return open().lend();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    //Validates a connection that has been sitting idle for a while; recently used connections are trusted
+    private boolean isUsable(PooledConnection pooled) {
+        if (System.currentTimeMillis() - pooled.lastUsed < validateAfterIdleMillis) return true;
+        try {
+            if (pooled.physical.isValid(Math.max(1, (int) (borrowTimeoutMillis / 1000)))) return true;
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        validationFailureCount.incrementAndGet();
+        return false;
+    }
+
+    private PooledConnection open() throws SQLException {
+        Connection physical = DriverManager.getConnection(url, info);
+        createdCount.incrementAndGet();
+        return new PooledConnection(physical);
+    }
+
+    private void destroy(PooledConnection pooled) {
+        destroyedCount.incrementAndGet();
+        try {
+            pooled.physical.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    //Called when a borrowed connection is closed by its user
+    private void giveBack(PooledConnection pooled) {
+        boolean reusable;
+        try {
+            pooled.closeOpenStatements();
+            if (!pooled.physical.getAutoCommit()) {
+                pooled.physical.rollback();
+                pooled.physical.setAutoCommit(true);
+            }
+            reusable = !pooled.physical.isClosed();
+        } catch (SQLException e) {
+            e.printStackTrace();
+            reusable = false;
+        }
+        if (reusable) {
+            pooled.lastUsed = System.currentTimeMillis();
+            idle.offerFirst(pooled);
+        } else {
+            destroy(pooled);
+        }
+        permits.release();
+    }
+
+    //Closes connections which have been idle for too long, then tops the pool back up to its minimum size
+    private void evictIdle() {
+        long now = System.currentTimeMillis();
+        int keep = minSize;
+        List<PooledConnection> expired = new ArrayList<>();
+        Iterator<PooledConnection> it = idle.iterator();
+        while (it.hasNext()) {
+            PooledConnection pooled = it.next();
+            if (keep > 0) {
+                keep--;
+            } else if (now - pooled.lastUsed > idleTimeoutMillis && idle.removeFirstOccurrence(pooled)) {
+                expired.add(pooled);
+            }
+        }
+        for (PooledConnection pooled : expired) destroy(pooled);
+
+        while (idle.size() < minSize && permits.tryAcquire()) {
+            try {
+                PooledConnection pooled = open();
+                pooled.lastUsed = System.currentTimeMillis();
+                idle.offerLast(pooled);
+            } catch (SQLException e) {
+                e.printStackTrace();
+                break;
+            } finally {
+                permits.release();
+            }
+        }
+    }
+
+    public int getMaxSize() { return maxSize; }
+    public int getActiveCount() { return maxSize - permits.availablePermits(); }
+    public int getIdleCount() { return idle.size(); }
+    public int getWaitingCount() { return permits.getQueueLength(); }
+    public long getBorrowCount() { return borrowCount.get(); }
+    public long getWaitCount() { return waitCount.get(); }
+    public long getWaitMillis() { return TimeUnit.NANOSECONDS.toMillis(waitNanos.get()); }
+    public long getTimeoutCount() { return timeoutCount.get(); }
+    public long getCreatedCount() { return createdCount.get(); }
+    public long getDestroyedCount() { return destroyedCount.get(); }
+    public long getValidationFailureCount() { return validationFailureCount.get(); }
+
+    @Override
+    public String toString() {
+        return "ConnectionPool{active=" + getActiveCount() + ", idle=" + getIdleCount() + ", max=" + maxSize +
+                ", waiting=" + getWaitingCount() + ", borrows=" + getBorrowCount() + ", waits=" + getWaitCount() +
+                ", waitMillis=" + getWaitMillis() + ", timeouts=" + getTimeoutCount() + ", created=" + getCreatedCount() +
+                ", destroyed=" + getDestroyedCount() + ", validationFailures=" + getValidationFailureCount() + "}";
+    }
+
+    //A physical connection, plus the statements opened on it during the current loan
+    private class PooledConnection {
+        private final Connection physical;
+        private final List<Statement> openStatements = new ArrayList<>();
+        private volatile long lastUsed = System.currentTimeMillis();
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+        }
+
+        //Wraps this connection in a proxy whose close() returns it to the pool. Every loan gets its own proxy, so a
+        // caller that holds on to a returned connection cannot use it while somebody else has borrowed it.
+        Connection lend() {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, new Loan(this));
+        }
+
+        void closeOpenStatements() {
+            for (Statement statement : openStatements) {
+                try {
+                    statement.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+            openStatements.clear();
+        }
+    }
+
+    //Forwards calls to the physical connection for as long as a single loan lasts
+    private class Loan implements InvocationHandler {
+        private final PooledConnection pooled;
+        private boolean returned;
+
+        Loan(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!returned) {
+                        returned = true;
+                        giveBack(pooled);
+                    }
+                    return null;
+                case "isClosed":
+                    return returned || pooled.physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled" + pooled.physical;
+            }
+            if (returned) throw new SQLException("This connection has already been returned to the pool");
+            try {
+                Object result = method.invoke(pooled.physical, args);
+                if (result instanceof Statement) pooled.openStatements.add((Statement) result);
+                return result;
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
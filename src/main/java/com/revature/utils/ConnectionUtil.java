@@ -1,45 +1,58 @@
 package com.revature.utils;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.Properties;
 
 //This class is responsible for connecting to our database
 public class ConnectionUtil {
 
-    //We want only one connection to the database the entire time
-    private static Connection con = null;
+    //Every connection to the database is borrowed from this pool; it is created the first time it is needed
+    private static volatile ConnectionPool pool = null;
 
     //Private constructor to prevent this object from being instantiated
-    private ConnectionUtil(){
-        con = null;
-    }
+    private ConnectionUtil(){}
 
     //Method that gives us a connection to the DB
-    //This will always return the existing connection if it does exist
-    public static Connection getConnection() {
-        try {
-            if(con != null && !con.isClosed()) {
-                return con;
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-
-        String url, user, pass;
-        //These fields are filled with local environment variables to
-        // ensure that hardcoded credentials are never uploaded to
-        // git
-        url = System.getenv("PZEROURL");
-        user = System.getenv("PZEROUSER");
-        pass = System.getenv("PZEROPASSWORD");
+    //The connection is borrowed from the pool, and closing it (e.g. with try-with-resources) returns it to the pool.
+    //This fails with an SQLException if no connection becomes available within PZERO_POOL_BORROW_TIMEOUT_MS.
+    public static Connection getConnection() throws SQLException {
+        return getPool().borrow();
+    }
 
-        try {
-            con = DriverManager.getConnection(url, user, pass);
-        } catch (SQLException e) {
-            e.printStackTrace();
+    public static ConnectionPool getPool() {
+        ConnectionPool result = pool;
+        if (result == null) {
+            synchronized (ConnectionUtil.class) {
+                result = pool;
+                if (result == null) {
+                    //These fields are filled with local environment variables to
+                    // ensure that hardcoded credentials are never uploaded to
+                    // git (system properties of the same names take precedence, like every other option)
+                    String url = ConfigUtil.getString("PZEROURL", null);
+                    String user = ConfigUtil.getString("PZEROUSER", null);
+                    String password = ConfigUtil.getString("PZEROPASSWORD", null);
+                    Properties info = new Properties();
+                    if (user != null) info.setProperty("user", user);
+                    if (password != null) info.setProperty("password", password);
+                    //How many times the driver runs a PreparedStatement before preparing it on the server, after which
+                    // it only sends the parameters. The driver keeps prepared statements per connection, so with
+                    // pooled connections the fixed query texts in the repositories are each parsed once per connection.
+                    info.setProperty("prepareThreshold", ConfigUtil.getString("PZERO_PREPARE_THRESHOLD", "1"));
+                    //Lets the driver send a JDBC batch of INSERTs as a few multi-row INSERTs instead of one statement
+                    // per row, which is what makes inserting a batch of tickets (see createNewTickets) cheap
+                    info.setProperty("reWriteBatchedInserts", ConfigUtil.getString("PZERO_REWRITE_BATCHED_INSERTS", "true"));
+
+                    result = new ConnectionPool(url, info,
+                            ConfigUtil.getInt("PZERO_POOL_MIN", 2),
+                            ConfigUtil.getInt("PZERO_POOL_MAX", 10),
+                            ConfigUtil.getLong("PZERO_POOL_IDLE_TIMEOUT_MS", 300000),
+                            ConfigUtil.getLong("PZERO_POOL_BORROW_TIMEOUT_MS", 2000),
+                            ConfigUtil.getLong("PZERO_POOL_VALIDATE_AFTER_IDLE_MS", 5000));
+                    pool = result;
+                }
+            }
         }
-
-        return con;
+        return result;
     }
 }
@@ -0,0 +1,82 @@
+package com.revature.utils;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Runs the blocking work of requests (anything that may wait on the database) on its own small pool of threads,
+ * sized to the connection pool, so that the threads handling HTTP never wait on Postgres themselves.
+ * Work waits in a bounded queue (PZERO_DB_QUEUE) for a thread; once that is full, it is refused straight away rather
+ * than piling up. The result of each piece of work is handed back to the request threads (see setCallbackExecutor),
+ * so that whatever is done with it afterwards (rendering JSON, sending the response) doesn't hold up a database thread.
+ */
+public final class DatabaseExecutor {
+    //One thread per pooled connection; any more would only wait for a connection to be returned
+    private static final int THREADS = ConfigUtil.getInt("PZERO_DB_THREADS", ConfigUtil.getInt("PZERO_POOL_MAX", 10));
+    private static final ThreadPoolExecutor POOL;
+    static {
+        AtomicInteger threadNumber = new AtomicInteger();
+        POOL = new ThreadPoolExecutor(THREADS, THREADS, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, ConfigUtil.getInt("PZERO_DB_QUEUE", 10000))),
+                r -> {
+                    Thread t = new Thread(r, "db-worker-" + threadNumber.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        POOL.allowCoreThreadTimeOut(true);
+    }
+
+    //Where results are handed back to; until the server sets it, they are completed on the database thread itself
+    private static volatile Executor callbackExecutor = Runnable::run;
+    private static final LongAdder rejected = new LongAdder();
+
+    private DatabaseExecutor() {}
+
+    //Sets the executor that results are handed back to (the server's request threads)
+    public static void setCallbackExecutor(Executor executor) {
+        callbackExecutor = executor == null ? Runnable::run : executor;
+    }
+
+    //The executor that results are handed back to, for other threads which finish requests
+    public static Executor getCallbackExecutor() {
+        return callbackExecutor;
+    }
+
+    /**
+     * Runs some blocking work on a database thread.
+     * @return A future which completes on the callback executor with the result of the work, or with the exception it
+     *  threw; or, if too much work is already waiting, one which has already failed with a RejectedExecutionException
+     */
+    public static <T> CompletableFuture<T> supply(Supplier<T> work) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            POOL.execute(() -> {
+                T value;
+                try {
+                    value = work.get();
+                } catch (Throwable e) {
+                    callbackExecutor.execute(() -> result.completeExceptionally(e));
+                    return;
+                }
+                callbackExecutor.execute(() -> result.complete(value));
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    public static int getThreadCount() { return THREADS; }
+    public static int getActiveCount() { return POOL.getActiveCount(); }
+    public static int getQueuedCount() { return POOL.getQueue().size(); }
+    public static long getRejectedCount() { return rejected.sum(); }
+}
@@ -0,0 +1,104 @@
+package com.revature.utils;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records how long something takes, into a fixed set of buckets. Each power of two (in microseconds) is split into
+ * four buckets, so any quantile read from it is within 25% of the true value, from 1 microsecond up to about 19 hours.
+ * Recording only adds to LongAdders, so threads recording at the same time never lock or retry.
+ */
+public class Histogram {
+    private static final int SUB_BUCKETS = 4; //Buckets per power of two
+    private static final int MAX_POWER = 36;  //2^36 microseconds is about 19 hours; anything longer is counted there
+    private static final int BUCKET_COUNT = SUB_BUCKETS * MAX_POWER;
+
+    private final LongAdder[] counts = new LongAdder[BUCKET_COUNT];
+    private final LongAdder sumMicros = new LongAdder();
+
+    public Histogram() {
+        for (int i = 0; i < BUCKET_COUNT; i++) counts[i] = new LongAdder();
+    }
+
+    //Records the time since startNanos (a value of System.nanoTime())
+    public void recordSince(long startNanos) {
+        recordNanos(System.nanoTime() - startNanos);
+    }
+
+    public void recordNanos(long nanos) {
+        long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+        counts[bucketOf(micros)].increment();
+        sumMicros.add(micros);
+    }
+
+    //Values below 4 have a bucket each; above that, the top three bits of a value pick its bucket
+    static int bucketOf(long micros) {
+        if (micros < SUB_BUCKETS) return (int) micros;
+        int power = 63 - Long.numberOfLeadingZeros(micros);
+        if (power >= MAX_POWER) return BUCKET_COUNT - 1;
+        return SUB_BUCKETS * (power - 1) + (int) ((micros >> (power - 2)) & (SUB_BUCKETS - 1));
+    }
+
+    //The smallest value (in microseconds) that is too large for a bucket
+    static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket + 1;
+        int power = bucket / SUB_BUCKETS + 1;
+        int sub = bucket % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + sub + 1) << (power - 2);
+    }
+
+    /**
+     * Copies the current counts. Recording may continue while this runs, so the copy might include part of a recording
+     * which happens at the same time, but each bucket is read only once, so the copy is consistent with itself.
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            copy[i] = counts[i].sum();
+            total += copy[i];
+        }
+        return new Snapshot(copy, total, sumMicros.sum());
+    }
+
+    public static class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sumMicros;
+
+        private Snapshot(long[] counts, long count, long sumMicros) {
+            this.counts = counts;
+            this.count = count;
+            this.sumMicros = sumMicros;
+        }
+
+        public long getCount() { return count; }
+
+        public double getSumSeconds() { return sumMicros / 1e6; }
+
+        //How many values were below the given number of microseconds, rounded down to a bucket boundary
+        public long countBelow(long micros) {
+            long below = 0;
+            for (int i = 0; i < counts.length && upperBoundOf(i) <= micros; i++) below += counts[i];
+            return below;
+        }
+
+        //The value (in seconds) which the given fraction of values were no larger than; 0 if nothing was recorded
+        public double quantileSeconds(double quantile) {
+            if (count == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(quantile * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) return upperBoundOf(i) / 1e6;
+            }
+            return upperBoundOf(counts.length - 1) / 1e6;
+        }
+    }
+
+    //Formats microseconds as seconds without an exponent, as Prometheus bucket bounds usually are
+    static String secondsOf(long micros) {
+        return BigDecimal.valueOf(micros, 6).stripTrailingZeros().toPlainString();
+    }
+}
@@ -0,0 +1,148 @@
+package com.revature.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * A bounded, thread-safe cache which evicts its least recently used entries when full, and entries older than
+ * its time-to-live when they are next looked at.
+ * The cache is split into segments which are locked separately, so that threads using different keys rarely wait on
+ * each other. Each segment holds an equal share of the capacity.
+ */
+public class LruCache<K, V> {
+    private final Segment<K, V>[] segments;
+    private final long ttlMillis;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    private final AtomicLong expirationCount = new AtomicLong();
+
+    @SuppressWarnings("unchecked")
+    public LruCache(int maxSize, long ttlMillis) {
+        if (maxSize < 1) throw new IllegalStateException("The maximum size of a cache must be at least 1");
+        //A power of two, so that a segment can be picked with a mask; small caches use a single segment
+        int segmentCount = Integer.highestOneBit(Math.max(1, Math.min(16, maxSize / 64)));
+        this.segments = (Segment<K, V>[]) new Segment<?, ?>[segmentCount];
+        int perSegment = (maxSize + segmentCount - 1) / segmentCount;
+        for (int i = 0; i < segmentCount; i++) segments[i] = new Segment<>(perSegment, this);
+        this.ttlMillis = ttlMillis;
+    }
+
+    private Segment<K, V> segmentFor(Object key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments[h & (segments.length - 1)];
+    }
+
+    //Gets the value cached for a key, or null if there is none (or it has expired)
+    public V get(K key) {
+        if (key == null) return null;
+        Segment<K, V> segment = segmentFor(key);
+        Entry<V> entry;
+        synchronized (segment) {
+            entry = segment.get(key);
+            if (entry != null && ttlMillis > 0 && System.currentTimeMillis() - entry.createdAt > ttlMillis) {
+                segment.remove(key);
+                expirationCount.incrementAndGet();
+                entry = null;
+            }
+        }
+        if (entry == null) {
+            missCount.incrementAndGet();
+            return null;
+        }
+        hitCount.incrementAndGet();
+        return entry.value;
+    }
+
+    public void put(K key, V value) {
+        if (key == null || value == null) return;
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            segment.put(key, new Entry<>(value, System.currentTimeMillis()));
+        }
+    }
+
+    public void remove(K key) {
+        if (key == null) return;
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            segment.remove(key);
+        }
+    }
+
+    //Removes every entry whose value matches the given condition
+    public void removeIf(Predicate<V> condition) {
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                Iterator<Entry<V>> it = segment.values().iterator();
+                while (it.hasNext()) {
+                    if (condition.test(it.next().value)) it.remove();
+                }
+            }
+        }
+    }
+
+    public void clear() {
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public long getHitCount() { return hitCount.get(); }
+    public long getMissCount() { return missCount.get(); }
+    public long getEvictionCount() { return evictionCount.get(); }
+    public long getExpirationCount() { return expirationCount.get(); }
+
+    @Override
+    public String toString() {
+        return "LruCache{size=" + size() + ", hits=" + getHitCount() + ", misses=" + getMissCount() +
+                ", evictions=" + getEvictionCount() + ", expirations=" + getExpirationCount() + "}";
+    }
+
+    private static class Entry<V> {
+        private final V value;
+        private final long createdAt;
+
+        Entry(V value, long createdAt) {
+            this.value = value;
+            this.createdAt = createdAt;
+        }
+    }
+
+    //A LinkedHashMap in access order drops its least recently used entry once it grows past its capacity
+    private static class Segment<K, V> extends LinkedHashMap<K, Entry<V>> {
+        private static final long serialVersionUID = 1L;
+        private final int capacity;
+        private final LruCache<K, V> owner;
+
+        Segment(int capacity, LruCache<K, V> owner) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+            this.owner = owner;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+            if (size() <= capacity) return false;
+            owner.evictionCount.incrementAndGet();
+            return true;
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package com.revature.utils;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Measurements of the server, written out in the Prometheus text format by the /metrics endpoint.
+ * Requests are measured by a filter on every endpoint (see httpFilter), and repository queries by timing them with
+ * timeQuery. Anything else can be reported by registering a function which reads its current value.
+ * Everything recorded while handling requests only adds to LongAdders, so recording never blocks.
+ */
+public final class Metrics {
+    //The quantiles reported for each histogram, besides its buckets
+    private static final double[] QUANTILES = {0.5, 0.99, 0.999};
+    //The histogram buckets that are written out, as powers of two in microseconds (64 microseconds to 33.5 seconds)
+    private static final int FIRST_BOUND_POWER = 6, LAST_BOUND_POWER = 25;
+
+    private static final Map<String, EndpointStats> ENDPOINTS = new ConcurrentHashMap<>();
+    private static final Map<String, Histogram> QUERIES = new ConcurrentHashMap<>();
+    private static final List<Registered> REGISTERED = new CopyOnWriteArrayList<>();
+    //The request being handled by the current thread, while its handler runs
+    private static final ThreadLocal<Request> CURRENT_REQUEST = new ThreadLocal<>();
+
+    private Metrics() {}
+
+    /**
+     * Measures every request to the endpoint it is added to: how many there are by status code, how long they take,
+     * how many are in progress, and how many bytes they send and receive.
+     */
+    public static Filter httpFilter() {
+        return new Filter() {
+            @Override
+            public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+                EndpointStats stats = ENDPOINTS.computeIfAbsent(exchange.getHttpContext().getPath(), path -> new EndpointStats());
+                CountingInputStream in = new CountingInputStream(exchange.getRequestBody());
+                CountingOutputStream out = new CountingOutputStream(exchange.getResponseBody());
+                exchange.setStreams(in, out);
+
+                stats.inFlight.increment();
+                Request request = new Request(exchange, stats, in, out);
+                boolean returned = false;
+                CURRENT_REQUEST.set(request);
+                try {
+                    chain.doFilter(exchange);
+                    returned = true;
+                } finally {
+                    CURRENT_REQUEST.remove();
+                    //A handler which answers later records the request itself, once it has been answered (see startAsync)
+                    if (!returned || !request.async) request.run();
+                }
+            }
+
+            @Override
+            public String description() {
+                return "Records the number, latency and size of requests";
+            }
+        };
+    }
+
+    /**
+     * Called by a handler which returns before its response has been sent, so that the request is measured until the
+     * response is actually sent rather than until the handler returns.
+     * @return What the handler has to run once the response has been sent (or has failed)
+     */
+    public static Runnable startAsync() {
+        Request request = CURRENT_REQUEST.get();
+        if (request == null) return () -> {};
+        request.async = true;
+        return request;
+    }
+
+    /**
+     * Starts timing a repository query; stopping the returned timer records how long it took. It is meant to be started
+     * just before the query's connection is opened, and stopped in the finally block of the try which uses it.
+     * @param query A fixed name for the query, such as "TicketRepository.getTicketByID"
+     */
+    public static Timer timeQuery(String query) {
+        return new Timer(QUERIES.computeIfAbsent(query, name -> new Histogram()));
+    }
+
+    /**
+     * Reports some value kept elsewhere, read each time the metrics are written out.
+     * @param name   The metric name; should start with pzero_ and, for counters, end with _total
+     * @param help   What the value means
+     * @param type   "counter" for values which only ever go up, otherwise "gauge"
+     */
+    public static void register(String name, String help, String type, LongSupplier value) {
+        REGISTERED.add(new Registered(name, help, type, value));
+    }
+
+    //Writes out everything in the Prometheus text exposition format (version 0.0.4)
+    public static String render() {
+        StringBuilder out = new StringBuilder(8192);
+        //Sorted, so that the same series are always written in the same order
+        Map<String, EndpointStats> endpoints = new TreeMap<>(ENDPOINTS);
+
+        header(out, "pzero_http_requests_total", "Requests handled, by endpoint and status code (-1 if none was sent).", "counter");
+        for (Map.Entry<String, EndpointStats> endpoint : endpoints.entrySet()) {
+            for (Map.Entry<Integer, LongAdder> code : new TreeMap<>(endpoint.getValue().responses).entrySet()) {
+                out.append("pzero_http_requests_total{endpoint=\"").append(escape(endpoint.getKey())).append("\",code=\"")
+                        .append(code.getKey()).append("\"} ").append(code.getValue().sum()).append('\n');
+            }
+        }
+        header(out, "pzero_http_requests_in_flight", "Requests currently being handled, by endpoint.", "gauge");
+        for (Map.Entry<String, EndpointStats> endpoint : endpoints.entrySet()) {
+            sample(out, "pzero_http_requests_in_flight", "endpoint", endpoint.getKey(), endpoint.getValue().inFlight.sum());
+        }
+        header(out, "pzero_http_request_bytes_total", "Bytes of request bodies received, by endpoint.", "counter");
+        for (Map.Entry<String, EndpointStats> endpoint : endpoints.entrySet()) {
+            sample(out, "pzero_http_request_bytes_total", "endpoint", endpoint.getKey(), endpoint.getValue().requestBytes.sum());
+        }
+        header(out, "pzero_http_response_bytes_total", "Bytes of response bodies sent (after compression), by endpoint.", "counter");
+        for (Map.Entry<String, EndpointStats> endpoint : endpoints.entrySet()) {
+            sample(out, "pzero_http_response_bytes_total", "endpoint", endpoint.getKey(), endpoint.getValue().responseBytes.sum());
+        }
+
+        Map<String, Histogram.Snapshot> latencies = new TreeMap<>();
+        for (Map.Entry<String, EndpointStats> endpoint : endpoints.entrySet()) {
+            latencies.put(endpoint.getKey(), endpoint.getValue().latency.snapshot());
+        }
+        histograms(out, "pzero_http_request_duration_seconds", "How long requests took to handle, by endpoint.",
+                "endpoint", latencies);
+
+        Map<String, Histogram.Snapshot> queries = new TreeMap<>();
+        for (Map.Entry<String, Histogram> query : QUERIES.entrySet()) queries.put(query.getKey(), query.getValue().snapshot());
+        histograms(out, "pzero_repository_query_duration_seconds",
+                "How long repository queries took, including waiting for a connection, by query.", "query", queries);
+
+        for (Registered registered : REGISTERED) {
+            header(out, registered.name, registered.help, registered.type);
+            out.append(registered.name).append(' ').append(registered.value.getAsLong()).append('\n');
+        }
+        return out.toString();
+    }
+
+    private static void histograms(StringBuilder out, String name, String help, String label,
+                                   Map<String, Histogram.Snapshot> snapshots) {
+        header(out, name, help, "histogram");
+        for (Map.Entry<String, Histogram.Snapshot> entry : snapshots.entrySet()) {
+            String labelValue = escape(entry.getKey());
+            Histogram.Snapshot snapshot = entry.getValue();
+            for (int power = FIRST_BOUND_POWER; power <= LAST_BOUND_POWER; power++) {
+                long bound = 1L << power;
+                out.append(name).append("_bucket{").append(label).append("=\"").append(labelValue).append("\",le=\"")
+                        .append(Histogram.secondsOf(bound)).append("\"} ").append(snapshot.countBelow(bound)).append('\n');
+            }
+            out.append(name).append("_bucket{").append(label).append("=\"").append(labelValue).append("\",le=\"+Inf\"} ")
+                    .append(snapshot.getCount()).append('\n');
+            out.append(name).append("_sum{").append(label).append("=\"").append(labelValue).append("\"} ")
+                    .append(snapshot.getSumSeconds()).append('\n');
+            out.append(name).append("_count{").append(label).append("=\"").append(labelValue).append("\"} ")
+                    .append(snapshot.getCount()).append('\n');
+        }
+
+        //Prometheus can estimate quantiles from the buckets, but these are finer than the buckets that are written out
+        String quantileName = name.replace("_seconds", "_quantile_seconds");
+        header(out, quantileName, help + " Quantiles since the server started.", "gauge");
+        for (Map.Entry<String, Histogram.Snapshot> entry : snapshots.entrySet()) {
+            for (double quantile : QUANTILES) {
+                out.append(quantileName).append('{').append(label).append("=\"").append(escape(entry.getKey()))
+                        .append("\",quantile=\"").append(quantile).append("\"} ")
+                        .append(entry.getValue().quantileSeconds(quantile)).append('\n');
+            }
+        }
+    }
+
+    private static void header(StringBuilder out, String name, String help, String type) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String label, String labelValue, long value) {
+        out.append(name).append('{').append(label).append("=\"").append(escape(labelValue)).append("\"} ")
+                .append(value).append('\n');
+    }
+
+    private static String escape(String labelValue) {
+        return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    //Times one query; see timeQuery
+    public static class Timer {
+        private final Histogram histogram;
+        private final long start = System.nanoTime();
+
+        private Timer(Histogram histogram) {
+            this.histogram = histogram;
+        }
+
+        public void stop() {
+            histogram.recordSince(start);
+        }
+    }
+
+    //Records one request once it is over; this only happens once, however many times it is run
+    private static class Request implements Runnable {
+        private final HttpExchange exchange;
+        private final EndpointStats stats;
+        private final CountingInputStream in;
+        private final CountingOutputStream out;
+        private final long start = System.nanoTime();
+        private final AtomicBoolean recorded = new AtomicBoolean();
+        private volatile boolean async;
+
+        Request(HttpExchange exchange, EndpointStats stats, CountingInputStream in, CountingOutputStream out) {
+            this.exchange = exchange;
+            this.stats = stats;
+            this.in = in;
+            this.out = out;
+        }
+
+        @Override
+        public void run() {
+            if (!recorded.compareAndSet(false, true)) return;
+            stats.latency.recordSince(start);
+            stats.inFlight.decrement();
+            //-1 means that no response was sent, because the handler failed
+            stats.responses.computeIfAbsent(exchange.getResponseCode(), code -> new LongAdder()).increment();
+            stats.requestBytes.add(in.count);
+            stats.responseBytes.add(out.count);
+        }
+    }
+
+    private static class EndpointStats {
+        private final Histogram latency = new Histogram();
+        private final LongAdder inFlight = new LongAdder();
+        private final Map<Integer, LongAdder> responses = new ConcurrentHashMap<>();
+        private final LongAdder requestBytes = new LongAdder();
+        private final LongAdder responseBytes = new LongAdder();
+    }
+
+    private static class Registered {
+        private final String name;
+        private final String help;
+        private final String type;
+        private final LongSupplier value;
+
+        Registered(String name, String help, String type, LongSupplier value) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+            this.value = value;
+        }
+    }
+
+    //Streams which count the bytes that pass through them. Each is only used by the thread handling its request.
+    private static class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b != -1) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.revature.utils;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits how many requests each client may make (PZERO_RATE_LIMIT), so that one misbehaving client can't use up the
+ * server and its database for everybody else. Every client has a token bucket per budget: endpoints which only touch
+ * memory or a single row share the standard budget, while the listing endpoints, which can read whole tables, have a
+ * smaller budget of their own.
+ * Clients are limited at two points, both before any work is done for the request:
+ *  - by remote address, in the filter returned by filter(), before the request body has even been read
+ *  - by caller (the employee they authenticate as), by the services once their credentials have been verified (see
+ *    admitCaller); a request whose credentials can't be verified is only charged to its address, so that nobody can
+ *    use up someone else's budget by sending their email address or a made-up token
+ * A request over its budget is answered with a 429 and a Retry-After header saying when the next one will be allowed.
+ * Each bucket is a single AtomicLong (see Bucket), so checking a budget never locks; the buckets are spread over a
+ * ConcurrentHashMap, whose bins are locked separately, and are only locked when a client is seen for the first time.
+ */
+public class RateLimiter {
+    public static final String LIMITED_MESSAGE = "You are sending requests too quickly. Please wait before trying again.";
+    private static final byte[] LIMITED_MESSAGE_BYTES = LIMITED_MESSAGE.getBytes(StandardCharsets.UTF_8);
+    //The budget of the request being handled by the current thread, while its handler runs
+    private static final ThreadLocal<Budget> CURRENT_BUDGET = new ThreadLocal<>();
+
+    private final Budget standard;
+    private final Budget listing;
+
+    private RateLimiter(Budget standard, Budget listing) {
+        this.standard = standard;
+        this.listing = listing;
+    }
+
+    //Creates the limiter described by the configuration, or returns null if clients aren't limited
+    public static RateLimiter fromConfig() {
+        if (!ConfigUtil.getBoolean("PZERO_RATE_LIMIT", false)) return null;
+        int maxKeys = ConfigUtil.getInt("PZERO_RATE_LIMIT_MAX_KEYS", 100000);
+        return new RateLimiter(
+                new Budget("standard", ConfigUtil.getInt("PZERO_RATE_LIMIT_PER_MINUTE", 600),
+                        ConfigUtil.getInt("PZERO_RATE_LIMIT_BURST", 60), maxKeys),
+                new Budget("listing", ConfigUtil.getInt("PZERO_RATE_LIMIT_LISTING_PER_MINUTE", 60),
+                        ConfigUtil.getInt("PZERO_RATE_LIMIT_LISTING_BURST", 10), maxKeys));
+    }
+
+    public Budget getStandardBudget() { return standard; }
+    public Budget getListingBudget() { return listing; }
+
+    /**
+     * A filter which limits each remote address to the given budget, and makes that budget the one that the caller
+     * is held to (see currentBudget) while the request is handled.
+     */
+    public static Filter filter(Budget budget) {
+        return new Filter() {
+            @Override
+            public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+                InetSocketAddress remote = exchange.getRemoteAddress();
+                String address = remote.getAddress() == null ? remote.getHostString() : remote.getAddress().getHostAddress();
+                long waitNanos = budget.acquire("address:" + address);
+                if (waitNanos > 0) {
+                    sendLimited(exchange, waitNanos);
+                    return;
+                }
+                CURRENT_BUDGET.set(budget);
+                try {
+                    chain.doFilter(exchange);
+                } finally {
+                    CURRENT_BUDGET.remove();
+                }
+            }
+
+            @Override
+            public String description() {
+                return "Answers clients which have used up their " + budget.name + " budget with 429 Too Many Requests";
+            }
+        };
+    }
+
+    //The budget of the endpoint being handled by the current thread, or null if clients aren't limited. This has to be
+    // read on the thread the filter ran on, and passed along to wherever the caller is admitted.
+    public static Budget currentBudget() {
+        return CURRENT_BUDGET.get();
+    }
+
+    /**
+     * Charges one request to a caller whose credentials have been verified.
+     * @param budget The budget of the endpoint, from currentBudget
+     * @param caller Identifies the caller, such as "employee:<their ID>"
+     * @return 0 if the request may go ahead, or how many nanoseconds the caller has to wait otherwise; always 0 if
+     *  clients aren't limited
+     */
+    public static long admitCaller(Budget budget, String caller) {
+        return budget == null ? 0 : budget.acquire(caller);
+    }
+
+    private static void sendLimited(HttpExchange exchange, long waitNanos) throws IOException {
+        exchange.getResponseHeaders().set("Retry-After", Long.toString(retryAfterSeconds(waitNanos)));
+        exchange.sendResponseHeaders(429, LIMITED_MESSAGE_BYTES.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(LIMITED_MESSAGE_BYTES);
+        }
+    }
+
+    //Retry-After is given in whole seconds, rounded up so that a client which waits that long is sure to be let in
+    public static long retryAfterSeconds(long waitNanos) {
+        return Math.max(1, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+    }
+
+    /**
+     * One rate that clients are held to: a steady number of requests per minute, which may be taken in bursts of up to
+     * a given number of requests at once. Every key (an address or a caller) has its own bucket.
+     */
+    public static class Budget {
+        private final String name;
+        private final long intervalNanos;  //The time it takes to earn back one request
+        private final long toleranceNanos; //How far ahead of the steady rate a key may get (the burst, at least one request)
+        private final int maxKeys;
+        private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+        private final AtomicBoolean sweeping = new AtomicBoolean();
+        private final LongAdder admitted = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+
+        Budget(String name, int perMinute, int burst, int maxKeys) {
+            this.name = name;
+            this.intervalNanos = TimeUnit.MINUTES.toNanos(1) / Math.max(1, perMinute);
+            this.toleranceNanos = intervalNanos * Math.max(1, burst);
+            this.maxKeys = maxKeys;
+        }
+
+        //Charges one request to a key, returning 0 if it is allowed or how long the key has to wait otherwise
+        long acquire(String key) {
+            long now = System.nanoTime();
+            Bucket bucket = buckets.get(key);
+            if (bucket == null) {
+                if (buckets.size() >= maxKeys) sweep(now);
+                bucket = buckets.computeIfAbsent(key, k -> new Bucket(now));
+            }
+            long waitNanos = bucket.acquire(now, intervalNanos, toleranceNanos);
+            if (waitNanos > 0) {
+                rejected.increment();
+            } else {
+                admitted.increment();
+            }
+            return waitNanos;
+        }
+
+        //Makes room for new keys once maxKeys are tracked, by getting back down to nine tenths of maxKeys. Keys whose
+        // buckets are full again go first, since a new bucket would behave the same; if that isn't enough, the keys
+        // closest to full go next, which are the ones that have asked for the least lately. Every sweep makes room for
+        // at least a tenth of maxKeys new keys, so its cost is spread over them, and only one thread sweeps at a time.
+        private void sweep(long now) {
+            if (!sweeping.compareAndSet(false, true)) return;
+            try {
+                buckets.values().removeIf(bucket -> bucket.isFull(now));
+                int excess = buckets.size() - (maxKeys - Math.max(1, maxKeys / 10));
+                if (excess <= 0) return;
+
+                long[] owed = new long[buckets.size()];
+                int n = 0;
+                for (Iterator<Bucket> it = buckets.values().iterator(); it.hasNext() && n < owed.length; ) {
+                    owed[n++] = it.next().owed(now);
+                }
+                if (n == 0) return;
+                Arrays.sort(owed, 0, n);
+                long cutoff = owed[Math.min(excess, n) - 1];
+                buckets.values().removeIf(bucket -> bucket.owed(now) <= cutoff);
+            } finally {
+                sweeping.set(false);
+            }
+        }
+
+        public String getName() { return name; }
+        public long getAdmittedCount() { return admitted.sum(); }
+        public long getRejectedCount() { return rejected.sum(); }
+        public int getKeyCount() { return buckets.size(); }
+    }
+
+    //Fails a request whose caller has used up their budget (see admitCaller); the Controller answers it with a 429
+    public static class LimitExceededException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        private final long waitNanos;
+
+        public LimitExceededException(long waitNanos) {
+            super("Rate limit exceeded", null, false, false);
+            this.waitNanos = waitNanos;
+        }
+
+        public long getWaitNanos() { return waitNanos; }
+    }
+
+    /**
+     * A token bucket kept as a single timestamp (the generic cell rate algorithm): the time at which the key will have
+     * earned back every request it has made. Each request moves that time one interval further on, and is allowed
+     * as long as it doesn't end up more than the burst ahead of now. Updating it is a single compare-and-set.
+     */
+    private static class Bucket {
+        private final AtomicLong earnedBackAt;
+
+        Bucket(long now) {
+            earnedBackAt = new AtomicLong(now);
+        }
+
+        long acquire(long now, long intervalNanos, long toleranceNanos) {
+            while (true) {
+                long current = earnedBackAt.get();
+                long next = Math.max(current, now) + intervalNanos;
+                long ahead = next - now - toleranceNanos;
+                if (ahead > 0) return ahead;
+                if (earnedBackAt.compareAndSet(current, next)) return 0;
+            }
+        }
+
+        boolean isFull(long now) {
+            return owed(now) <= 0;
+        }
+
+        //How long until the key has earned back every request it has made
+        long owed(long now) {
+            return earnedBackAt.get() - now;
+        }
+    }
+}
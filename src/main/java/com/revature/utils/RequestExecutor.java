@@ -0,0 +1,223 @@
+package com.revature.utils;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The executor that HttpServer runs every exchange on.
+ * Two modes are supported (see PZERO_EXECUTOR):
+ *  - "pool": a bounded pool of platform threads in front of a bounded queue of accepted requests
+ *  - "virtual": one virtual thread per request (Java 21+)
+ * In either mode, PZERO_HTTP_MAX_IN_FLIGHT caps the number of requests that have been accepted and not yet answered.
+ * A request holds its place until its response has been sent, even when its handler returns before then (see
+ * startAsync), so requests waiting on the database count towards it as well as those waiting for a thread.
+ * When the executor is saturated, the exchange is not queued; instead it is run immediately on the accepting thread
+ * with a flag set, and the filter returned by overloadFilter() answers it with a 503 before any handler runs.
+ */
+public class RequestExecutor implements Executor {
+    //The executor that rejected the exchange being answered on the accepting thread, while it is answered
+    private static final ThreadLocal<RequestExecutor> REJECTED = new ThreadLocal<>();
+    //The place of the exchange being handled by the current thread, while its handler runs
+    private static final ThreadLocal<Permit> CURRENT_PERMIT = new ThreadLocal<>();
+    private static final byte[] OVERLOADED_MESSAGE =
+            "The server is too busy to handle this request right now. Please try again.".getBytes(StandardCharsets.UTF_8);
+
+    private final ExecutorService delegate;
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+    private final String mode;
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    private RequestExecutor(ExecutorService delegate, int maxInFlight, String mode) {
+        this.delegate = delegate;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.maxInFlight = maxInFlight;
+        this.mode = mode;
+    }
+
+    /**
+     * Creates the executor described by the configuration, or returns null if the server should keep the
+     * HttpServer default of running every exchange on its dispatcher thread (PZERO_EXECUTOR=dispatcher).
+     */
+    @SuppressWarnings("fallthrough")
+    public static RequestExecutor fromConfig() {
+        String mode = ConfigUtil.getString("PZERO_EXECUTOR", "pool").toLowerCase();
+        int threads = ConfigUtil.getInt("PZERO_HTTP_THREADS", Math.max(4, Runtime.getRuntime().availableProcessors() * 2));
+        int queueSize = ConfigUtil.getInt("PZERO_HTTP_QUEUE", 256);
+        int maxInFlight = Math.max(1, ConfigUtil.getInt("PZERO_HTTP_MAX_IN_FLIGHT", 10000));
+        switch (mode) {
+            case "dispatcher":
+                return null;
+            case "virtual":
+                ExecutorService virtual = newVirtualThreadExecutor();
+                if (virtual != null) return new RequestExecutor(virtual, maxInFlight, "virtual");
+                System.err.println("Virtual threads are not available on this JVM; falling back to a thread pool.");
+                //Falls through to the platform thread pool
+            case "pool":
+                return new RequestExecutor(newPlatformThreadPool(threads, queueSize), maxInFlight, "pool");
+            default:
+                throw new IllegalStateException("Unknown PZERO_EXECUTOR mode: " + mode + " (try pool, virtual or dispatcher)");
+        }
+    }
+
+    private static ExecutorService newPlatformThreadPool(int threads, int queueSize) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueSize)),
+                r -> {
+                    Thread t = new Thread(r, "http-worker-" + threadNumber.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    //The project still compiles for Java 8, so the Java 21 factory method is looked up reflectively
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void execute(Runnable exchange) {
+        if (!inFlight.tryAcquire()) {
+            reject(exchange);
+            return;
+        }
+        Permit permit = new Permit(inFlight);
+        try {
+            delegate.execute(() -> {
+                CURRENT_PERMIT.set(permit);
+                try {
+                    exchange.run();
+                } finally {
+                    CURRENT_PERMIT.remove();
+                    //A handler which answers later gives up its place itself, once it has been answered
+                    if (!permit.async) permit.run();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            permit.run();
+            reject(exchange);
+        }
+    }
+
+    /**
+     * Called by a handler which returns before its response has been sent, so that the request keeps its place among
+     * those in flight until the response is actually sent, rather than until the handler returns.
+     * @return What the handler has to run once the response has been sent (or has failed)
+     */
+    public static Runnable startAsync() {
+        Permit permit = CURRENT_PERMIT.get();
+        if (permit == null) return () -> {};
+        permit.async = true;
+        return permit;
+    }
+
+    //Runs the exchange on the calling thread; overloadFilter() sees the flag and answers with a 503
+    private void reject(Runnable exchange) {
+        REJECTED.set(this);
+        try {
+            exchange.run();
+        } finally {
+            REJECTED.remove();
+        }
+    }
+
+    /**
+     * An executor for finishing requests whose handlers have already returned (see DatabaseExecutor). It runs on the
+     * same threads as new requests, but is never turned away: if they are all busy, the work runs on the calling thread.
+     */
+    public Executor callbackExecutor() {
+        return task -> {
+            try {
+                delegate.execute(task);
+            } catch (RejectedExecutionException e) {
+                task.run();
+            }
+        };
+    }
+
+    public String getMode() { return mode; }
+    public int getMaxInFlight() { return maxInFlight; }
+    public int getInFlightCount() { return maxInFlight - inFlight.availablePermits(); }
+    public long getRejectedCount() { return rejectedCount.get(); }
+
+    //Requests that have been accepted but are not yet running on a worker (always 0 for virtual threads)
+    public int getQueuedCount() {
+        return delegate instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor) delegate).getQueue().size() : 0;
+    }
+
+    //Requests that are currently running on a worker
+    public int getActiveCount() {
+        return delegate instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor) delegate).getActiveCount() : 0;
+    }
+
+    /**
+     * A filter which must be added to every context served by this executor. It answers exchanges that the
+     * executor could not accept with a 503 so that the client can back off, without reading the request body.
+     */
+    public static Filter overloadFilter() {
+        return new Filter() {
+            @Override
+            public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+                RequestExecutor executor = REJECTED.get();
+                if (executor == null) {
+                    chain.doFilter(exchange);
+                    return;
+                }
+                //Counted here rather than when the exchange is rejected, since HttpServer also runs an exchange to
+                // notice that an idle connection has been closed, and no request is turned away then
+                executor.rejectedCount.incrementAndGet();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                exchange.sendResponseHeaders(503, OVERLOADED_MESSAGE.length);
+                try (OutputStream os = exchange.getResponseBody()) {
+                    os.write(OVERLOADED_MESSAGE);
+                }
+            }
+
+            @Override
+            public String description() {
+                return "Answers requests rejected by the RequestExecutor with 503 Service Unavailable";
+            }
+        };
+    }
+
+    //One accepted request's place among those in flight; it is given up once, however many times it is run
+    private static class Permit implements Runnable {
+        private final Semaphore inFlight;
+        private final AtomicBoolean released = new AtomicBoolean();
+        //Set by startAsync on the handler's thread, and read on the same thread once the handler returns
+        private boolean async;
+
+        private Permit(Semaphore inFlight) {
+            this.inFlight = inFlight;
+        }
+
+        @Override
+        public void run() {
+            if (released.compareAndSet(false, true)) inFlight.release();
+        }
+    }
+}
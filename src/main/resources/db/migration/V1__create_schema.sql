@@ -0,0 +1,50 @@
+-- The tables the repositories use, with the lookup rows they expect (see LookupTables). Every statement is guarded,
+-- so this also adopts a database whose tables were made by hand before migrations existed.
+
+CREATE TABLE IF NOT EXISTS roles (
+    roleid   integer PRIMARY KEY,
+    rolename varchar(32) NOT NULL UNIQUE
+);
+
+CREATE TABLE IF NOT EXISTS statuses (
+    ticsid   integer PRIMARY KEY,
+    ticsname varchar(32) NOT NULL UNIQUE
+);
+
+CREATE TABLE IF NOT EXISTS tickettypes (
+    tictid   integer PRIMARY KEY,
+    tictname varchar(32) NOT NULL UNIQUE
+);
+
+-- Lookup rows are only added by name, so that tables which already have them under other IDs are left alone
+INSERT INTO roles (roleid, rolename)
+SELECT v.id, v.name FROM (VALUES (1, 'STANDARD'), (2, 'MANAGER')) AS v (id, name)
+WHERE NOT EXISTS (SELECT 1 FROM roles WHERE rolename = v.name)
+ON CONFLICT DO NOTHING;
+
+INSERT INTO statuses (ticsid, ticsname)
+SELECT v.id, v.name FROM (VALUES (1, 'PENDING'), (2, 'APPROVED'), (3, 'DENIED')) AS v (id, name)
+WHERE NOT EXISTS (SELECT 1 FROM statuses WHERE ticsname = v.name)
+ON CONFLICT DO NOTHING;
+
+INSERT INTO tickettypes (tictid, tictname)
+SELECT v.id, v.name FROM (VALUES (1, 'TRAVEL'), (2, 'LODGING'), (3, 'FOOD'), (4, 'OTHER')) AS v (id, name)
+WHERE NOT EXISTS (SELECT 1 FROM tickettypes WHERE tictname = v.name)
+ON CONFLICT DO NOTHING;
+
+-- New employees are STANDARD (role 1) and new tickets PENDING (status 1) by default; the repositories rely on this
+CREATE TABLE IF NOT EXISTS employees (
+    emplid       serial PRIMARY KEY,
+    emplemail    varchar(255) NOT NULL,
+    emplpassword integer NOT NULL,
+    emplrole     integer NOT NULL DEFAULT 1 REFERENCES roles (roleid)
+);
+
+CREATE TABLE IF NOT EXISTS tickets (
+    tickid          serial PRIMARY KEY,
+    tickemplid      integer NOT NULL REFERENCES employees (emplid),
+    tickstatus      integer NOT NULL DEFAULT 1 REFERENCES statuses (ticsid),
+    ticktype        integer NOT NULL REFERENCES tickettypes (tictid),
+    tickamount      numeric(12, 2) NOT NULL,
+    tickdescription text NOT NULL
+);
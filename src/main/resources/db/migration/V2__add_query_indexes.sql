@@ -0,0 +1,16 @@
+-- no-transaction
+-- Indexes for the queries the repositories run most often.
+-- They are built CONCURRENTLY, which can't happen inside a transaction, so that building them doesn't hold up writes
+-- to the tables for as long as it takes on a large table. If building one fails, Postgres leaves an invalid index
+-- behind, which IF NOT EXISTS would then skip, so it has to be dropped (DROP INDEX CONCURRENTLY) before restarting.
+
+-- Logging in and registering look employees up by email address. Being unique also lets the INSERT in
+-- createNewEmployee settle two registrations of the same address racing each other (ON CONFLICT DO NOTHING).
+-- This fails if the table already holds duplicate addresses, which have to be cleaned up by hand first.
+CREATE UNIQUE INDEX CONCURRENTLY IF NOT EXISTS employees_emplemail_key ON employees (emplemail);
+
+-- The filtered ticket query (getTicketsFiltered) and bulk finalizing, filtered by employee and optionally by status and type
+CREATE INDEX CONCURRENTLY IF NOT EXISTS tickets_emplid_status_type_idx ON tickets (tickemplid, tickstatus, ticktype);
+
+-- The same queries without an employee, such as a manager listing every pending ticket
+CREATE INDEX CONCURRENTLY IF NOT EXISTS tickets_status_type_idx ON tickets (tickstatus, ticktype);
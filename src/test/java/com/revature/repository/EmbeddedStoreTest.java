@@ -0,0 +1,225 @@
+package com.revature.repository;
+
+import com.revature.model.Employee;
+import com.revature.model.Ticket;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EmbeddedStoreTest {
+    //Large enough that no test rotates the log unless it means to
+    private static final long NO_ROTATION = 64L * 1024 * 1024;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void createdAndFinalizedTicketsSurviveReopening() throws IOException {
+        EmbeddedStore store = open(NO_ROTATION);
+        assertEquals(200, store.getEmployeeRepository().createNewEmployee("manager@example.com", "secret").statusCode());
+        assertEquals(200, store.getEmployeeRepository().alterEmployeeRole("manager@example.com", Employee.Roles.MANAGER).statusCode());
+        int employeeID = store.getEmployeeRepository().getEmployeeByEmail("manager@example.com").getId();
+
+        TicketRepository tickets = store.getTicketRepository();
+        List<Integer> ids = tickets.createNewTickets(Arrays.asList(
+                ticket(employeeID, "12.50", "lunch"),
+                ticket(employeeID, "300.00", "hotel"),
+                ticket(employeeID, "40.00", "taxi")));
+        assertEquals(Arrays.asList(1, 2, 3), ids);
+        TicketRepository.FinalizeResult result = tickets.finalizeTicketsByID(Arrays.asList(1, 3, 99), Ticket.StatusValues.APPROVED);
+        assertEquals(Arrays.asList(1, 3), result.getFinalized());
+        assertEquals(Collections.singletonList(99), result.getMissing());
+        assertEquals(200, tickets.finalizeTicketByID(2, Ticket.StatusValues.DENIED).statusCode());
+
+        EmbeddedStore reopened = open(NO_ROTATION);
+        Employee manager = reopened.employeeByEmail("manager@example.com");
+        assertEquals(Employee.Roles.MANAGER, manager.getRole());
+        assertEquals("secret".hashCode(), manager.getPassword());
+        assertEquals(Ticket.StatusValues.APPROVED, reopened.tickets().get(1).getStatus());
+        assertEquals(Ticket.StatusValues.DENIED, reopened.tickets().get(2).getStatus());
+        assertEquals(Ticket.StatusValues.APPROVED, reopened.tickets().get(3).getStatus());
+        assertEquals(new BigDecimal("300.00"), reopened.tickets().get(2).getAmount());
+        assertEquals("hotel", reopened.tickets().get(2).getDescription());
+
+        //IDs carry on from where they were, rather than being handed out again
+        assertEquals(Collections.singletonList(4), reopened.getTicketRepository().createNewTickets(
+                Collections.singletonList(ticket(employeeID, "1.00", "coffee"))));
+        assertNull(reopened.register("manager@example.com", 0));
+        assertEquals(2, reopened.register("someone@example.com", 0).getId());
+    }
+
+    @Test
+    void dropsATornRecordAtTheEndOfTheLog() throws IOException {
+        EmbeddedStore store = open(NO_ROTATION);
+        Employee employee = store.register("employee@example.com", 1);
+        store.createTickets(Collections.singletonList(ticket(employee.getId(), "5.00", "first")));
+        store.createTickets(Collections.singletonList(ticket(employee.getId(), "6.00", "second")));
+
+        //A crash part of the way through appending a record leaves its header and some of its payload behind
+        Files.write(lastSegment(), new byte[]{0, 0, 0, 40, 1, 2, 3, 4, 5, 6}, StandardOpenOption.APPEND);
+
+        EmbeddedStore reopened = open(NO_ROTATION);
+        assertEquals(2, reopened.tickets().size());
+        assertEquals("second", reopened.tickets().get(2).getDescription());
+
+        //What is written next has to be readable after the next restart, too
+        reopened.createTickets(Collections.singletonList(ticket(employee.getId(), "7.00", "third")));
+        EmbeddedStore again = open(NO_ROTATION);
+        assertEquals(3, again.tickets().size());
+        assertEquals("third", again.tickets().get(3).getDescription());
+    }
+
+    @Test
+    void dropsARecordWhoseChecksumDoesNotMatchAtTheEndOfTheLog() throws IOException {
+        EmbeddedStore store = open(NO_ROTATION);
+        Employee employee = store.register("employee@example.com", 1);
+        store.createTickets(Collections.singletonList(ticket(employee.getId(), "5.00", "kept")));
+        store.createTickets(Collections.singletonList(ticket(employee.getId(), "6.00", "corrupted")));
+
+        Path segment = lastSegment();
+        byte[] contents = Files.readAllBytes(segment);
+        contents[contents.length - 1] ^= 1;
+        Files.write(segment, contents);
+
+        EmbeddedStore reopened = open(NO_ROTATION);
+        assertEquals(1, reopened.tickets().size());
+        assertEquals("kept", reopened.tickets().get(1).getDescription());
+        assertNotNull(reopened.employeeByEmail("employee@example.com"));
+        //The ID of the lost ticket is handed out again, since nothing ever saw it acknowledged
+        assertEquals(2, reopened.createTickets(Collections.singletonList(ticket(employee.getId(), "8.00", "next"))).get(0).getId());
+    }
+
+    @Test
+    void refusesToOpenWhenASegmentBeforeTheLastIsCorrupt() throws IOException {
+        EmbeddedStore store = open(NO_ROTATION);
+        store.register("employee@example.com", 1);
+        store.register("other@example.com", 2);
+
+        //Damage the only segment, then give it a later one, so that the damage is no longer at the end of the log
+        Path segment = lastSegment();
+        byte[] contents = Files.readAllBytes(segment);
+        contents[contents.length - 1] ^= 1;
+        Files.write(segment, contents);
+        long number = WriteAheadLog.segments(directory).get(0);
+        new WriteAheadLog(directory, number + 1, false).close();
+
+        assertThrows(IOException.class, () -> open(NO_ROTATION));
+    }
+
+    @Test
+    void recoversFromACrashBetweenWritingASnapshotAndDeletingTheSegmentsItReplaces() throws IOException {
+        EmbeddedStore store = open(NO_ROTATION);
+        Employee employee = store.register("employee@example.com", 1);
+        store.changeRole("employee@example.com", Employee.Roles.MANAGER);
+        store.createTickets(Arrays.asList(ticket(employee.getId(), "5.00", "first"), ticket(employee.getId(), "6.00", "second")));
+        List<Long> oldSegments = WriteAheadLog.segments(directory);
+        Path saved = Files.createDirectory(directory.resolve("saved"));
+        for (long segment : oldSegments) {
+            Files.copy(WriteAheadLog.segmentPath(directory, segment), WriteAheadLog.segmentPath(saved, segment));
+        }
+
+        //Reopening replays the log, snapshots it and deletes the old segments; later changes go to the new segment
+        EmbeddedStore reopened = open(NO_ROTATION);
+        assertEquals(1, reopened.getSnapshotCount());
+        for (long segment : oldSegments) assertFalse(Files.exists(WriteAheadLog.segmentPath(directory, segment)));
+        reopened.changeRole("employee@example.com", Employee.Roles.STANDARD);
+        reopened.finalizeTickets(Collections.singletonList(1), Ticket.StatusValues.DENIED, new TicketRepository.FinalizeResult());
+
+        //Put back the segments as if the crash came before they were deleted, along with a half-written snapshot
+        for (long segment : oldSegments) {
+            Files.copy(WriteAheadLog.segmentPath(saved, segment), WriteAheadLog.segmentPath(directory, segment),
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+        Path temporary = directory.resolve("snapshot-9999999999999999.dat.tmp");
+        Files.write(temporary, new byte[]{1, 2, 3});
+
+        EmbeddedStore recovered = open(NO_ROTATION);
+        assertEquals(Employee.Roles.STANDARD, recovered.employeeByEmail("employee@example.com").getRole());
+        assertEquals(Ticket.StatusValues.DENIED, recovered.tickets().get(1).getStatus());
+        assertEquals(Ticket.StatusValues.PENDING, recovered.tickets().get(2).getStatus());
+        assertEquals(2, recovered.tickets().size());
+        assertFalse(Files.exists(temporary));
+        //Its own snapshot replaces the older segments that were put back
+        for (long segment : oldSegments) assertFalse(Files.exists(WriteAheadLog.segmentPath(directory, segment)));
+    }
+
+    @Test
+    void snapshotsAFullSegmentAndDeletesTheSegmentsBeforeIt() throws Exception {
+        //Every record fills a segment, so every change starts a new segment and a snapshot
+        EmbeddedStore store = open(1);
+        Employee employee = store.register("employee@example.com", 1);
+        List<Ticket> created = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            created.addAll(store.createTickets(Collections.singletonList(ticket(employee.getId(), i + ".00", "ticket " + i))));
+        }
+        store.finalizeTickets(Arrays.asList(2, 4), Ticket.StatusValues.APPROVED, new TicketRepository.FinalizeResult());
+        awaitSnapshots(store, 7);
+
+        List<Long> segments = WriteAheadLog.segments(directory);
+        List<Long> snapshots = WriteAheadLog.numberedFiles(directory, "snapshot-", ".dat");
+        assertEquals(1, snapshots.size());
+        for (long segment : segments) assertTrue(segment >= snapshots.get(0));
+
+        EmbeddedStore reopened = open(1);
+        assertEquals(5, reopened.tickets().size());
+        for (Ticket ticket : created) {
+            Ticket.StatusValues expected = ticket.getId() == 2 || ticket.getId() == 4
+                    ? Ticket.StatusValues.APPROVED : Ticket.StatusValues.PENDING;
+            assertEquals(expected, reopened.tickets().get(ticket.getId()).getStatus());
+            assertEquals(ticket.getAmount(), reopened.tickets().get(ticket.getId()).getAmount());
+        }
+        assertEquals(employee.getEmail(), reopened.employeeById(employee.getId()).getEmail());
+    }
+
+    @Test
+    void refusesToOpenACorruptSnapshot() throws IOException {
+        EmbeddedStore store = open(NO_ROTATION);
+        store.register("employee@example.com", 1);
+        open(NO_ROTATION);
+
+        Path snapshot = directory.resolve(String.format("snapshot-%016d.dat",
+                WriteAheadLog.numberedFiles(directory, "snapshot-", ".dat").get(0)));
+        byte[] contents = Files.readAllBytes(snapshot);
+        contents[12] ^= 1;
+        Files.write(snapshot, contents);
+
+        assertThrows(IOException.class, () -> open(NO_ROTATION));
+    }
+
+    private EmbeddedStore open(long segmentMaxBytes) throws IOException {
+        return new EmbeddedStore(directory, segmentMaxBytes, false);
+    }
+
+    private Path lastSegment() throws IOException {
+        List<Long> segments = WriteAheadLog.segments(directory);
+        return WriteAheadLog.segmentPath(directory, segments.get(segments.size() - 1));
+    }
+
+    private static Ticket ticket(int employeeID, String amount, String description) {
+        return new Ticket(employeeID, new BigDecimal(amount), description, Ticket.ReimbursementType.FOOD, Ticket.StatusValues.PENDING);
+    }
+
+    //Snapshots of full segments are written in the background
+    private static void awaitSnapshots(EmbeddedStore store, long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (store.getSnapshotCount() < count && System.currentTimeMillis() < deadline) Thread.sleep(10);
+        assertEquals(count, store.getSnapshotCount());
+    }
+}
@@ -0,0 +1,52 @@
+package com.revature.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SchemaMigrationsTest {
+    @Test
+    void splitsAScriptIntoItsStatements() {
+        String sql = "-- no-transaction\n" +
+                "-- The first\n" +
+                "CREATE INDEX CONCURRENTLY a ON t (x);\n" +
+                "\n" +
+                "CREATE INDEX CONCURRENTLY b\n" +
+                "    ON t (y, z);  \r\n" +
+                "-- A semicolon in the middle of a line; it doesn't end anything\n" +
+                "SELECT ';' AS semicolon;\n" +
+                "-- Nothing follows this comment\n";
+        assertEquals(Arrays.asList(
+                "-- no-transaction\n-- The first\nCREATE INDEX CONCURRENTLY a ON t (x)",
+                "CREATE INDEX CONCURRENTLY b\n    ON t (y, z)",
+                "-- A semicolon in the middle of a line; it doesn't end anything\nSELECT ';' AS semicolon"),
+                SchemaMigrations.statements(sql));
+    }
+
+    @Test
+    void buildsTheQueryIndexesOneStatementAtATime() throws IOException {
+        String sql = read("db/migration/V2__add_query_indexes.sql");
+        assertTrue(sql.startsWith("-- no-transaction\n"));
+        List<String> statements = SchemaMigrations.statements(sql);
+        assertEquals(3, statements.size());
+        for (String statement : statements) assertTrue(statement.contains("INDEX CONCURRENTLY IF NOT EXISTS"), statement);
+    }
+
+    private static String read(String resource) throws IOException {
+        try (InputStream in = SchemaMigrationsTest.class.getClassLoader().getResourceAsStream(resource)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) != -1) out.write(buffer, 0, n);
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
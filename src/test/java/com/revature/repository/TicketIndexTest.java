@@ -0,0 +1,142 @@
+package com.revature.repository;
+
+import com.revature.model.Ticket;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TicketIndexTest {
+    @Test
+    void appliesWritesMadeWhileItIsLoading() throws Exception {
+        TicketIndex index = new TicketIndex(0);
+        //What the load reads: ticket 3 as it was before the write below finalized it, and ticket 4, which the write
+        // below also creates
+        List<Ticket> read = Arrays.asList(
+                ticket(1, 10, Ticket.StatusValues.PENDING),
+                ticket(2, 10, Ticket.StatusValues.DENIED),
+                ticket(3, 20, Ticket.StatusValues.PENDING),
+                ticket(4, 20, Ticket.StatusValues.PENDING));
+        CountDownLatch halfway = new CountDownLatch(1);
+        CountDownLatch resume = new CountDownLatch(1);
+        Thread loader = new Thread(() -> index.load(pausingAfter(read, 2, halfway, resume)));
+        loader.start();
+        assertTrue(halfway.await(10, TimeUnit.SECONDS));
+
+        //Each write is made once the load has started and before it has finished
+        Thread[] writers = {
+                new Thread(() -> index.recordFinalized(1, Ticket.StatusValues.APPROVED)),
+                new Thread(() -> index.recordFinalized(3, Ticket.StatusValues.APPROVED)),
+                new Thread(() -> index.recordCreated(ticket(4, 20, Ticket.StatusValues.PENDING))),
+                new Thread(() -> index.recordCreated(ticket(5, 30, Ticket.StatusValues.PENDING))),
+        };
+        for (Thread writer : writers) writer.start();
+        //The writes have to wait for the load rather than apply to a half-loaded index, or be dropped
+        for (Thread writer : writers) writer.join(100);
+        for (Thread writer : writers) assertTrue(writer.isAlive());
+        assertFalse(index.isReady());
+
+        resume.countDown();
+        loader.join(10000);
+        for (Thread writer : writers) writer.join(10000);
+
+        assertTrue(index.isReady());
+        assertEquals(5, index.size());
+        assertEquals(Ticket.StatusValues.APPROVED, index.get(1).getStatus());
+        assertEquals(Ticket.StatusValues.DENIED, index.get(2).getStatus());
+        assertEquals(Ticket.StatusValues.APPROVED, index.get(3).getStatus());
+        assertEquals(Ticket.StatusValues.PENDING, index.get(5).getStatus());
+        assertEquals(Arrays.asList(1, 3), ids(index.find(-1, Ticket.StatusValues.APPROVED, null, 0, -1)));
+        assertEquals(Arrays.asList(4, 5), ids(index.find(-1, Ticket.StatusValues.PENDING, null, 0, -1)));
+        //Ticket 4 was seen by both the load and the write, and is only listed once
+        assertEquals(Arrays.asList(3, 4), ids(index.find(20, null, null, 0, -1)));
+    }
+
+    @Test
+    void dropsWritesWhileItIsNotInUse() {
+        TicketIndex index = new TicketIndex(0);
+        index.recordCreated(ticket(1, 10, Ticket.StatusValues.PENDING));
+        index.recordFinalized(1, Ticket.StatusValues.APPROVED);
+        assertFalse(index.isReady());
+        assertNull(index.find(-1, null, null, 0, -1));
+
+        index.load(Collections.singletonList(ticket(2, 10, Ticket.StatusValues.PENDING)));
+        assertEquals(Collections.singletonList(2), ids(index.find(-1, null, null, 0, -1)));
+    }
+
+    @Test
+    void findsPagesOfMatchingTicketsInOrderOfID() {
+        TicketIndex index = new TicketIndex(0);
+        List<Ticket> tickets = new ArrayList<>();
+        for (int id = 1; id <= 30; id++) {
+            tickets.add(new Ticket(id % 3 + 1, BigDecimal.ONE, "ticket " + id,
+                    id % 2 == 0 ? Ticket.ReimbursementType.FOOD : Ticket.ReimbursementType.TRAVEL,
+                    Ticket.StatusValues.PENDING, id));
+        }
+        index.load(tickets);
+
+        assertEquals(Arrays.asList(2, 8, 14), ids(index.find(3, null, Ticket.ReimbursementType.FOOD, 0, 3)));
+        assertEquals(Arrays.asList(20, 26), ids(index.find(3, null, Ticket.ReimbursementType.FOOD, 14, 3)));
+        assertEquals(Arrays.asList(29, 30), ids(index.find(-1, Ticket.StatusValues.PENDING, null, 28, -1)));
+        assertEquals(Collections.emptyList(), ids(index.find(9, null, null, 0, -1)));
+    }
+
+    @Test
+    void isNotUsedOnceItIsOverItsMemoryBudget() {
+        TicketIndex index = new TicketIndex(1000);
+        List<Ticket> tickets = new ArrayList<>();
+        for (int id = 1; id <= 100; id++) tickets.add(ticket(id, 1, Ticket.StatusValues.PENDING));
+        index.load(tickets);
+
+        assertTrue(index.isOverBudget());
+        assertFalse(index.isReady());
+        assertEquals(0, index.size());
+        assertNull(index.find(-1, null, null, 0, -1));
+    }
+
+    private static Ticket ticket(int id, int employeeID, Ticket.StatusValues status) {
+        return new Ticket(employeeID, new BigDecimal("12.50"), "ticket " + id, Ticket.ReimbursementType.OTHER, status, id);
+    }
+
+    private static List<Integer> ids(List<Ticket> tickets) {
+        List<Integer> ids = new ArrayList<>();
+        for (Ticket ticket : tickets) ids.add(ticket.getId());
+        return ids;
+    }
+
+    //Iterates over the tickets, stopping after the first count of them until resume is counted down
+    private static Iterable<Ticket> pausingAfter(List<Ticket> tickets, int count, CountDownLatch halfway, CountDownLatch resume) {
+        return () -> new Iterator<Ticket>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                if (next == count) {
+                    halfway.countDown();
+                    try {
+                        resume.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return next < tickets.size();
+            }
+
+            @Override
+            public Ticket next() {
+                return tickets.get(next++);
+            }
+        };
+    }
+}
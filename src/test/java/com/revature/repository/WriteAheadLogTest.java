@@ -0,0 +1,134 @@
+package com.revature.repository;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class WriteAheadLogTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void replaysRecordsInTheOrderTheyWereAppended() throws IOException {
+        long end;
+        try (WriteAheadLog log = new WriteAheadLog(directory, 0, true)) {
+            log.append(bytes("first"));
+            log.append(bytes("second"));
+            end = log.append(bytes("third"));
+            log.sync(end);
+        }
+
+        List<String> replayed = new ArrayList<>();
+        long valid = WriteAheadLog.replay(WriteAheadLog.segmentPath(directory, 0), record -> replayed.add(read(record)));
+        assertEquals(Arrays.asList("first", "second", "third"), replayed);
+        assertEquals(end, valid);
+        assertEquals(end, Files.size(WriteAheadLog.segmentPath(directory, 0)));
+    }
+
+    @Test
+    void stopsAtATornRecordAndTruncatesIt() throws IOException {
+        long end;
+        try (WriteAheadLog log = new WriteAheadLog(directory, 0, false)) {
+            log.append(bytes("first"));
+            end = log.append(bytes("second"));
+        }
+        //A crash part of the way through the next record: its header claims more payload than made it to disk
+        Path file = WriteAheadLog.segmentPath(directory, 0);
+        append(file, ByteBuffer.allocate(8 + 3).putInt(10).putInt(0).put(bytes("thi")).array());
+
+        List<String> replayed = new ArrayList<>();
+        long valid = WriteAheadLog.replay(file, record -> replayed.add(read(record)));
+        assertEquals(Arrays.asList("first", "second"), replayed);
+        assertEquals(end, valid);
+
+        WriteAheadLog.truncate(file, valid);
+        assertEquals(end, Files.size(file));
+        replayed.clear();
+        assertEquals(end, WriteAheadLog.replay(file, record -> replayed.add(read(record))));
+        assertEquals(Arrays.asList("first", "second"), replayed);
+    }
+
+    @Test
+    void stopsAtARecordWhoseChecksumDoesNotMatch() throws IOException {
+        long first;
+        try (WriteAheadLog log = new WriteAheadLog(directory, 0, false)) {
+            first = log.append(bytes("first"));
+            log.append(bytes("second"));
+        }
+        //Flip a bit in the payload of the last record
+        Path file = WriteAheadLog.segmentPath(directory, 0);
+        byte[] contents = Files.readAllBytes(file);
+        contents[contents.length - 1] ^= 1;
+        Files.write(file, contents);
+
+        List<String> replayed = new ArrayList<>();
+        assertEquals(first, WriteAheadLog.replay(file, record -> replayed.add(read(record))));
+        assertEquals(Arrays.asList("first"), replayed);
+    }
+
+    @Test
+    void stopsAtALengthTooLargeToBeARecord() throws IOException {
+        long end;
+        try (WriteAheadLog log = new WriteAheadLog(directory, 0, false)) {
+            end = log.append(bytes("first"));
+        }
+        Path file = WriteAheadLog.segmentPath(directory, 0);
+        append(file, ByteBuffer.allocate(8).putInt(Integer.MAX_VALUE).putInt(0).array());
+
+        List<String> replayed = new ArrayList<>();
+        assertEquals(end, WriteAheadLog.replay(file, record -> replayed.add(read(record))));
+        assertEquals(Arrays.asList("first"), replayed);
+    }
+
+    @Test
+    void rotateStartsTheNextSegment() throws IOException {
+        try (WriteAheadLog log = new WriteAheadLog(directory, 4, true)) {
+            log.append(bytes("in four"));
+            assertEquals(5, log.rotate());
+            assertEquals(0, log.getSegmentBytes());
+            log.sync(log.append(bytes("in five")));
+            assertEquals(2, log.getRecordCount());
+        }
+
+        assertEquals(Arrays.asList(4L, 5L), WriteAheadLog.segments(directory));
+        List<String> replayed = new ArrayList<>();
+        for (long segment : WriteAheadLog.segments(directory)) {
+            WriteAheadLog.replay(WriteAheadLog.segmentPath(directory, segment), record -> replayed.add(read(record)));
+        }
+        assertEquals(Arrays.asList("in four", "in five"), replayed);
+    }
+
+    @Test
+    void ignoresFilesThatAreNotSegments() throws IOException {
+        new WriteAheadLog(directory, 7, false).close();
+        Files.createFile(directory.resolve("wal-notanumber.log"));
+        Files.createFile(directory.resolve("snapshot-0000000000000007.dat"));
+        assertEquals(Arrays.asList(7L), WriteAheadLog.segments(directory));
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String read(DataInputStream record) throws IOException {
+        byte[] payload = new byte[record.available()];
+        record.readFully(payload);
+        return new String(payload, StandardCharsets.UTF_8);
+    }
+
+    private static void append(Path file, byte[] bytes) throws IOException {
+        Files.write(file, bytes, StandardOpenOption.APPEND);
+    }
+}
@@ -0,0 +1,56 @@
+package com.revature.service;
+
+import com.revature.controller.Controller;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResponseCacheTest {
+    @Test
+    void tagsListingsWithAWeakETag() throws IOException {
+        ResponseCache cache = new ResponseCache(10, 1024);
+        Controller.WebTuple sent = cache.store("tickets", 3, listing("[1,2,3]"));
+        assertTrue(sent.etag().startsWith("W/\""), sent.etag());
+        assertEquals("[1,2,3]", write(sent));
+
+        Controller.WebTuple cached = cache.lookup("tickets", 3, null);
+        assertEquals(200, cached.statusCode());
+        assertEquals(sent.etag(), cached.etag());
+        assertEquals("[1,2,3]", write(cached));
+    }
+
+    @Test
+    void answersWithA304WhicheverWayTheClientSendsTheETagBack() {
+        ResponseCache cache = new ResponseCache(0, 0);
+        String etag = cache.store("tickets", 3, listing("[]")).etag();
+        String opaque = etag.substring(2);
+
+        assertEquals(304, cache.lookup("tickets", 3, etag).statusCode());
+        //Some clients and caches drop the W/ prefix, or send several tags
+        assertEquals(304, cache.lookup("tickets", 3, opaque).statusCode());
+        assertEquals(304, cache.lookup("tickets", 3, "\"other\", " + etag).statusCode());
+        assertEquals(304, cache.lookup("tickets", 3, "*").statusCode());
+
+        //Nothing is kept, so anything else has to be rendered again
+        assertNull(cache.lookup("tickets", 4, etag));
+        assertNull(cache.lookup("employees", 3, etag));
+        assertNull(cache.lookup("tickets", 3, "\"other\""));
+    }
+
+    private static Controller.WebTuple listing(String json) {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        return new Controller.WebTuple(200, out -> out.write(bytes));
+    }
+
+    private static String write(Controller.WebTuple tuple) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        tuple.body().writeTo(out);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,127 @@
+package com.revature.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class IntObjectMapTest {
+    //new IntObjectMap<>(4) has 8 slots, and grows once it holds more than 4 entries
+    private static final int SLOTS = 8;
+
+    @Test
+    void removesFromAProbeRunThatWrapsAroundTheEndOfTheTable() {
+        //Three keys whose home is the last slot and one whose home is the first: they fill slots 7, 0, 1 and 2, so the
+        // run wraps around, and the entries after a removed one have to be moved back across the end of the table
+        List<Integer> lastSlot = keysWithHome(SLOTS - 1, 3);
+        int firstSlot = keysWithHome(0, 1).get(0);
+        List<Integer> keys = new ArrayList<>(lastSlot);
+        keys.add(1, firstSlot);
+
+        for (List<Integer> order : permutations(keys)) {
+            IntObjectMap<String> map = new IntObjectMap<>(4);
+            for (int key : keys) map.put(key, "v" + key);
+            List<Integer> remaining = new ArrayList<>(keys);
+            for (int key : order) {
+                assertEquals("v" + key, map.remove(key), "removing " + key + " in the order " + order);
+                remaining.remove(Integer.valueOf(key));
+                assertNull(map.get(key));
+                assertNull(map.remove(key));
+                for (int other : remaining) assertEquals("v" + other, map.get(other), "after removing " + key + " in the order " + order);
+                assertEquals(remaining.size(), map.size());
+            }
+        }
+    }
+
+    @Test
+    void keepsEveryEntryWhenItGrows() {
+        IntObjectMap<Integer> map = new IntObjectMap<>(4);
+        for (int key = -5000; key < 5000; key++) {
+            assertNull(map.put(key, key));
+        }
+        assertEquals(10000, map.size());
+        for (int key = -5000; key < 5000; key++) assertEquals(Integer.valueOf(key), map.get(key));
+        assertNull(map.get(5000));
+
+        for (int key = -5000; key < 5000; key += 2) assertEquals(Integer.valueOf(key), map.remove(key));
+        assertEquals(5000, map.size());
+        for (int key = -5000; key < 5000; key++) assertEquals(key % 2 == 0 ? null : Integer.valueOf(key), map.get(key));
+
+        assertEquals(Integer.valueOf(1), map.put(1, -1));
+        assertEquals(Integer.valueOf(-1), map.get(1));
+        assertEquals(5000, map.size());
+    }
+
+    @Test
+    void behavesLikeAHashMap() {
+        Random random = new Random(42);
+        IntObjectMap<Integer> map = new IntObjectMap<>();
+        Map<Integer, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 200000; i++) {
+            //A small key range, so that the same keys are put and removed over and over
+            int key = random.nextInt(2000) - 1000;
+            switch (random.nextInt(3)) {
+                case 0:
+                    assertEquals(expected.put(key, i), map.put(key, i));
+                    break;
+                case 1:
+                    assertEquals(expected.remove(key), map.remove(key));
+                    break;
+                default:
+                    assertEquals(expected.get(key), map.get(key));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        for (int key = -1000; key < 1000; key++) assertEquals(expected.get(key), map.get(key));
+    }
+
+    @Test
+    void clearRemovesEverything() {
+        IntObjectMap<String> map = new IntObjectMap<>();
+        for (int key = 0; key < 100; key++) map.put(key, "v" + key);
+        map.clear();
+        assertEquals(0, map.size());
+        for (int key = 0; key < 100; key++) assertNull(map.get(key));
+        map.put(7, "seven");
+        assertEquals("seven", map.get(7));
+    }
+
+    @Test
+    void refusesNullValues() {
+        assertThrows(IllegalArgumentException.class, () -> new IntObjectMap<String>().put(1, null));
+    }
+
+    //The first count keys whose home slot in a table of SLOTS slots is the given one; this mirrors IntObjectMap.slotOf
+    private static List<Integer> keysWithHome(int slot, int count) {
+        List<Integer> keys = new ArrayList<>();
+        for (int key = 1; keys.size() < count; key++) {
+            int h = key * 0x9E3779B9;
+            if (((h ^ (h >>> 16)) & (SLOTS - 1)) == slot) keys.add(key);
+        }
+        return keys;
+    }
+
+    private static List<List<Integer>> permutations(List<Integer> items) {
+        List<List<Integer>> result = new ArrayList<>();
+        if (items.isEmpty()) {
+            result.add(new ArrayList<>());
+            return result;
+        }
+        for (int i = 0; i < items.size(); i++) {
+            List<Integer> rest = new ArrayList<>(items);
+            Integer first = rest.remove(i);
+            for (List<Integer> permutation : permutations(rest)) {
+                permutation.add(0, first);
+                result.add(permutation);
+            }
+        }
+        return result;
+    }
+}